@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import android.util.LruCache;
+
+/**
+ * This class draws a chord graph into an Android Canvas, it is the renderer of ChordGraphView. The
+ * Paints and Paths are reused so drawing doesn't allocate. A label is drawn by rotating the canvas
+ * about its anchor rather than along a Path, so no Path is kept per slot. Label measurements are
+ * kept in an LRU cache per distinct word, so label cost scales with the number of distinct words.
+ */
+public class CanvasRenderer implements ChordGraphRenderer {
+
+    // How many distinct words have their label measurements cached
+    private static final int LABEL_CACHE_SIZE = 512;
+
+    private Canvas canvas;
+
+    // Paints and Paths reused by every frame
+    private final Paint rimPaint;
+    private final Paint slotPaint;
+    private final Paint labelPaint;
+    private final Paint chordPaint;
+    private final Paint ribbonPaint;
+    private final Path chordPath;
+    private final Path ribbonPath;
+    private final Rect textBounds;
+
+    // The label measurements per distinct word
+    private final LruCache<String, Float> labelCenterOffsets;
+
+    /**
+     * Constructor initializes the paints
+     */
+    public CanvasRenderer() {
+        // setup the rim Paint style
+        rimPaint = new Paint();
+        rimPaint.setStyle(Paint.Style.STROKE);
+        rimPaint.setAntiAlias(true);
+
+        // setup the slot Paint style
+        slotPaint = new Paint();
+        slotPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        slotPaint.setAntiAlias(true);
+
+        // setup the label Paint style
+        labelPaint = new Paint();
+        labelPaint.setTextAlign(Paint.Align.LEFT);
+        labelPaint.setAntiAlias(true);
+
+        // setup the chord Paint style
+        chordPaint = new Paint();
+        chordPaint.setStyle(Paint.Style.STROKE);
+
+        // setup the ribbon Paint style, stroked as well so a ribbon of one slot is still a line
+        ribbonPaint = new Paint();
+        ribbonPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+        ribbonPaint.setAntiAlias(true);
+
+        chordPath = new Path();
+        ribbonPath = new Path();
+        textBounds = new Rect();
+
+        // measure a label the first time its word is seen
+        labelCenterOffsets = new LruCache<String, Float>(LABEL_CACHE_SIZE) {
+            @Override
+            protected Float create(String labelStr) {
+                // calculate the label bounds and adjust to center the label
+                labelPaint.getTextBounds(labelStr, 0, labelStr.length(), textBounds);
+                return (float) (textBounds.height() / 2);
+            }
+        };
+    }
+
+    /**
+     * Sets the canvas to draw into until the next call
+     * @param canvas - the canvas to draw into
+     */
+    public void setCanvas(Canvas canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * @return the number of label measurements served from the cache
+     */
+    public int getLabelCacheHitCount() {
+        return labelCenterOffsets.hitCount();
+    }
+
+    /**
+     * @return the number of label measurements that had to be measured
+     */
+    public int getLabelCacheMissCount() {
+        return labelCenterOffsets.missCount();
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        // the canvas is cleared by its owner
+    }
+
+    @Override
+    public void drawCircle(float centerX, float centerY, float radius, float strokeWidth,
+                           int color) {
+        rimPaint.setColor(color);
+        rimPaint.setStrokeWidth(strokeWidth);
+        canvas.drawCircle(centerX, centerY, radius, rimPaint);
+    }
+
+    @Override
+    public void fillCircle(float centerX, float centerY, float radius, int color) {
+        slotPaint.setColor(color);
+        canvas.drawCircle(centerX, centerY, radius, slotPaint);
+    }
+
+    @Override
+    public void drawQuad(float startX, float startY, float controlX, float controlY, float endX,
+                         float endY, float strokeWidth, int color) {
+        // reset the Path, add the first point, and add the quadratic Bezier Curve
+        chordPath.rewind();
+        chordPath.moveTo(startX, startY);
+        chordPath.quadTo(controlX, controlY, endX, endY);
+        chordPaint.setColor(color);
+        chordPaint.setStrokeWidth(strokeWidth);
+        canvas.drawPath(chordPath, chordPaint);
+    }
+
+    @Override
+    public void drawLines(float[] points, int offset, int count, float strokeWidth, int color) {
+        // the chord Paint isn't anti-aliased either
+        chordPaint.setColor(color);
+        chordPaint.setStrokeWidth(strokeWidth);
+        canvas.drawLines(points, offset, count, chordPaint);
+    }
+
+    @Override
+    public void fillRibbon(float fromFirstX, float fromFirstY, float fromLastX, float fromLastY,
+                           float toFirstX, float toFirstY, float toLastX, float toLastY,
+                           float controlX, float controlY, float strokeWidth, int color) {
+        ribbonPath.rewind();
+        ribbonPath.moveTo(fromFirstX, fromFirstY);
+        ribbonPath.lineTo(fromLastX, fromLastY);
+        ribbonPath.quadTo(controlX, controlY, toFirstX, toFirstY);
+        ribbonPath.lineTo(toLastX, toLastY);
+        ribbonPath.quadTo(controlX, controlY, fromFirstX, fromFirstY);
+        ribbonPath.close();
+        ribbonPaint.setColor(color);
+        ribbonPaint.setStrokeWidth(strokeWidth);
+        canvas.drawPath(ribbonPath, ribbonPaint);
+    }
+
+    @Override
+    public void drawLabel(String label, float x, float y, float degrees, boolean alignEnd,
+                          float textSize, int color) {
+        labelPaint.setColor(color);
+        if (labelPaint.getTextSize() != textSize) {
+            // the measurements are only good for one size
+            labelPaint.setTextSize(textSize);
+            labelCenterOffsets.evictAll();
+        }
+        // the measurement is cached per word
+        float vCenterTextBounds = labelCenterOffsets.get(label);
+        labelPaint.setTextAlign(alignEnd ? Paint.Align.RIGHT : Paint.Align.LEFT);
+        canvas.save();
+        canvas.rotate(degrees, x, y);
+        canvas.drawText(label, x, y + vCenterTextBounds, labelPaint);
+        canvas.restore();
+    }
+
+    @Override
+    public void end() {
+        canvas = null;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * This class renders the chord graphs of many documents to PNG or SVG files on a plain JVM, in
+ * parallel on the threads of an executor. It is meant for batch jobs that graph thousands of
+ * documents, it doesn't need Android.
+ *
+ * As many workers as the parallelism are submitted and each pulls the next document from the
+ * shared iterator, loads its model, draws it and writes the file, until there are none left. So at
+ * most one model per worker is held at once however many documents there are, and every worker
+ * reuses its own layout, palette and renderer, which aren't thread-safe, from one document to the
+ * next. A fixed size thread pool with as many threads as the parallelism bounds the threads.
+ *
+ * A document that fails to load or write is recorded in the Result and the others carry on.
+ */
+public class ChordGraphExporter {
+
+    /**
+     * The format of the files written.
+     */
+    public enum Format {
+        PNG(".png"),
+        SVG(".svg");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return the file name extension, with its dot
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * A document to graph. load() is called on a worker thread so the model is built in parallel.
+     */
+    public interface Document {
+        /**
+         * @return the name of the file to write, without the extension
+         */
+        String getName();
+
+        /**
+         * @return the model of the document, it isn't used after the graph is written
+         * @throws IOException if the document can't be read
+         */
+        ChordGraphModel<?> load() throws IOException;
+    }
+
+    /**
+     * The outcome of an export.
+     */
+    public static class Result {
+        private final int documentCount;
+        private final List<String> failedNames;
+        private final IOException firstError;
+        private final long elapsedNanos;
+
+        /**
+         * Constructor just initializes values that were passed in
+         * @param documentCount the number of documents written
+         * @param failedNames the names of the documents that failed
+         * @param firstError the first error, null if none failed
+         * @param elapsedNanos how long the export took
+         */
+        Result(int documentCount, List<String> failedNames, IOException firstError,
+               long elapsedNanos) {
+            this.documentCount = documentCount;
+            this.failedNames = failedNames;
+            this.firstError = firstError;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of documents written
+         */
+        public int getDocumentCount() {
+            return documentCount;
+        }
+
+        /**
+         * @return the names of the documents that failed to load or write
+         */
+        public List<String> getFailedNames() {
+            return failedNames;
+        }
+
+        /**
+         * @return the first error hit, null if no document failed
+         */
+        public IOException getFirstError() {
+            return firstError;
+        }
+
+        /**
+         * @return how long the export took from start to finish
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the number of documents written per second
+         */
+        public double getDocumentsPerSecond() {
+            return (elapsedNanos == 0) ? 0 : documentCount * 1e9 / elapsedNanos;
+        }
+    }
+
+    // The colors of the app's theme
+    private static final int DEFAULT_BACKGROUND = 0xFF000000;
+    private static final int DEFAULT_PRIMARY = 0xFFFFFFFF;
+    private static final int DEFAULT_GRADIENT_BEGIN = 0xFF0000FF;
+    private static final int DEFAULT_GRADIENT_END = 0xFF00FF00;
+    private static final int PALETTE_COLORS = 50;
+
+    private final int width;
+    private final int height;
+    private final Format format;
+    private int background = DEFAULT_BACKGROUND;
+    private int primaryColor = DEFAULT_PRIMARY;
+    private int gradientBegin = DEFAULT_GRADIENT_BEGIN;
+    private int gradientEnd = DEFAULT_GRADIENT_END;
+    private int bundleThreshold = ChordGraphLayout.DEFAULT_BUNDLE_THRESHOLD;
+    private int compressionLevel = Deflater.BEST_SPEED;
+
+    /**
+     * Constructor just initializes values that were passed in, the colors are the app's
+     * @param width the width of the graphs in pixels
+     * @param height the height of the graphs in pixels
+     * @param format the format of the files
+     */
+    public ChordGraphExporter(int width, int height, Format format) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(
+                    "The size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.format = format;
+    }
+
+    /**
+     * Sets the colors of the graphs.
+     * @param background the ARGB color the graph is drawn over, may be transparent
+     * @param primaryColor the color of the rim, the slots and the labels
+     * @param gradientBegin the first color of the chord palette gradient
+     * @param gradientEnd the last color of the chord palette gradient
+     */
+    public void setColors(int background, int primaryColor, int gradientBegin, int gradientEnd) {
+        this.background = background;
+        this.primaryColor = primaryColor;
+        this.gradientBegin = gradientBegin;
+        this.gradientEnd = gradientEnd;
+    }
+
+    /**
+     * Sets the number of chords above which the chords are drawn as bundled ribbons.
+     * @param bundleThreshold the chord count threshold
+     */
+    public void setBundleThreshold(int bundleThreshold) {
+        this.bundleThreshold = bundleThreshold;
+    }
+
+    /**
+     * Sets the Deflater level of PNG files, Deflater.BEST_SPEED by default.
+     * @param compressionLevel the level, 0 to 9
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Graphs every document into a file in the output directory, named after the document.
+     *
+     * @param documents the documents to graph, only read under a lock by the workers
+     * @param outputDirectory the directory to write the files to, it must exist
+     * @param executor the executor to run the workers on
+     * @param parallelism the number of workers, usually the thread count
+     * @return the number of documents written and the ones that failed
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers
+     */
+    public Result export(final Iterator<? extends Document> documents, final File outputDirectory,
+                         ExecutorService executor, int parallelism) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        final AtomicInteger written = new AtomicInteger();
+        final List<String> failedNames = Collections.synchronizedList(new ArrayList<String>());
+        final IOException[] firstError = new IOException[1];
+
+        ArrayList<Future<Void>> workers = new ArrayList<Future<Void>>();
+        for (int w = 0; w < Math.max(1, parallelism); w++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Worker worker = new Worker();
+                    try {
+                        Document document;
+                        while ((document = next(documents)) != null) {
+                            try {
+                                worker.export(document, outputDirectory);
+                                written.incrementAndGet();
+                            } catch (IOException e) {
+                                failedNames.add(document.getName());
+                                synchronized (firstError) {
+                                    if (firstError[0] == null) {
+                                        firstError[0] = e;
+                                    }
+                                }
+                            }
+                        }
+                    } finally {
+                        worker.release();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            // stop the other workers if one failed or this thread was interrupted
+            for (Future<Void> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+        synchronized (firstError) {
+            return new Result(written.get(), new ArrayList<String>(failedNames), firstError[0],
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @param documents the documents
+     * @return the next document, null when there are none left
+     */
+    private static Document next(Iterator<? extends Document> documents) {
+        synchronized (documents) {
+            return documents.hasNext() ? documents.next() : null;
+        }
+    }
+
+    /**
+     * The layout and renderer of one worker thread, reused for every document it exports.
+     */
+    private class Worker {
+        private final ChordGraphLayout layout;
+        private PngRenderer pngRenderer;
+        private SvgRenderer svgRenderer;
+
+        /**
+         * Constructor creates the layout and the renderer of the format
+         */
+        Worker() {
+            layout = new ChordGraphLayout(
+                    new ColorPalette(gradientBegin, gradientEnd, PALETTE_COLORS), primaryColor);
+            layout.setBundleThreshold(bundleThreshold);
+            if (format == Format.PNG) {
+                pngRenderer = new PngRenderer(background, compressionLevel);
+            } else {
+                svgRenderer = new SvgRenderer(background);
+            }
+        }
+
+        /**
+         * Loads a document, draws its graph and writes the file.
+         * @param document the document
+         * @param outputDirectory the directory to write the file to
+         * @throws IOException if the document can't be read or the file written
+         */
+        void export(Document document, File outputDirectory) throws IOException {
+            ChordGraphModel<?> model = document.load();
+            layout.update(width, height, model.getItemCount());
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(
+                    new File(outputDirectory, document.getName() + format.getExtension())));
+            try {
+                if (pngRenderer != null) {
+                    layout.draw(model, pngRenderer);
+                    pngRenderer.write(out);
+                } else {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+                    svgRenderer.setWriter(writer);
+                    layout.draw(model, svgRenderer);
+                    svgRenderer.finish();
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Frees the renderer
+         */
+        void release() {
+            if (pngRenderer != null) {
+                pngRenderer.release();
+            }
+        }
+    }
+}
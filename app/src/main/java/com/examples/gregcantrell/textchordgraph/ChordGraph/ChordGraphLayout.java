@@ -0,0 +1,666 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Arrays;
+
+/**
+ * This class lays out a chord graph and draws it into a ChordGraphRenderer. It works out the slot
+ * of every item around the rim, the control point of the chords and where every label goes, picks
+ * the colors of the chords and decides whether they are drawn one by one or bundled into ribbons.
+ * It depends on nothing from Android so the same layout draws into a View's Canvas and, on a plain
+ * JVM, into PNG and SVG files.
+ */
+public class ChordGraphLayout {
+
+    //TODO: move the sizes to a style
+    // The buffer from the edge, for the labels
+    private static final float EDGE_BUFFER = 150 * 2;
+    private static final float RIM_STROKE_WIDTH = 4.0f;
+    private static final float SLOT_RADIUS = 10.0f;
+    // The gap between a slot and its label and the size of the label
+    private static final float LABEL_SPACING = 17.0f;
+    private static final float LABEL_TEXT_SIZE = 34.0f;
+    // How far inside the rim a touch still picks a slot, outside it the labels go to the edge
+    private static final float SLOT_HIT_DEPTH = 48.0f;
+    // The stroke width of a highlighted chord and the radius of a highlighted slot
+    private static final float HIGHLIGHT_STROKE_WIDTH = 6.0f;
+    private static final float HIGHLIGHT_SLOT_RADIUS = 16.0f;
+
+    // Above this many chords they are drawn as bundled ribbons, BundleThresholdBenchmark measures
+    // the frame on both sides of it
+    public static final int DEFAULT_BUNDLE_THRESHOLD = 2000;
+    // The number of sectors the rim is divided into for bundling
+    private static final int BUNDLE_SECTORS = 32;
+    // The ribbon alpha for a single chord and how much it rises each time the chord count doubles
+    private static final int RIBBON_MIN_ALPHA = 30;
+    private static final int RIBBON_ALPHA_PER_DOUBLING = 12;
+    private static final int RIBBON_MAX_ALPHA = 220;
+    private static final float RIBBON_STROKE_WIDTH = 3.0f;
+
+    // The stroke width of a chord and for co-occurrence chords the stroke width and alpha of a
+    // chord of weight 1 and how much they rise each time the weight doubles
+    private static final float CHORD_STROKE_WIDTH = 3.0f;
+    private static final float WEIGHTED_MIN_STROKE_WIDTH = 1.0f;
+    private static final float WEIGHTED_STROKE_WIDTH_PER_DOUBLING = 1.5f;
+    private static final float WEIGHTED_MAX_STROKE_WIDTH = 12.0f;
+    private static final int WEIGHTED_MIN_ALPHA = 60;
+    private static final int WEIGHTED_ALPHA_PER_DOUBLING = 30;
+    private static final int WEIGHTED_MAX_ALPHA = 255;
+
+    // The alpha bucket of a chord per member count of its category, capped at 9 members
+    private static final int[] CHORD_ALPHA_BUCKETS = new int[10];
+    // The alpha bucket of a co-occurrence chord per doubling of its weight
+    private static final int[] WEIGHTED_ALPHA_BUCKETS = new int[32];
+    // The alpha bucket of a ribbon per doubling of the number of chords it stands for
+    private static final int[] RIBBON_ALPHA_BUCKETS = new int[64];
+    // The number of ways a chord of one color is painted, its alpha bucket per member count or
+    // its stroke width and alpha bucket per doubling of its weight
+    private static final int CHORD_STYLES = CHORD_ALPHA_BUCKETS.length
+            + WEIGHTED_ALPHA_BUCKETS.length;
+
+    static {
+        for (int count = 0; count < CHORD_ALPHA_BUCKETS.length; count++) {
+            CHORD_ALPHA_BUCKETS[count] = ColorPalette.getAlphaBucket(255 - count * 25);
+        }
+        for (int doublings = 0; doublings < WEIGHTED_ALPHA_BUCKETS.length; doublings++) {
+            int alpha = WEIGHTED_MIN_ALPHA + doublings * WEIGHTED_ALPHA_PER_DOUBLING;
+            WEIGHTED_ALPHA_BUCKETS[doublings] =
+                    ColorPalette.getAlphaBucket(Math.min(WEIGHTED_MAX_ALPHA, alpha));
+        }
+        for (int doublings = 0; doublings < RIBBON_ALPHA_BUCKETS.length; doublings++) {
+            RIBBON_ALPHA_BUCKETS[doublings] = ColorPalette.getAlphaBucket(Math.min(
+                    RIBBON_MAX_ALPHA, RIBBON_MIN_ALPHA + doublings * RIBBON_ALPHA_PER_DOUBLING));
+        }
+    }
+
+    private final ColorPalette colorPalette;
+    private final int primaryColor; // the color of the rim, slots and labels
+
+    // The slot table, the unit vector of every slot around the rim
+    private float[] slotSin;
+    private float[] slotCos;
+    private int layoutItemCount = -1; // -1 when the table has to be recomputed
+    private int layoutWidth;
+    private int layoutHeight;
+    private float centerX;
+    private float centerY;
+    private float radius;
+
+    // The anchor and rotation of the label of every slot, the labels on the left are flipped
+    private float[] labelX;
+    private float[] labelY;
+    private float[] labelDegrees;
+    private boolean[] labelFlipped;
+
+    // Level of detail state, the per-sector member counts and slot ranges of one category
+    private int bundleThreshold = DEFAULT_BUNDLE_THRESHOLD;
+    private final int[] sectorCount;
+    private final int[] sectorFirstSlot;
+    private final int[] sectorLastSlot;
+    private final int[] occupiedSectors;
+
+    // The ribbons of the bundled chords and the model and version they were found in. Every
+    // ribbon has the first and last slot of its start and end ranges and its color.
+    private int ribbonCount;
+    private int[] ribbonSlots; // 4 per ribbon
+    private int[] ribbonColors;
+    private ChordGraphModel<?> ribbonModel; // null when the ribbons have to be found again
+    private long ribbonVersion;
+
+    // The chords flattened into lines and the model and version they were flattened from
+    private boolean chordBatching = true;
+    private final ChordLineBatch chordBatch;
+    private ChordGraphModel<?> batchModel; // null when the batch has to be flattened again
+    private long batchVersion;
+
+    // The chords indexed for touches and the model and version they were indexed from
+    private final ChordHitIndex chordHitIndex;
+    private ChordGraphModel<?> hitIndexModel; // null when the index has to be built again
+    private long hitIndexVersion;
+
+    /**
+     * Constructor just initializes values. The chords are walked with the model's shared cursor
+     * and the palette caches colors per category, so every thread that draws needs a layout of
+     * its own and a model shouldn't be drawn by two threads at once.
+     * @param colorPalette - the palette the chord colors are picked from, only used by this layout
+     * @param primaryColor - the color of the rim, the slots and the labels
+     */
+    public ChordGraphLayout(ColorPalette colorPalette, int primaryColor) {
+        this.colorPalette = colorPalette;
+        this.primaryColor = primaryColor;
+        slotSin = new float[0];
+        slotCos = new float[0];
+        labelX = new float[0];
+        labelY = new float[0];
+        labelDegrees = new float[0];
+        labelFlipped = new boolean[0];
+        sectorCount = new int[BUNDLE_SECTORS];
+        sectorFirstSlot = new int[BUNDLE_SECTORS];
+        sectorLastSlot = new int[BUNDLE_SECTORS];
+        occupiedSectors = new int[BUNDLE_SECTORS];
+        ribbonSlots = new int[0];
+        ribbonColors = new int[0];
+        chordBatch = new ChordLineBatch();
+        chordHitIndex = new ChordHitIndex();
+    }
+
+    /**
+     * Sets the number of chords above which the chords are drawn as bundled ribbons.
+     * @param bundleThreshold - the chord count threshold
+     */
+    public void setBundleThreshold(int bundleThreshold) {
+        this.bundleThreshold = bundleThreshold;
+    }
+
+    /**
+     * @return the number of chords above which the chords are drawn as bundled ribbons
+     */
+    public int getBundleThreshold() {
+        return bundleThreshold;
+    }
+
+    /**
+     * Turns drawing the chords in batches of lines per color on or off. Off, every chord is drawn
+     * as a path of its own.
+     * @param chordBatching - true to batch the chords, the default
+     */
+    public void setChordBatching(boolean chordBatching) {
+        this.chordBatching = chordBatching;
+    }
+
+    /**
+     * @return true if the chords are drawn in batches of lines per color
+     */
+    public boolean isChordBatching() {
+        return chordBatching;
+    }
+
+    /**
+     * @return the number of drawLines() calls the chord batch was last drawn with
+     */
+    public int getChordBatchGroupCount() {
+        return chordBatch.getGroupCount();
+    }
+
+    /**
+     * @return the number of line segments the chords were last flattened into
+     */
+    public int getChordBatchSegmentCount() {
+        return chordBatch.getSegmentCount();
+    }
+
+    /**
+     * Recomputes the center, radius, slot table and label anchors if the size or the item count
+     * changed since the last call. The slot table holds the unit vector of every slot, so drawing
+     * doesn't compute any angles or allocate.
+     * @param width - the width of the graph in pixels
+     * @param height - the height of the graph in pixels
+     * @param itemCount - the number of items in the model
+     * @return true if the layout was recomputed
+     */
+    public boolean update(int width, int height, int itemCount) {
+        if (itemCount == layoutItemCount && width == layoutWidth && height == layoutHeight) {
+            return false;
+        }
+
+        centerX = width / 2.0f;
+        centerY = height / 2.0f;
+        radius = (Math.min(width, height) - EDGE_BUFFER) / 2;
+
+        // calculate the direction of every slot around the rim, starting at the top going clockwise
+        if (slotSin.length < itemCount) {
+            slotSin = new float[itemCount];
+            slotCos = new float[itemCount];
+            labelX = new float[itemCount];
+            labelY = new float[itemCount];
+            labelDegrees = new float[itemCount];
+            labelFlipped = new boolean[itemCount];
+        }
+        double intervalDegrees = 360.0 / itemCount;
+        for (int slot = 0; slot < itemCount; slot++) {
+            double degrees = intervalDegrees * slot;
+            slotSin[slot] = (float) Math.sin(Math.toRadians(degrees));
+            slotCos[slot] = (float) Math.cos(Math.toRadians(degrees));
+
+            // have text stick out radially, flipped on the left side so it isn't upside down
+            labelX[slot] = centerX + (radius + LABEL_SPACING) * slotSin[slot];
+            labelY[slot] = centerY - (radius + LABEL_SPACING) * slotCos[slot];
+            labelFlipped[slot] = slot * 2 >= itemCount;
+            labelDegrees[slot] = (float) (labelFlipped[slot] ? degrees + 90 : degrees - 90);
+        }
+        layoutItemCount = itemCount;
+        layoutWidth = width;
+        layoutHeight = height;
+        // the chords move with the slots
+        batchModel = null;
+        ribbonModel = null;
+        hitIndexModel = null;
+        return true;
+    }
+
+    /**
+     * Makes the next update() recompute the layout.
+     */
+    public void invalidate() {
+        layoutItemCount = -1;
+        batchModel = null;
+        ribbonModel = null;
+        hitIndexModel = null;
+    }
+
+    /**
+     * @return the number of slots laid out, -1 before the first update()
+     */
+    public int getItemCount() {
+        return layoutItemCount;
+    }
+
+    /**
+     * @return the x of the center of the graph, also the control point of every chord
+     */
+    public float getCenterX() {
+        return centerX;
+    }
+
+    /**
+     * @return the y of the center of the graph, also the control point of every chord
+     */
+    public float getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * @return the radius of the rim
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    /**
+     * @param slot - the slot, ie. the index of the item
+     * @return the x of the slot on the rim
+     */
+    public float getSlotX(int slot) {
+        return centerX + radius * slotSin[slot];
+    }
+
+    /**
+     * @param slot - the slot, ie. the index of the item
+     * @return the y of the slot on the rim
+     */
+    public float getSlotY(int slot) {
+        return centerY - radius * slotCos[slot];
+    }
+
+    /**
+     * Above the bundle threshold the chords of a category are bundled into ribbons between the
+     * ranges of slots the category occupies in each sector of the rim, so the cost is bounded by
+     * the number of categories. Co-occurrence chords link different categories, so they are never
+     * bundled.
+     * @param model - the model
+     * @return true if the chords of the model are drawn as bundled ribbons rather than one by one
+     */
+    public boolean isBundled(ChordGraphModel<?> model) {
+        return model.getChordCount() > bundleThreshold && model.getCooccurrenceWindow() == 0;
+    }
+
+    /**
+     * Finds the slot at a point, on the rim or the label sticking out of it. The slots are evenly
+     * spaced so the slot is found from the angle of the point without looking at any of them.
+     * @param x - the x of the point
+     * @param y - the y of the point
+     * @return the slot nearest to the point, -1 if the point is too far inside or outside the rim
+     */
+    public int getSlotAt(float x, float y) {
+        if (layoutItemCount <= 0) {
+            return -1;
+        }
+        float dx = x - centerX;
+        float dy = y - centerY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance < radius - SLOT_HIT_DEPTH || distance > radius + EDGE_BUFFER / 2) {
+            return -1;
+        }
+
+        // the angle clockwise from the top, the same way the slots go around
+        double degrees = Math.toDegrees(Math.atan2(dx, -dy));
+        if (degrees < 0) {
+            degrees += 360;
+        }
+        int slot = (int) Math.round(degrees * layoutItemCount / 360);
+        return (slot == layoutItemCount) ? 0 : slot;
+    }
+
+    /**
+     * Finds the chord nearest to a point with a ChordHitIndex. Only chords drawn one by one can be
+     * found, the index of them is built on the first call after the layout or the model changed
+     * and kept until either changes again, like the chord batch.
+     * @param model - the model, the layout must be up to date with it
+     * @param x - the x of the point
+     * @param y - the y of the point
+     * @param reach - the greatest distance from the point to the chord in pixels, up to 24
+     * @return the number of the nearest chord, -1 if none is within reach or they are bundled
+     */
+    public int getChordAt(ChordGraphModel<?> model, float x, float y, float reach) {
+        if (layoutItemCount <= 0 || isBundled(model)) {
+            return -1;
+        }
+        if (hitIndexModel != model || hitIndexVersion != model.getVersion()) {
+            chordHitIndex.clear(centerX, centerY, radius);
+            ChordGraphModel<?>.ChordCursor cursor = model.getChordCursor();
+            while (cursor.next()) {
+                int head = cursor.getHead();
+                int tail = cursor.getTail();
+                chordHitIndex.add(head, tail, getSlotX(head), getSlotY(head),
+                        getSlotX(tail), getSlotY(tail));
+            }
+            chordHitIndex.build();
+            hitIndexModel = model;
+            hitIndexVersion = model.getVersion();
+        }
+        return chordHitIndex.find(x, y, reach);
+    }
+
+    /**
+     * @param chord - a chord found by getChordAt(), good until the layout or the model changes
+     * @return the slot of the head of the chord
+     */
+    public int getChordHead(int chord) {
+        return chordHitIndex.getHead(chord);
+    }
+
+    /**
+     * @param chord - a chord found by getChordAt(), good until the layout or the model changes
+     * @return the slot of the tail of the chord
+     */
+    public int getChordTail(int chord) {
+        return chordHitIndex.getTail(chord);
+    }
+
+    /**
+     * Draws the highlight of a selected item over the graph, on its own so it can go over a
+     * cached picture of the graph: every chord of the item at full
+     * color and wider, the slots at their other ends and the slot of the item enlarged. It costs
+     * the chords of the one item, and for co-occurrence chords a walk of the pairs.
+     * @param model - the model, the layout must be up to date with it
+     * @param renderer - the renderer to draw into
+     * @param slot - the slot of the selected item
+     */
+    public void drawItemHighlight(ChordGraphModel<?> model, ChordGraphRenderer renderer,
+                                  int slot) {
+        ChordGraphModel<?>.ChordCursor cursor = model.getChordCursor(slot);
+        while (cursor.next()) {
+            int head = cursor.getHead();
+            int tail = cursor.getTail();
+            int color = colorPalette.getColor(getColorIndex(model.getItem(head).category));
+            renderer.drawQuad(getSlotX(head), getSlotY(head), centerX, centerY,
+                    getSlotX(tail), getSlotY(tail), HIGHLIGHT_STROKE_WIDTH, color);
+            int other = (head == slot) ? tail : head;
+            renderer.fillCircle(getSlotX(other), getSlotY(other), SLOT_RADIUS, color);
+        }
+        renderer.fillCircle(getSlotX(slot), getSlotY(slot), HIGHLIGHT_SLOT_RADIUS, primaryColor);
+    }
+
+    /**
+     * Draws the highlight of a selected chord over the graph: the chord at full color and wider
+     * and the slots at its ends enlarged.
+     * @param model - the model, the layout must be up to date with it
+     * @param renderer - the renderer to draw into
+     * @param head - the slot of the head of the chord
+     * @param tail - the slot of the tail of the chord
+     */
+    public void drawChordHighlight(ChordGraphModel<?> model, ChordGraphRenderer renderer,
+                                   int head, int tail) {
+        int color = colorPalette.getColor(getColorIndex(model.getItem(head).category));
+        renderer.drawQuad(getSlotX(head), getSlotY(head), centerX, centerY,
+                getSlotX(tail), getSlotY(tail), HIGHLIGHT_STROKE_WIDTH, color);
+        renderer.fillCircle(getSlotX(head), getSlotY(head), HIGHLIGHT_SLOT_RADIUS, primaryColor);
+        renderer.fillCircle(getSlotX(tail), getSlotY(tail), HIGHLIGHT_SLOT_RADIUS, primaryColor);
+    }
+
+    /**
+     * Draws the whole graph of a model, the layout must be up to date with it.
+     * @param model - the model to draw
+     * @param renderer - the renderer to draw into
+     */
+    public void draw(ChordGraphModel<?> model, ChordGraphRenderer renderer) {
+        renderer.begin(layoutWidth, layoutHeight);
+        drawRim(renderer);
+        drawChords(model, renderer);
+        drawSlots(renderer);
+        drawLabels(model, renderer);
+        renderer.end();
+    }
+
+    /**
+     * Draws the rim of the graph.
+     * @param renderer - the renderer to draw into
+     */
+    public void drawRim(ChordGraphRenderer renderer) {
+        renderer.drawCircle(centerX, centerY, radius, RIM_STROKE_WIDTH, primaryColor);
+    }
+
+    /**
+     * Draws the chords of a model, bundled if there are too many to draw one by one.
+     * @param model - the model to draw the chords of
+     * @param renderer - the renderer to draw into
+     * @return true if the chords were bundled into ribbons
+     */
+    public boolean drawChords(ChordGraphModel<?> model, ChordGraphRenderer renderer) {
+        boolean bundled = isBundled(model);
+        if (bundled) {
+            drawCategoryBundles(model, renderer);
+        } else {
+            drawItemsChords(model, renderer);
+        }
+        return bundled;
+    }
+
+    /**
+     * Draw the slots around the rim of the chordgraph. One for each item.
+     * @param renderer - the renderer to draw into
+     */
+    public void drawSlots(ChordGraphRenderer renderer) {
+        for (int slot = 0; slot < layoutItemCount; slot++) {
+            renderer.fillCircle(getSlotX(slot), getSlotY(slot), SLOT_RADIUS, primaryColor);
+        }
+    }
+
+    /**
+     * Draw the labels around the rim of the chordgraph. One for each item.
+     * @param model - the model to draw the labels of
+     * @param renderer - the renderer to draw into
+     */
+    public void drawLabels(ChordGraphModel<?> model, ChordGraphRenderer renderer) {
+        for (int slot = 0; slot < layoutItemCount; slot++) {
+            renderer.drawLabel(model.getItem(slot).value.toString(), labelX[slot], labelY[slot],
+                    labelDegrees[slot], labelFlipped[slot], LABEL_TEXT_SIZE, primaryColor);
+        }
+    }
+
+    /**
+     * Draws the chords from the model that represent a match between items, from the chord batch
+     * when batching is on. The batch holds the chords flattened into line segments grouped by
+     * color and stroke width, every group is drawn with one drawLines() call rather than a path
+     * per chord. It is flattened again if the layout or the model changed.
+     * @param model - the model to draw the chords of
+     * @param renderer - the renderer to draw into
+     */
+    private void drawItemsChords(ChordGraphModel<?> model, ChordGraphRenderer renderer) {
+        if (!chordBatching) {
+            walkItemsChords(model, renderer, null);
+            return;
+        }
+        if (batchModel != model || batchVersion != model.getVersion()) {
+            chordBatch.clear(colorPalette.size() * CHORD_STYLES);
+            walkItemsChords(model, null, chordBatch);
+            batchModel = model;
+            batchVersion = model.getVersion();
+        }
+        chordBatch.draw(renderer);
+    }
+
+    /**
+     * Walks the chords of the model and either draws each one or flattens it into the batch.
+     * @param model - the model to walk the chords of
+     * @param renderer - the renderer to draw every chord into, null to flatten them
+     * @param batch - the batch to flatten the chords into, null to draw them
+     */
+    private void walkItemsChords(ChordGraphModel<?> model, ChordGraphRenderer renderer,
+                                 ChordLineBatch batch) {
+        // iterate through the model chords and draw the arcs, the cursor doesn't allocate
+        boolean weighted = model.getCooccurrenceWindow() > 0;
+        ChordGraphModel<?>.ChordCursor cursor = model.getChordCursor();
+        while (cursor.next()) {
+            int startSlot = cursor.getHead();
+            int endSlot = cursor.getTail();
+
+            // get the category of the chord, the head's one when the chord links two categories
+            ChordGraphModel<?>.ChordGraphCategory cat = model.getItem(startSlot).category;
+            // get the color associated with this category's word
+            int colorIndex = getColorIndex(cat);
+
+            float strokeWidth = CHORD_STROKE_WIDTH;
+            int color;
+            int style;
+            if (weighted) {
+                // the heavier the chord the wider and more opaque it is
+                int weight = Math.max(1, (int) cursor.getValue());
+                int doublings = 31 - Integer.numberOfLeadingZeros(weight);
+                strokeWidth = Math.min(WEIGHTED_MAX_STROKE_WIDTH, WEIGHTED_MIN_STROKE_WIDTH
+                        + doublings * WEIGHTED_STROKE_WIDTH_PER_DOUBLING);
+                color = colorPalette.getColor(colorIndex, WEIGHTED_ALPHA_BUCKETS[doublings]);
+                style = CHORD_ALPHA_BUCKETS.length + doublings;
+            } else {
+                // fade the color based on the number of connections, limit if more than 9
+                int categorySize = model.getCategorySize(cat.symbol);
+                int chordCount = categorySize>9?9:categorySize;
+                color = colorPalette.getColor(colorIndex, CHORD_ALPHA_BUCKETS[chordCount]);
+                style = chordCount;
+            }
+
+            // a quadratic Bezier curve through the center
+            if (batch != null) {
+                batch.addQuad(colorIndex * CHORD_STYLES + style, color, strokeWidth,
+                        getSlotX(startSlot), getSlotY(startSlot), centerX, centerY,
+                        getSlotX(endSlot), getSlotY(endSlot));
+            } else {
+                renderer.drawQuad(getSlotX(startSlot), getSlotY(startSlot), centerX, centerY,
+                        getSlotX(endSlot), getSlotY(endSlot), strokeWidth, color);
+            }
+        }
+    }
+
+    /**
+     * Draws the chords of every category as ribbons between the slot ranges the category occupies
+     * in each sector of the rim, more opaque the more chords they stand for. The ribbons are found
+     * again only if the layout or the model changed, like the chord batch, so drawing a frame
+     * doesn't walk the items.
+     * @param model - the model to draw the chords of
+     * @param renderer - the renderer to draw into
+     */
+    private void drawCategoryBundles(ChordGraphModel<?> model, ChordGraphRenderer renderer) {
+        if (ribbonModel != model || ribbonVersion != model.getVersion()) {
+            findCategoryBundles(model);
+            ribbonModel = model;
+            ribbonVersion = model.getVersion();
+        }
+        for (int r = 0; r < ribbonCount; r++) {
+            int fromFirst = ribbonSlots[r * 4];
+            int fromLast = ribbonSlots[r * 4 + 1];
+            int toFirst = ribbonSlots[r * 4 + 2];
+            int toLast = ribbonSlots[r * 4 + 3];
+            renderer.fillRibbon(getSlotX(fromFirst), getSlotY(fromFirst),
+                    getSlotX(fromLast), getSlotY(fromLast),
+                    getSlotX(toFirst), getSlotY(toFirst),
+                    getSlotX(toLast), getSlotY(toLast),
+                    centerX, centerY, RIBBON_STROKE_WIDTH, ribbonColors[r]);
+        }
+    }
+
+    /**
+     * Finds the ribbons of every category, one between every pair of sectors of the rim the
+     * category has items in. Chords inside a single sector are short and left out.
+     * @param model - the model to find the ribbons of
+     */
+    private void findCategoryBundles(ChordGraphModel<?> model) {
+        ribbonCount = 0;
+        for (int i = 0; i < layoutItemCount; i++) {
+            // handle each category once, at its first item
+            ChordGraphModel<?>.ChordGraphCategory cat = model.getItem(i).category;
+            if (model.getCategorySize(cat.symbol) < 2 || model.getFirstMember(cat.symbol) != i) {
+                continue;
+            }
+
+            // count the members per sector, the members are sorted so the sectors come in order
+            int occupied = 0;
+            for (int slot = i; slot >= 0; slot = model.getNextMember(slot)) {
+                int sector = (int) ((long) slot * BUNDLE_SECTORS / layoutItemCount);
+                if (sectorCount[sector] == 0) {
+                    occupiedSectors[occupied++] = sector;
+                    sectorFirstSlot[sector] = slot;
+                }
+                sectorCount[sector]++;
+                sectorLastSlot[sector] = slot;
+            }
+
+            // a ribbon between every pair of sectors
+            int colorIndex = getColorIndex(cat);
+            for (int a = 0; a < occupied; a++) {
+                int from = occupiedSectors[a];
+                for (int b = a + 1; b < occupied; b++) {
+                    int to = occupiedSectors[b];
+                    addRibbon(sectorFirstSlot[from], sectorLastSlot[from],
+                            sectorFirstSlot[to], sectorLastSlot[to],
+                            colorIndex, (long) sectorCount[from] * sectorCount[to]);
+                }
+            }
+
+            // reset the counts for the next category
+            for (int a = 0; a < occupied; a++) {
+                sectorCount[occupiedSectors[a]] = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds one ribbon from the slot range [fromFirst, fromLast] to [toFirst, toLast]. The ranges
+     * are in clockwise order so the outline doesn't cross itself.
+     * @param fromFirst - the first slot of the start range
+     * @param fromLast - the last slot of the start range
+     * @param toFirst - the first slot of the end range
+     * @param toLast - the last slot of the end range
+     * @param colorIndex - the palette index of the ribbon's color
+     * @param chordCount - the number of chords the ribbon stands for
+     */
+    private void addRibbon(int fromFirst, int fromLast, int toFirst, int toLast, int colorIndex,
+                           long chordCount) {
+        if (ribbonCount == ribbonColors.length) {
+            ribbonColors = Arrays.copyOf(ribbonColors, Math.max(16, ribbonCount * 2));
+            ribbonSlots = Arrays.copyOf(ribbonSlots, ribbonColors.length * 4);
+        }
+        ribbonSlots[ribbonCount * 4] = fromFirst;
+        ribbonSlots[ribbonCount * 4 + 1] = fromLast;
+        ribbonSlots[ribbonCount * 4 + 2] = toFirst;
+        ribbonSlots[ribbonCount * 4 + 3] = toLast;
+        // the more chords the ribbon stands for the more opaque it is
+        int doublings = 63 - Long.numberOfLeadingZeros(chordCount);
+        ribbonColors[ribbonCount] = colorPalette.getColor(colorIndex,
+                RIBBON_ALPHA_BUCKETS[doublings]);
+        ribbonCount++;
+    }
+
+    /**
+     * Gets the palette index of the color for the provided category. The index is a hash of the
+     * category's word so it doesn't depend on the order words were added in, and the palette keeps
+     * the indices of recently seen words in a bounded cache keyed by symbol id.
+     * @param cat - the category to find the color of
+     * @return the index of the color in the palette
+     */
+    private int getColorIndex(ChordGraphModel<?>.ChordGraphCategory cat) {
+        return colorPalette.getColorIndex(cat.symbol, cat.distinctValue);
+    }
+}
@@ -7,141 +7,1819 @@ package com.examples.gregcantrell.textchordgraph.ChordGraph;
 import android.util.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by gcantrell on 8/27/2015.
  *
  * This class is a data model that contains the data needed to create and visualize a Chord Graph.
- * Items are added and chords are created when an added item has matching values.
- * TODO: currently not taking into account multi-threading. Unless we add animation or realtime
- * TODO: updating it isn't necessary.
+ * Items are added and chords are created when an added item has matching values. The model is not
+ * thread-safe, ConcurrentChordGraphModel shares one between writer and reader threads.
  *
- * @param <T> - .equals() is used so any type used should take that into consideration
+ * @param <T> - .equals() is used by default so any type used should take that into consideration.
+ *            The default matcher also keys the categories by toString(), so values that are equal
+ *            must have the same toString() as well (true of String, the boxed primitives and
+ *            enums). Values that are equal with different toString()s are never linked.
  */
 public class ChordGraphModel<T> {
-    private HashMap<UUID, ChordGraphItem<T>> items;
-    private HashMap<String, ChordGraphCategory> chordCategories;
-    private ArrayList<Chord> chords;
+    private PagedArray.Refs<ChordGraphItem<T>> items; // dense, the index of an item is its slot
+    private int itemCount;
+    private PagedArray.Ints itemIndices; // the index of every item by its id
+    private int idCount; // the item ids handed out, live or free
+    private int[] freeIds; // the ids of removed items, handed out again first
+    private int freeIdCount;
+    private SymbolTable symbols; // the symbol ids of the values' keys
+    private PagedArray.Refs<ChordGraphCategory> chordCategories; // by symbol id, null if empty
+    private PagedArray.Ints memberCounts; // the number of items of every category by symbol id
+    private PagedArray.Ints firstMembers; // the id of the first item of a category, -1 if none
+    private PagedArray.Ints lastMembers; // the id of the last item of a category, -1 if none
+    private PagedArray.Ints nextMembers; // by item id, the next item of its category in index
+    private PagedArray.Ints previousMembers; // order and the previous one, -1 at the ends
+    private ChordStore chordStore; // not null when the storage is OBJECTS or PRIMITIVE
+    private ChordStorage storage;
+    private long implicitChordCount; // the sum of k(k-1)/2 over the categories
+    private ChordCursor cursor; // reused by getChordCursor()
+    private boolean readOnly; // set on snapshots
+    private long version; // increased on every change
+    private int categoryCount; // the number of categories with items
+    private long lastBuildNanos; // how long the last update() or addItems() took
+    private MetricsListener metricsListener;
+    private int windowSize; // the most items kept, 0 if the model isn't a sliding window
+    private int oldestSlot; // the slot of the oldest item, replaced next once the window is full
+    private ValueMatcher<? super T> matcher; // decides which values are linked
+    private NGramIndex keyIndex; // the distinct keys by symbol id, only kept for a fuzzy matcher
+    private ArrayList<ArrayList<Integer>> nearKeys; // the symbol ids near every key, by symbol id
+    private int cooccurrenceWindow; // link words this many tokens apart or less, 0 to link equals
+    private PairWeightMap pairWeights; // the co-occurrence weights by pair of symbol ids
+    private PagedArray.Ints pairDegrees; // the number of weighted pairs of every symbol id
+    private PagedArray.Refs<int[]> pairPartners; // the other symbol ids of those pairs
+    private PagedArray.Ints partnerGenerations; // the generation every partner list was made in
+    private int generation; // increased by every snapshot, which shares the partner lists
+
+    // Rough sizes in bytes used by estimateRetainedBytes(), for 4 byte references
+    private static final int ITEM_BYTES = 32;           // the item and its slot in the pages
+    private static final int MEMBER_BYTES = 12;         // the index and member links of an id
+    private static final int CATEGORY_BYTES = 36;       // the category, its slot and member counts
+    private static final int SYMBOL_BYTES = 48;         // a SymbolTable entry, the String is shared
+    private static final int CHORD_OBJECT_BYTES = 28;   // a Chord, its Pair and its store slot
+    private static final int CHORD_PRIMITIVE_BYTES = 24; // head, tail, value, links and flag
+    private static final int STORE_ITEM_BYTES = 16;     // the index and list of an item's id
+    private static final int PAIR_SLOT_BYTES = 12;      // a key and weight slot of a PairWeightMap
+    private static final int PAIR_PARTNER_BYTES = 8;    // a pair in the partner lists of both ids
+
+    // The initial size of the tables by item id and by symbol id, they grow with the ids
+    private static final int INITIAL_IDS = 64;
+    // The initial size of the partner list of a symbol id
+    private static final int INITIAL_PAIR_PARTNERS = 4;
+    // The member position of a cursor that hasn't started walking a category
+    private static final int UNSTARTED = -2;
+
+    /**
+     * The ways the chords of the model can be stored. However they are stored, they are walked
+     * with a ChordCursor.
+     */
+    public enum ChordStorage {
+        OBJECTS,    // a Chord object per chord, kept with its links in a ChordStore
+        PRIMITIVE,  // head, tail and value in the primitive arrays of a ChordStore
+        IMPLICIT    // nothing stored, every pair of items in a category is a chord. The chords
+                    // are enumerated from the sorted category members as they are walked, so
+                    // memory scales with the number of items
+    }
+
+    /**
+     * Receives the metrics of the model every time it is built by update() or addItems().
+     */
+    public interface MetricsListener {
+        /**
+         * Called on the thread that built the model. The counts can be read from the model.
+         *
+         * @param model the model that was built
+         * @param buildNanos how long the build took
+         * @param finished false if the build was cancelled
+         */
+        void onModelBuilt(ChordGraphModel<?> model, long buildNanos, boolean finished);
+    }
+
+    /**
+     * Checked while the model is being updated so that a superseded update can stop early.
+     */
+    public interface CancelSignal {
+        /**
+         * @return true if the update should stop
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * Constructor just initializes values, the chords are stored as objects
+     */
+    public ChordGraphModel() {
+        this(ChordStorage.OBJECTS);
+    }
+
+    /**
+     * Constructor just initializes values that were passed in
+     *
+     * @param storage how the chords should be stored
+     */
+    public ChordGraphModel(ChordStorage storage) {
+        this.storage = storage;
+        symbols = new SymbolTable();
+        if (storage != ChordStorage.IMPLICIT) {
+            chordStore = new ChordStore(storage == ChordStorage.OBJECTS);
+        }
+        initTables();
+        cursor = new ChordCursor();
+        matcher = ValueMatchers.exact();
+    }
+
+    /**
+     * Constructor for a read-only snapshot, it shares the pages of every table with the model
+     * until the model writes them. See snapshot().
+     *
+     * @param model the model to take the snapshot of
+     */
+    private ChordGraphModel(ChordGraphModel<T> model) {
+        storage = model.storage;
+        items = model.items.share();
+        itemCount = model.itemCount;
+        itemIndices = model.itemIndices.share();
+        idCount = model.idCount;
+        freeIds = new int[0];
+        symbols = model.symbols.share();
+        chordCategories = model.chordCategories.share();
+        memberCounts = model.memberCounts.share();
+        firstMembers = model.firstMembers.share();
+        lastMembers = model.lastMembers.share();
+        nextMembers = model.nextMembers.share();
+        previousMembers = model.previousMembers.share();
+        if (model.chordStore != null) {
+            chordStore = model.chordStore.share();
+        }
+        if (model.pairWeights != null) {
+            pairWeights = model.pairWeights.share();
+            pairDegrees = model.pairDegrees.share();
+            pairPartners = model.pairPartners.share();
+            // the partner lists themselves are shared too, the model copies one before writing
+            model.generation++;
+        }
+        implicitChordCount = model.implicitChordCount;
+        categoryCount = model.categoryCount;
+        lastBuildNanos = model.lastBuildNanos;
+        windowSize = model.windowSize;
+        oldestSlot = model.oldestSlot;
+        matcher = model.matcher;
+        cooccurrenceWindow = model.cooccurrenceWindow;
+        version = model.version;
+        cursor = new ChordCursor();
+        readOnly = true;
+    }
+
+    /**
+     * Makes the empty tables of the items and categories.
+     */
+    private void initTables() {
+        items = new PagedArray.Refs<ChordGraphItem<T>>(Math.max(windowSize, INITIAL_IDS));
+        itemCount = 0;
+        itemIndices = new PagedArray.Ints(INITIAL_IDS);
+        nextMembers = new PagedArray.Ints(INITIAL_IDS);
+        previousMembers = new PagedArray.Ints(INITIAL_IDS);
+        idCount = 0;
+        freeIds = new int[INITIAL_IDS];
+        freeIdCount = 0;
+        chordCategories = new PagedArray.Refs<ChordGraphCategory>(INITIAL_IDS);
+        memberCounts = new PagedArray.Ints(INITIAL_IDS);
+        firstMembers = new PagedArray.Ints(INITIAL_IDS);
+        lastMembers = new PagedArray.Ints(INITIAL_IDS);
+    }
+
+    /**
+     * Constructor for a sliding-window model that keeps only the last windowSize items. Once the
+     * window is full, addItem() evicts the oldest item along with its category membership and puts
+     * the new item in its slot, so the index of an item is its slot and the slots are filled in
+     * ring order. Evicting an item costs O(degree) and the symbol id of a word that left the
+     * window is released, so memory stays flat however many items are added.
+     *
+     * Any storage can be used. The chords of an evicted item go with its category membership
+     * when they are IMPLICIT, and stored chords are dropped from the chord store by the id of the
+     * item in O(degree). A fuzzy matcher keeps every key it has seen in its key index, so with one
+     * the symbol ids aren't released and memory grows with the number of distinct keys.
+     *
+     * @param storage how the chords should be stored
+     * @param windowSize the number of items to keep
+     */
+    public ChordGraphModel(ChordStorage storage, int windowSize) {
+        this(storage);
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("The window size must be at least 1");
+        }
+        this.windowSize = windowSize;
+        items.ensureLength(windowSize);
+    }
+
+    /**
+     * Adds a new item to the Chord Graph data model and creates chords between matching values.
+     *
+     * @param item the new item to add.
+     */
+    public void addItem(T item) {
+        checkWritable();
+        version++;
+        if (windowSize > 0 && itemCount == windowSize) {
+            replaceOldest(item);
+            return;
+        }
+        ChordGraphItem<T> graphItem = new ChordGraphItem<T>(item, internKey(item));
+        int index = itemCount;
+        //add the new graph item to the collection
+        appendItem(graphItem);
+        addToStore(graphItem);
+        //Chord creation logic
+        addChords(graphItem, index);
+        addItem(graphItem);
+        if (pairWeights != null) {
+            countCooccurrences(index, index + 1, 1);
+        }
+    }
+
+    /**
+     * Puts a new item after the last one and gives it an id.
+     *
+     * @param item the new item
+     */
+    private void appendItem(ChordGraphItem<T> item) {
+        int index = itemCount++;
+        items.ensureLength(itemCount);
+        item.id = newItemId(index);
+        items.set(index, item);
+    }
+
+    /**
+     * Hands out an id for a new item, the id of a removed item if there is one.
+     *
+     * @param index the index of the item
+     * @return the id
+     */
+    private int newItemId(int index) {
+        int id;
+        if (freeIdCount > 0) {
+            id = freeIds[--freeIdCount];
+        } else {
+            id = idCount++;
+            itemIndices.ensureLength(idCount);
+            nextMembers.ensureLength(idCount);
+            previousMembers.ensureLength(idCount);
+        }
+        itemIndices.set(id, index);
+        return id;
+    }
+
+    /**
+     * Takes back the id of a removed item so a new item can have it.
+     *
+     * @param id the id
+     */
+    private void freeItemId(int id) {
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(INITIAL_IDS, freeIdCount * 2));
+        }
+        freeIds[freeIdCount++] = id;
+    }
+
+    /**
+     * Evicts the oldest item of a full sliding window and puts a new item in its slot. The new
+     * item is interned after the eviction so it can reuse the symbol id the evicted one released.
+     *
+     * @param item the new item to add
+     */
+    private void replaceOldest(T item) {
+        int slot = oldestSlot;
+        if (pairWeights != null) {
+            // the oldest item only co-occurs with the newer ones after it
+            countRingCooccurrences(slot, 1, -1);
+        }
+        ChordGraphItem<T> oldest = items.get(slot);
+        if (chordStore != null) {
+            chordStore.removeItem(oldest.storeId);
+        }
+        removeFromCategory(oldest);
+        freeItemId(oldest.id);
+        ChordGraphItem<T> graphItem = new ChordGraphItem<T>(item, internKey(item));
+        graphItem.id = newItemId(slot);
+        items.set(slot, graphItem);
+        addToStore(graphItem);
+        addChords(graphItem, slot);
+        addItem(graphItem);
+        if (pairWeights != null) {
+            // and the newest item only with the older ones before it
+            countRingCooccurrences(slot, -1, 1);
+        }
+        oldestSlot = (slot + 1 == windowSize) ? 0 : slot + 1;
+    }
+
+    /**
+     * Interns the key of a value, its toString() by default, to a symbol id once when its item is
+     * created. The categories are kept in a list indexed by symbol id and items are matched to a
+     * category by id, so no String is hashed or compared after this. With a fuzzy matcher a new
+     * key is looked up in the key index and linked to the keys near it, so the index is queried
+     * once per distinct key, not per item.
+     *
+     * @param value the value of a new item
+     * @return the symbol id of the value's key
+     */
+    private int internKey(T value) {
+        int symbolCount = symbols.size();
+        int symbol = symbols.intern(matcher.getKey(value));
+        if (keyIndex != null && symbol == symbolCount) {
+            String key = symbols.getSymbol(symbol);
+            ArrayList<Integer> near = new ArrayList<Integer>();
+            int found = keyIndex.query(key, matcher.getMaxKeyDistance());
+            for (int f = 0; f < found; f++) {
+                int other = keyIndex.getResult(f);
+                near.add(other);
+                nearKeys.get(other).add(symbol);
+            }
+            // symbol ids are dense and never released with a fuzzy matcher
+            nearKeys.add(near);
+            keyIndex.add(key, symbol);
+        }
+        return symbol;
+    }
+
+    /**
+     * Sets the matcher that decides which values are linked, the model must be empty. The key of
+     * a value decides its category, the label of the category is the key.
+     *
+     * A fuzzy matcher links across categories so it needs stored chords, OBJECTS or PRIMITIVE.
+     * A new key is looked up in an n-gram index, which only compares the keys that share most of
+     * its bigrams, and the keys near it are kept so adding an item only links their items.
+     * addItems() adds the items one at a time with a fuzzy matcher.
+     *
+     * @param matcher the matcher to use
+     */
+    public void setMatcher(ValueMatcher<? super T> matcher) {
+        checkWritable();
+        if (itemCount > 0 || symbols.size() > 0) {
+            throw new IllegalStateException("The matcher can only be set on an empty model");
+        }
+        if (matcher.getMaxKeyDistance() > 0 && storage == ChordStorage.IMPLICIT) {
+            throw new IllegalArgumentException("A fuzzy matcher needs stored chords");
+        }
+        if (matcher.getMaxKeyDistance() > 0 && cooccurrenceWindow > 0) {
+            throw new IllegalArgumentException("A fuzzy matcher doesn't link co-occurrences");
+        }
+        this.matcher = matcher;
+        keyIndex = (matcher.getMaxKeyDistance() > 0) ? new NGramIndex() : null;
+        nearKeys = (keyIndex != null) ? new ArrayList<ArrayList<Integer>>() : null;
+    }
+
+    /**
+     * @return the matcher that decides which values are linked
+     */
+    public ValueMatcher<? super T> getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Switches the model to co-occurrence chords, the model must be empty. Instead of linking
+     * equal values, every pair of distinct words that appear within windowTokens tokens of each
+     * other is linked by one chord whose value is the number of times they do. The words are the
+     * categories, so the matcher decides which values are the same word.
+     *
+     * A chord is drawn between the first items of the two categories. The weights are counted as
+     * items are added, update() only recounts the pairs around the range that changed and a
+     * sliding window uncounts the pairs of the item it evicts, all in O(windowTokens) per item.
+     * The storage of the model isn't used for these chords.
+     *
+     * @param windowTokens the largest distance in tokens between two words that co-occur, 0 to go
+     * back to linking equal values
+     */
+    public void setCooccurrence(int windowTokens) {
+        checkWritable();
+        if (itemCount > 0 || symbols.size() > 0) {
+            throw new IllegalStateException("Co-occurrence can only be set on an empty model");
+        }
+        if (windowTokens < 0) {
+            throw new IllegalArgumentException("The co-occurrence window can't be negative");
+        }
+        if (windowTokens > 0 && keyIndex != null) {
+            throw new IllegalArgumentException("A fuzzy matcher doesn't link co-occurrences");
+        }
+        cooccurrenceWindow = windowTokens;
+        pairWeights = null;
+        if (windowTokens > 0) {
+            initPairs();
+        }
+    }
+
+    /**
+     * Makes the empty tables of the co-occurrence pairs.
+     */
+    private void initPairs() {
+        pairWeights = new PairWeightMap();
+        pairDegrees = new PagedArray.Ints(INITIAL_IDS);
+        pairPartners = new PagedArray.Refs<int[]>(INITIAL_IDS);
+        partnerGenerations = new PagedArray.Ints(INITIAL_IDS);
+    }
+
+    /**
+     * @return the co-occurrence window in tokens, 0 if the chords link equal values
+     */
+    public int getCooccurrenceWindow() {
+        return cooccurrenceWindow;
+    }
+
+    /**
+     * Adds to the co-occurrence weight of two words. The same word doesn't co-occur with itself.
+     * A new pair is added to the partner lists of both words and a pair whose weight drops to 0 is
+     * removed from them, so the chords of a word are found without walking every pair.
+     *
+     * @param first the symbol id of one word
+     * @param second the symbol id of the other word
+     * @param delta 1 to count a co-occurrence, -1 to uncount it
+     */
+    private void addCooccurrence(int first, int second, int delta) {
+        if (first == second) {
+            return;
+        }
+        int weight = pairWeights.add(PairWeightMap.pairKey(first, second), delta);
+        if (weight == delta) {
+            // a new pair
+            int length = Math.max(first, second) + 1;
+            pairDegrees.ensureLength(length);
+            pairPartners.ensureLength(length);
+            partnerGenerations.ensureLength(length);
+            addPartner(first, second);
+            addPartner(second, first);
+        } else if (weight == 0) {
+            removePartner(first, second);
+            removePartner(second, first);
+        }
+    }
+
+    /**
+     * Appends a word to the partner list of another.
+     *
+     * @param symbol the symbol id of the word whose list to add to
+     * @param partner the symbol id of the word it now co-occurs with
+     */
+    private void addPartner(int symbol, int partner) {
+        int degree = pairDegrees.get(symbol);
+        int[] partners = pairPartners.get(symbol);
+        if (partners == null) {
+            partners = setPartners(symbol, new int[INITIAL_PAIR_PARTNERS]);
+        } else if (degree == partners.length) {
+            partners = setPartners(symbol, Arrays.copyOf(partners, degree * 2));
+        } else {
+            partners = writablePartners(symbol, partners);
+        }
+        partners[degree] = partner;
+        pairDegrees.set(symbol, degree + 1);
+    }
+
+    /**
+     * Removes a word from the partner list of another, the last partner takes its place.
+     *
+     * @param symbol the symbol id of the word whose list to remove from
+     * @param partner the symbol id of the word it no longer co-occurs with
+     */
+    private void removePartner(int symbol, int partner) {
+        int last = pairDegrees.get(symbol) - 1;
+        int[] partners = pairPartners.get(symbol);
+        for (int p = last; p >= 0; p--) {
+            if (partners[p] == partner) {
+                partners = writablePartners(symbol, partners);
+                partners[p] = partners[last];
+                pairDegrees.set(symbol, last);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the partner list of a word to write it, copying it first if a snapshot shares it.
+     *
+     * @param symbol the symbol id of the word
+     * @param partners the partner list of the word
+     * @return the partner list to write
+     */
+    private int[] writablePartners(int symbol, int[] partners) {
+        return (partnerGenerations.get(symbol) == generation)
+                ? partners : setPartners(symbol, partners.clone());
+    }
+
+    /**
+     * @param symbol the symbol id of a word
+     * @param partners the new partner list of the word, only in this model
+     * @return the partner list
+     */
+    private int[] setPartners(int symbol, int[] partners) {
+        pairPartners.set(symbol, partners);
+        partnerGenerations.set(symbol, generation);
+        return partners;
+    }
+
+    /**
+     * @param symbol a symbol id
+     * @return the number of weighted pairs of the symbol id
+     */
+    private int getPairDegree(int symbol) {
+        return (symbol < pairDegrees.length()) ? pairDegrees.get(symbol) : 0;
+    }
+
+    /**
+     * Counts or uncounts the co-occurrences of the items in index order, the pairs at most the
+     * window apart that have their later item at or after start and their earlier item before end.
+     * Those are the pairs that change when the items in [start, end) are removed or inserted.
+     *
+     * @param start the index of the first item of the range
+     * @param end the index after the last item of the range
+     * @param delta 1 to count, -1 to uncount
+     */
+    private void countCooccurrences(int start, int end, int delta) {
+        int last = Math.min(itemCount, end + cooccurrenceWindow);
+        for (int j = start; j < last; j++) {
+            int symbol = items.get(j).symbol;
+            int headEnd = Math.min(j, end);
+            for (int i = Math.max(0, j - cooccurrenceWindow); i < headEnd; i++) {
+                addCooccurrence(items.get(i).symbol, symbol, delta);
+            }
+        }
+    }
+
+    /**
+     * Counts or uncounts the co-occurrences of one slot of a full sliding window with the items
+     * around it in ring order.
+     *
+     * @param slot the slot of the item
+     * @param step 1 for the newer items after the slot, -1 for the older items before it
+     * @param delta 1 to count, -1 to uncount
+     */
+    private void countRingCooccurrences(int slot, int step, int delta) {
+        int symbol = items.get(slot).symbol;
+        int reach = Math.min(cooccurrenceWindow, windowSize - 1);
+        for (int d = 1; d <= reach; d++) {
+            int other = (slot + step * d + windowSize) % windowSize;
+            addCooccurrence(symbol, items.get(other).symbol, delta);
+        }
+    }
+
+    /**
+     * Throws if this model is a sliding window, the index of an item there is its slot so items
+     * can only be added at the end.
+     */
+    private void checkNotWindowed() {
+        if (windowSize > 0) {
+            throw new IllegalStateException("A sliding-window model can only be added to");
+        }
+    }
+
+    /**
+     * Adds many items at once, spreading the work over the threads of an executor. The result is
+     * identical to calling addItem() for every value in order: the same indices, symbol ids,
+     * categories and chords in the same order.
+     *
+     * The values are split into chunks and each chunk works out the keys of its values and
+     * which of them are the same, in parallel. The chunks are then merged in order, which hands out
+     * the symbol ids in the same order a sequential build would. The chords are created in
+     * parallel a group of new items at a time. A group only reads the model and makes the chords
+     * ending at its own items, the chords are added to the model in index order at the end. The
+     * model isn't changed until all of the parallel work is done, so if it fails the model is left
+     * as it was.
+     *
+     * ForkJoinPool isn't available before API 21 so any ExecutorService can be used, on a JVM a
+     * ForkJoinPool works as well.
+     *
+     * @param values the values to add, in order
+     * @param executor the executor to run the parallel work on
+     * @param parallelism the number of chunks to split the work into, usually the thread count
+     * @throws InterruptedException if the thread is interrupted while waiting for the work
+     */
+    public void addItems(List<T> values, ExecutorService executor, int parallelism)
+            throws InterruptedException {
+        checkWritable();
+        checkNotWindowed();
+        long startNanos = System.nanoTime();
+        int count = values.size();
+        if (count == 0) {
+            return;
+        }
+        if (keyIndex != null) {
+            // near keys link across the chunks, so the items are added in order
+            for (int i = 0; i < count; i++) {
+                addItem(values.get(i));
+            }
+            buildFinished(startNanos, true);
+            return;
+        }
+        int base = itemCount;
+
+        // find the distinct keys of every chunk in parallel
+        int chunkCount = Math.max(1, Math.min(parallelism, count));
+        ArrayList<Future<ChunkSymbols>> chunkFutures = new ArrayList<Future<ChunkSymbols>>();
+        for (int c = 0; c < chunkCount; c++) {
+            final List<T> chunk = values.subList((int) ((long) count * c / chunkCount),
+                    (int) ((long) count * (c + 1) / chunkCount));
+            chunkFutures.add(executor.submit(new Callable<ChunkSymbols>() {
+                @Override
+                public ChunkSymbols call() {
+                    return new ChunkSymbols(chunk, matcher);
+                }
+            }));
+        }
+        List<ChunkSymbols> chunkSymbols = awaitAll(chunkFutures);
+
+        // merge the chunks in order so the symbol ids come out as they would sequentially
+        ArrayList<ChordGraphItem<T>> newItems = new ArrayList<ChordGraphItem<T>>(count);
+        for (ChunkSymbols chunk : chunkSymbols) {
+            int[] globalIds = new int[chunk.keys.size()];
+            for (int k = 0; k < globalIds.length; k++) {
+                globalIds[k] = symbols.intern(chunk.keys.get(k));
+            }
+            for (int i = 0; i < chunk.localIds.length; i++) {
+                newItems.add(new ChordGraphItem<T>(values.get(newItems.size()),
+                        globalIds[chunk.localIds[i]]));
+            }
+        }
+
+        // create the chords of each group of new items in parallel, sorted by their tail item
+        ArrayList<Chord>[] tailChords =
+                createChordsInParallel(newItems, executor, parallelism);
+
+        // nothing can fail from here on, add the items and then their chords in index order
+        version++;
+        for (int i = 0; i < count; i++) {
+            ChordGraphItem<T> item = newItems.get(i);
+            appendItem(item);
+            addToStore(item);
+            addItem(item);
+        }
+        if (tailChords != null) {
+            for (int i = 0; i < count; i++) {
+                if (tailChords[i] == null) {
+                    continue;
+                }
+                for (Chord chord : tailChords[i]) {
+                    storeChord(chord);
+                }
+            }
+        }
+        if (pairWeights != null) {
+            countCooccurrences(base, base + count, 1);
+        }
+        buildFinished(startNanos, true);
+    }
+
+    /**
+     * Creates the chords of the new items without changing the model. The new items are split
+     * into groups of about the same amount of work and each group is linked on its own thread. The
+     * chords are sorted by tail item and then head item, the order a sequential build makes them.
+     *
+     * @param newItems the items about to be added, in index order
+     * @param executor the executor to run the work on
+     * @param parallelism the number of groups to aim for
+     * @return the chords ending at each new item by its position in newItems, null entries for
+     * the items without any, or null if the chords are implicit or co-occurrences
+     * @throws InterruptedException if the thread is interrupted while waiting for the work
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ArrayList<Chord>[] createChordsInParallel(ArrayList<ChordGraphItem<T>> newItems,
+                                                     ExecutorService executor, int parallelism)
+            throws InterruptedException {
+        if (storage == ChordStorage.IMPLICIT || pairWeights != null) {
+            return null;
+        }
+        ArrayList<Chord>[] tailChords = new ArrayList[newItems.size()];
+
+        // gather the positions of the new members of every category in newItems, the symbols in
+        // order of their first new member
+        ArrayList<ArrayList<Integer>> newMembers =
+                new ArrayList<ArrayList<Integer>>(symbols.size());
+        for (int s = 0; s < symbols.size(); s++) {
+            newMembers.add(null);
+        }
+        ArrayList<Integer> touched = new ArrayList<Integer>();
+        long totalWork = 0;
+        for (int i = 0; i < newItems.size(); i++) {
+            int symbol = newItems.get(i).symbol;
+            ArrayList<Integer> members = newMembers.get(symbol);
+            if (members == null) {
+                members = new ArrayList<Integer>();
+                newMembers.set(symbol, members);
+                touched.add(symbol);
+            }
+            totalWork += members.size() + getCategorySize(symbol);
+            members.add(i);
+        }
+
+        // cut the new members into groups of about equal work, a large category is split up
+        long groupWork = Math.max(1, totalWork / Math.max(1, parallelism * 4));
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+        ArrayList<int[]> segments = new ArrayList<int[]>(); // {symbol, first member, end member}
+        long work = 0;
+        for (int symbol : touched) {
+            ArrayList<Integer> members = newMembers.get(symbol);
+            int existingCount = getCategorySize(symbol);
+            int segmentStart = 0;
+            for (int m = 0; m < members.size(); m++) {
+                work += existingCount + m;
+                if (work >= groupWork) {
+                    segments.add(new int[]{symbol, segmentStart, m + 1});
+                    futures.add(executor.submit(
+                            linkSegments(segments, newMembers, newItems, tailChords)));
+                    segments = new ArrayList<int[]>();
+                    segmentStart = m + 1;
+                    work = 0;
+                }
+            }
+            if (segmentStart < members.size()) {
+                segments.add(new int[]{symbol, segmentStart, members.size()});
+            }
+        }
+        if (!segments.isEmpty()) {
+            futures.add(executor.submit(
+                    linkSegments(segments, newMembers, newItems, tailChords)));
+        }
+        awaitAll(futures);
+        return tailChords;
+    }
+
+    /**
+     * Creates the work of linking a group of new members to the members before them in their
+     * category, existing ones first. Every tail item is written by one group only and the model
+     * isn't changed, so the groups can run at the same time.
+     *
+     * @param segments the new members to link, as {symbol, first member, end member}
+     * @param newMembers the positions of the new members of every category by symbol id
+     * @param newItems the items about to be added, in index order
+     * @param tailChords where to put the chords ending at each new item
+     * @return the work to run
+     */
+    private Callable<Void> linkSegments(final List<int[]> segments,
+                                        final ArrayList<ArrayList<Integer>> newMembers,
+                                        final ArrayList<ChordGraphItem<T>> newItems,
+                                        final ArrayList<Chord>[] tailChords) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int[] segment : segments) {
+                    ArrayList<Integer> members = newMembers.get(segment[0]);
+                    int firstMember = getFirstMemberId(segment[0]);
+                    for (int m = segment[1]; m < segment[2]; m++) {
+                        int position = members.get(m);
+                        ChordGraphItem<T> tail = newItems.get(position);
+                        ArrayList<Chord> linked = new ArrayList<Chord>();
+                        for (int id = firstMember; id >= 0; id = nextMembers.get(id)) {
+                            ChordGraphItem<T> head = items.get(itemIndices.get(id));
+                            if (matcher.matches(head.value, tail.value)) {
+                                linked.add(new Chord(head, tail, 1.0f));
+                            }
+                        }
+                        for (int h = 0; h < m; h++) {
+                            ChordGraphItem<T> head = newItems.get(members.get(h));
+                            if (matcher.matches(head.value, tail.value)) {
+                                linked.add(new Chord(head, tail, 1.0f));
+                            }
+                        }
+                        if (!linked.isEmpty()) {
+                            tailChords[position] = linked;
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Waits for every future and gets their results in order. If any of them fails the rest are
+     * cancelled and the failure is rethrown.
+     *
+     * @param futures the futures to wait for
+     * @return the results in the order of the futures
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static <R> List<R> awaitAll(List<Future<R>> futures) throws InterruptedException {
+        ArrayList<R> results = new ArrayList<R>(futures.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Updates the model so that it holds the given values in order. The range of values that
+     * changed is found by skipping the common prefix and suffix, then only the items in that range
+     * are removed and inserted and the indices of the items after it are shifted. The result is the
+     * same as calling clear() and adding all of the values again.
+     *
+     * @param newValues the complete list of values the model should contain
+     */
+    public void update(List<T> newValues) {
+        update(newValues, null);
+    }
+
+    /**
+     * Updates the model like update(List) but checks the signal between items. If the update is
+     * cancelled the model holds a consistent mix of the old and new values and a later update()
+     * will finish the job from there.
+     *
+     * @param newValues the complete list of values the model should contain
+     * @param signal the signal to check, may be null
+     * @return true if the update finished, false if it was cancelled
+     */
+    public boolean update(List<T> newValues, CancelSignal signal) {
+        checkWritable();
+        checkNotWindowed();
+        long startNanos = System.nanoTime();
+        int oldSize = itemCount;
+        int newSize = newValues.size();
+
+        // skip the values at the start that haven't changed
+        int start = 0;
+        while (start < oldSize && start < newSize
+                && items.get(start).value.equals(newValues.get(start))) {
+            start++;
+        }
+
+        // skip the values at the end that haven't changed
+        int oldEnd = oldSize;
+        int newEnd = newSize;
+        while (oldEnd > start && newEnd > start
+                && items.get(oldEnd - 1).value.equals(newValues.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+        }
+
+        // replace only the changed range, the co-occurrences around it are counted again
+        boolean changed = start < oldEnd || start < newEnd;
+        if (pairWeights != null && changed) {
+            countCooccurrences(start, oldEnd, -1);
+        }
+        removeItems(start, oldEnd);
+        int keptSize = itemCount;
+        boolean finished = insertItems(start, newValues.subList(start, newEnd), signal);
+        if (pairWeights != null && changed) {
+            countCooccurrences(start, start + itemCount - keptSize, 1);
+        }
+        buildFinished(startNanos, finished);
+        return finished;
+    }
+
+    /**
+     * Records how long a build took and tells the metrics listener, if there is one.
+     *
+     * @param startNanos the System.nanoTime() the build started at
+     * @param finished false if the build was cancelled
+     */
+    private void buildFinished(long startNanos, boolean finished) {
+        lastBuildNanos = System.nanoTime() - startNanos;
+        if (metricsListener != null) {
+            metricsListener.onModelBuilt(this, lastBuildNanos, finished);
+        }
+    }
+
+    /**
+     * Removes the items in the index range along with their chords and category membership. The
+     * items after the range are left with stale indices until they are shifted by insertItems().
+     * The chords are found from the removed items, so the cost is their degree and not the number
+     * of chords: the chord store drops the chords of an item by its id.
+     *
+     * @param start the index of the first item to remove
+     * @param end the index after the last item to remove
+     */
+    private void removeItems(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        version++;
+
+        for (int i = start; i < end; i++) {
+            ChordGraphItem<T> item = items.get(i);
+            if (chordStore != null) {
+                chordStore.removeItem(item.storeId);
+            }
+            removeFromCategory(item);
+            freeItemId(item.id);
+        }
+        removeSlots(start, end);
+    }
+
+    /**
+     * Moves the items after a range of slots down over it. Their ids still map to their old
+     * indices.
+     *
+     * @param start the first slot to remove
+     * @param end the slot after the last one to remove
+     */
+    private void removeSlots(int start, int end) {
+        int removed = end - start;
+        for (int i = end; i < itemCount; i++) {
+            items.set(i - removed, items.get(i));
+        }
+        for (int i = itemCount - removed; i < itemCount; i++) {
+            items.set(i, null);
+        }
+        itemCount -= removed;
+    }
+
+    /**
+     * Removes an item from the member list of its category and drops the category if it is
+     * empty. The symbol id of a dropped category is released in a sliding window without a fuzzy
+     * matcher, whose key index refers to the ids. Elsewhere ids are kept for good.
+     *
+     * @param item the item to remove
+     */
+    private void removeFromCategory(ChordGraphItem<T> item) {
+        ChordGraphCategory category = item.category;
+        if (category == null) {
+            return;
+        }
+        int symbol = category.symbol;
+        int next = nextMembers.get(item.id);
+        int previous = previousMembers.get(item.id);
+        if (previous < 0) {
+            firstMembers.set(symbol, next);
+        } else {
+            nextMembers.set(previous, next);
+        }
+        if (next < 0) {
+            lastMembers.set(symbol, previous);
+        } else {
+            previousMembers.set(next, previous);
+        }
+        int count = memberCounts.get(symbol) - 1;
+        memberCounts.set(symbol, count);
+        implicitChordCount -= count;
+        if (count == 0) {
+            chordCategories.set(symbol, null);
+            categoryCount--;
+            if (windowSize > 0 && keyIndex == null) {
+                symbols.release(symbol);
+            }
+        }
+    }
+
+    /**
+     * Inserts new items at the given index, shifts the indices of the items after them and creates
+     * the chords for the new items.
+     *
+     * @param start the index to insert the first value at
+     * @param values the values to insert
+     * @param signal the signal to check between items, may be null
+     * @return true if all of the values were inserted
+     */
+    private boolean insertItems(int start, List<T> values, CancelSignal signal) {
+        int count = values.size();
+        if (count > 0) {
+            version++;
+        }
+
+        // move the items after the changed range up to make room
+        items.ensureLength(itemCount + count);
+        for (int i = itemCount - 1; i >= start; i--) {
+            items.set(i + count, items.get(i));
+        }
+        itemCount += count;
+
+        ArrayList<ChordGraphItem<T>> newItems = new ArrayList<ChordGraphItem<T>>(count);
+        for (int i = 0; i < count; i++) {
+            T value = values.get(i);
+            ChordGraphItem<T> item = new ChordGraphItem<T>(value, internKey(value));
+            item.id = newItemId(start + i);
+            items.set(start + i, item);
+            addToStore(item);
+            newItems.add(item);
+        }
+
+        // shift the items after the changed range
+        shiftIndices(start + count);
+
+        // link the new items now that every index is final
+        for (int i = 0; i < count; i++) {
+            if (signal != null && signal.isCancelled()) {
+                // drop the items that were not linked yet and shift the rest back
+                for (int j = i; j < count; j++) {
+                    ChordGraphItem<T> item = newItems.get(j);
+                    if (chordStore != null) {
+                        chordStore.removeItem(item.storeId);
+                    }
+                    freeItemId(item.id);
+                }
+                removeSlots(start + i, start + count);
+                shiftIndices(start + i);
+                return false;
+            }
+            addChords(newItems.get(i), start + i);
+            addItem(newItems.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Sets the index of every item from the given one on to its slot, in the chord store too.
+     * The chords refer to the items, so they don't have to change.
+     *
+     * @param from the index of the first item to shift
+     */
+    private void shiftIndices(int from) {
+        for (int i = from; i < itemCount; i++) {
+            ChordGraphItem<T> item = items.get(i);
+            itemIndices.set(item.id, i);
+            if (chordStore != null) {
+                chordStore.setItemIndex(item.storeId, i);
+            }
+        }
+    }
+
+    /**
+     * Gives a new item an id in the chord store, if there is one, before its chords are added.
+     *
+     * @param item the new item, it already has its id
+     */
+    private void addToStore(ChordGraphItem<T> item) {
+        if (chordStore != null) {
+            item.storeId = chordStore.addItem(itemIndices.get(item.id));
+        }
+    }
+
+    /**
+     * Takes a new item and adds new chords if matching items are found. Only items in the same
+     * category can match so the category is looked up instead of looping through every item in
+     * the model. The cost is proportional to the number of matches, not the size of the model.
+     * With a fuzzy matcher all of the items of the categories of the near keys are linked as well.
+     *
+     * @param newItem the new item to be stored in the model
+     * @param index the index of the new item
+     */
+    private void addChords(ChordGraphItem<T> newItem, int index) {
+        // implicit chords come from the category membership alone, co-occurrences are counted
+        if (storage == ChordStorage.IMPLICIT || pairWeights != null) {
+            return;
+        }
+
+        // Loop through the items that share the category and see if there is a match, if there
+        // isn't a category yet there is nothing to link to
+        for (int id = getFirstMemberId(newItem.symbol); id >= 0; id = nextMembers.get(id)) {
+            int memberIndex = itemIndices.get(id);
+            ChordGraphItem<T> item = items.get(memberIndex);
+            // the matcher makes the final call, ie. .equals() for exact matching. The
+            // category only holds the items with the same key, so an equal value with a
+            // different key is never found here
+            if (matcher.matches(item.value, newItem.value)) {
+                addChord(item, memberIndex, newItem, index);
+            }
+        }
+
+        // link the items of the near keys that still have a category
+        if (nearKeys != null) {
+            for (int symbol : nearKeys.get(newItem.symbol)) {
+                for (int id = getFirstMemberId(symbol); id >= 0; id = nextMembers.get(id)) {
+                    int memberIndex = itemIndices.get(id);
+                    addChord(items.get(memberIndex), memberIndex, newItem, index);
+                }
+            }
+        }
+    }
 
     /**
-     * Constructor just initializes values that were passed in
+     * Creates a chord between an item and a new item and stores it.
+     *
+     * @param item the item already in the model
+     * @param itemIndex the index of the item
+     * @param newItem the new item
+     * @param newIndex the index of the new item
      */
-    public ChordGraphModel() {
-        items = new HashMap<UUID, ChordGraphItem<T>>();
-        chords = new ArrayList<Chord>();
-        chordCategories = new HashMap<String, ChordGraphCategory>();
+    private void addChord(ChordGraphItem<T> item, int itemIndex, ChordGraphItem<T> newItem,
+                          int newIndex) {
+        // the head is always the item with the lower index
+        ChordGraphItem<T> head = (itemIndex < newIndex) ? item : newItem;
+        ChordGraphItem<T> tail = (itemIndex < newIndex) ? newItem : item;
+        if (storage == ChordStorage.OBJECTS) {
+            storeChord(new Chord(head, tail, 1.0f));
+        } else {
+            chordStore.add(head.storeId, tail.storeId, 1.0f);
+        }
     }
 
     /**
-     * Adds a new item to the Chord Graph data model and creates chords between matching values.
+     * Adds a chord to the chord store, along with the chord object when the storage is OBJECTS.
      *
-     * @param item the new item to add.
+     * @param chord the chord, its items are in the store
      */
-    public void addItem(T item) {
-        ChordGraphItem<T> graphItem = new ChordGraphItem<T>((items.size()), item);
-        //Chord creation logic
-        addChords(graphItem);
-        //add the new graph item to the collection
-        addItem(graphItem);
+    private void storeChord(Chord chord) {
+        chordStore.add(chord.itemTuple.first.storeId, chord.itemTuple.second.storeId,
+                chord.value, chord);
     }
 
     /**
-     * Takes a new item and adds new chords if matching items are found
+     * Adds an item to its category, making the category if it is the first item. The item goes
+     * into the member list of the category in index order, the caller places it in the
+     * collection of items first.
      *
      * @param newItem the new item to be stored in the model
      */
-    private void addChords(ChordGraphItem<T> newItem) {
-        //Loop through all existing items and see if there is a match, then add a chord
-        for (ChordGraphItem<T> item : items.values()) {
-            // if the item has already been added to the items collection skip it
-            if (item.id == newItem.id) {
-                continue;
-            }
+    private void addItem(ChordGraphItem<T> newItem) {
+        int symbol = newItem.symbol;
+        ChordGraphCategory category = getCategory(symbol);
+        if (category == null) {
+            // put a new category in the slot of its symbol id
+            chordCategories.ensureLength(symbol + 1);
+            memberCounts.ensureLength(symbol + 1);
+            firstMembers.ensureLength(symbol + 1);
+            lastMembers.ensureLength(symbol + 1);
+            category = new ChordGraphCategory(symbol);
+            chordCategories.set(symbol, category);
+            categoryCount++;
+        }
+        newItem.category = category;
+        int count = memberCounts.get(symbol);
+        implicitChordCount += count;
+
+        // keep the members sorted by index, appending is the common case
+        int id = newItem.id;
+        int index = itemIndices.get(id);
+        int previous = (count > 0) ? lastMembers.get(symbol) : -1;
+        while (previous >= 0 && itemIndices.get(previous) > index) {
+            previous = previousMembers.get(previous);
+        }
+        int next = (previous >= 0) ? nextMembers.get(previous)
+                : (count > 0) ? firstMembers.get(symbol) : -1;
+        previousMembers.set(id, previous);
+        nextMembers.set(id, next);
+        if (previous < 0) {
+            firstMembers.set(symbol, id);
+        } else {
+            nextMembers.set(previous, id);
+        }
+        if (next < 0) {
+            lastMembers.set(symbol, id);
+        } else {
+            previousMembers.set(next, id);
+        }
+        memberCounts.set(symbol, count + 1);
+    }
+
+    /**
+     * @param symbol the symbol id of the category
+     * @return the category with the symbol id, or null if it has no items
+     */
+    private ChordGraphCategory getCategory(int symbol) {
+        return (symbol < chordCategories.length()) ? chordCategories.get(symbol) : null;
+    }
+
+    /**
+     * @param symbol the symbol id of a category
+     * @return the id of the first item of the category, -1 if it has no items
+     */
+    private int getFirstMemberId(int symbol) {
+        return (getCategorySize(symbol) > 0) ? firstMembers.get(symbol) : -1;
+    }
 
-            // Logic for creating a link between two elements.
-            // The .equals() function is used currently. This would not work with user created
-            // objects unless the .equals function is overridden.
-            if (item.value.equals(newItem.value)) {
-                // create the new chord
-                Chord chord = new Chord(item, newItem, 1.0f);
 
-                // register it with the items
-                item.addChord(chord);
-                newItem.addChord(chord);
+    /**
+     * Clears the data model.
+     */
+    public void clear() {
+        checkWritable();
+        version++;
+        // the tables are made again rather than emptied, snapshots may share them
+        initTables();
+        if (null != this.symbols)
+            symbols.clear();
+        if (null != this.chordStore)
+            chordStore.clear();
+        implicitChordCount = 0;
+        categoryCount = 0;
+        oldestSlot = 0;
+        if (keyIndex != null) {
+            keyIndex.clear();
+            nearKeys.clear();
+        }
+        if (pairWeights != null) {
+            initPairs();
+        }
+    }
 
-                // add it to the collection
-                chords.add(chord);
+    /**
+     * Fills an empty model with items whose symbol ids are already known, ie. when a saved model
+     * is loaded. Nothing is hashed: the categories are built from the symbol ids and the chords
+     * are either linked again, for chord objects, or taken as they are from the store.
+     *
+     * @param values the values of the items in index order
+     * @param itemSymbols the symbol id of every item
+     * @param symbolTable the symbol table the ids are from, taken over by the model
+     * @param store the chords when the storage is PRIMITIVE, taken over by the model
+     * @param restoredVersion the version to give the model
+     */
+    void restore(List<T> values, int[] itemSymbols, SymbolTable symbolTable, ChordStore store,
+                 long restoredVersion) {
+        checkWritable();
+        if (itemCount > 0 || symbols.size() > 0) {
+            throw new IllegalStateException("Only an empty model can be restored");
+        }
+        symbols = symbolTable;
+        if (storage == ChordStorage.PRIMITIVE) {
+            chordStore = store;
+        }
+        items.ensureLength(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            ChordGraphItem<T> item = new ChordGraphItem<T>(values.get(i), itemSymbols[i]);
+            appendItem(item);
+            if (storage == ChordStorage.OBJECTS) {
+                addToStore(item);
+                addChords(item, i);
+            } else if (chordStore != null) {
+                // a loaded store gives every item its index as its id
+                item.storeId = i;
             }
+            addItem(item);
         }
+        version = restoredVersion;
     }
 
     /**
-     * Adds an item to the data model.
+     * Creates a read-only copy of the model. The copy shares the tables of items, categories and
+     * chords with the model page by page, which takes time in the number of pages rather than
+     * items. The model copies a page the first time it writes it after that, so the copy never
+     * changes and can be handed to another thread while this model keeps changing, and a change
+     * of one item only copies the few pages it touches. The items and categories never change
+     * once they are in the model, so the copy shares them as well.
      *
-     * @param newItem the new item to be stored in the model
+     * @return a read-only copy of the model, the model itself if it is one
      */
-    private void addItem(ChordGraphItem<T> newItem) {
-        // Keep some stats about the items
-        ChordGraphCategory stats = this.chordCategories.get(newItem.value.toString());
-        if (stats != null) {
-            // if there already is a stats entry just add this to it
-            stats.addItem(newItem);
-        } else {
-            // put a new stats entry in the stats colletion
-            this.chordCategories.put(newItem.value.toString(), new ChordGraphCategory(newItem));
+    public ChordGraphModel<T> snapshot() {
+        if (readOnly) {
+            return this;
         }
+        return new ChordGraphModel<T>(this);
+    }
 
-        // add the item to the collection
-        this.items.put(newItem.id, newItem);
+    /**
+     * The modification version of the model. It increases whenever the model changes, so a reader
+     * can tell whether anything it derived from the model is stale. A snapshot has the version of
+     * the model it was taken from.
+     *
+     * @return the modification version
+     */
+    public long getVersion() {
+        return version;
     }
 
+    /**
+     * Sets the listener that receives the metrics of every build. Without one the only cost is
+     * reading the clock at the start and end of a build. Snapshots don't keep the listener.
+     *
+     * @param metricsListener the listener, or null to remove it
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
 
     /**
-     * Clears the data model.
+     * @return how long the last update() or addItems() took in nanoseconds, a snapshot has the
+     * time of the model it was taken from
      */
-    public void clear() {
-        if (null != this.chordCategories)
-            chordCategories.clear();
-        if (null != this.chords)
-            chords.clear();
-        if (null != this.items)
-            items.clear();
+    public long getLastBuildNanos() {
+        return lastBuildNanos;
+    }
+
+    /**
+     * @return the number of categories, the distinct values in the model
+     */
+    public int getCategoryCount() {
+        return categoryCount;
+    }
+
+    /**
+     * @return the number of items a sliding-window model keeps, 0 if the model isn't one
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return the index of the oldest item in a full sliding window, the items are oldest first
+     * from there in ring order. 0 if the window isn't full or the model isn't a sliding window.
+     */
+    public int getOldestSlot() {
+        return oldestSlot;
+    }
+
+    /**
+     * Estimates the memory the model holds on to from the counts of its parts, in constant time.
+     * The values themselves are not counted since they are shared with the caller. It is only an
+     * estimate for comparing builds and storage modes, the real sizes depend on the runtime.
+     *
+     * @return the estimated retained size in bytes
+     */
+    public long estimateRetainedBytes() {
+        long bytes = (long) itemCount * (ITEM_BYTES + MEMBER_BYTES)
+                + (long) categoryCount * CATEGORY_BYTES
+                + (long) symbols.size() * SYMBOL_BYTES;
+        if (pairWeights != null) {
+            // the chords are only the weighted pairs
+            return bytes + (long) pairWeights.capacity() * PAIR_SLOT_BYTES
+                    + (long) pairWeights.size() * PAIR_PARTNER_BYTES
+                    + (long) pairDegrees.length() * 4;
+        }
+        switch (storage) {
+            case OBJECTS:
+                bytes += (long) chordStore.size() * (CHORD_PRIMITIVE_BYTES + CHORD_OBJECT_BYTES)
+                        + (long) itemCount * STORE_ITEM_BYTES;
+                break;
+            case PRIMITIVE:
+                bytes += (long) chordStore.size() * CHORD_PRIMITIVE_BYTES
+                        + (long) itemCount * STORE_ITEM_BYTES;
+                break;
+            default:
+                // implicit chords take no memory
+                break;
+        }
+        return bytes;
+    }
+
+    /**
+     * Throws if this model is a read-only snapshot.
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("The model is a read-only snapshot");
+        }
+    }
+
+    /**
+     * getter for the collection of items, a new list in index order on every call
+     * @return
+     */
+    protected ArrayList<ChordGraphItem<T>> getItems() {
+        ArrayList<ChordGraphItem<T>> list = new ArrayList<ChordGraphItem<T>>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            list.add(items.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * getter for a single item
+     * @param index the index of the item
+     * @return the item at the index
+     */
+    protected ChordGraphItem<T> getItem(int index) {
+        if (index < 0 || index >= itemCount) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + itemCount);
+        }
+        return items.get(index);
+    }
+
+    /**
+     * Finds the index of an item, ie. one taken from an older snapshot of this model.
+     * @param item an item that was in the model, or null
+     * @return the index of the item if it is still in the model, -1 if not or it is null
+     */
+    protected int indexOf(ChordGraphItem<T> item) {
+        if (item == null || item.id < 0 || item.id >= idCount) {
+            return -1;
+        }
+        int index = itemIndices.get(item.id);
+        return (index >= 0 && index < itemCount && items.get(index) == item) ? index : -1;
+    }
+
+    /**
+     * @return the number of items in the model
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * getter for the value of a single item
+     * @param index the index of the item
+     * @return the value of the item at the index
+     */
+    public T getValue(int index) {
+        return getItem(index).value;
+    }
+
+    /**
+     * getter for the symbol id of a single item, the id of its value's key
+     * @param index the index of the item
+     * @return the symbol id of the item at the index
+     */
+    public int getSymbol(int index) {
+        return getItem(index).symbol;
+    }
+
+    /**
+     * @param symbol a symbol id
+     * @return the number of items in the category of the symbol id, 0 if it has none
+     */
+    public int getCategorySize(int symbol) {
+        return (symbol < memberCounts.length()) ? memberCounts.get(symbol) : 0;
+    }
+
+    /**
+     * The items of a category are walked in index order from getFirstMember() with
+     * getNextMember().
+     * @param symbol a symbol id
+     * @return the index of the first item in the category of the symbol id, -1 if it has none
+     */
+    public int getFirstMember(int symbol) {
+        int id = getFirstMemberId(symbol);
+        return (id >= 0) ? itemIndices.get(id) : -1;
+    }
+
+    /**
+     * @param index the index of an item
+     * @return the index of the next item in the same category, -1 if it is the last one
+     */
+    public int getNextMember(int index) {
+        int next = nextMembers.get(getItem(index).id);
+        return (next >= 0) ? itemIndices.get(next) : -1;
+    }
+
+    /**
+     * @return the number of symbol ids handed out, every symbol id is less than this
+     */
+    public int getSymbolCount() {
+        return symbols.size();
     }
 
     /**
-     * getter for the collection of items
+     * getter for the table of symbol ids
      * @return
      */
-    protected HashMap<UUID, ChordGraphItem<T>> getItems() {
-        return items;
+    protected SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return how the chords of the model are stored
+     */
+    public ChordStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * getter for the chord store
+     * @return the chord store, or null if the storage is IMPLICIT
+     */
+    ChordStore getChordStore() {
+        return chordStore;
     }
 
     /**
-     * getter for the collection of categories
+     * getter for the collection of categories, indexed by symbol id with null for the ids that
+     * have no items. A new list on every call.
      * @return
      */
-    protected HashMap<String, ChordGraphCategory> getChordCategories() {
-        return chordCategories;
+    protected ArrayList<ChordGraphCategory> getChordCategories() {
+        ArrayList<ChordGraphCategory> list = new ArrayList<ChordGraphCategory>(symbols.size());
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            list.add(getCategory(symbol));
+        }
+        return list;
     }
 
     /**
-     * getter for the collection of chords
+     * getter for the collection of chords, a new list on every call. When the chords aren't
+     * stored as objects new Chord objects are built from the cursor.
      * @return
      */
     protected ArrayList<Chord> getChords() {
-        return chords;
+        ArrayList<Chord> adapted = new ArrayList<Chord>();
+        if (storage == ChordStorage.OBJECTS && pairWeights == null) {
+            for (int c = chordStore.nextChord(0); c >= 0; c = chordStore.nextChord(c + 1)) {
+                adapted.add((Chord) chordStore.getObject(c));
+            }
+            return adapted;
+        }
+
+        ChordCursor walk = new ChordCursor();
+        walk.reset(-1);
+        while (walk.next()) {
+            adapted.add(new Chord(items.get(walk.getHead()), items.get(walk.getTail()),
+                    walk.getValue()));
+        }
+        return adapted;
+    }
+
+    /**
+     * @return the number of chords in the model
+     */
+    public long getChordCount() {
+        if (pairWeights != null) {
+            return pairWeights.size();
+        }
+        return (storage == ChordStorage.IMPLICIT) ? implicitChordCount : chordStore.size();
+    }
+
+    /**
+     * @param index the index of the item
+     * @return the number of chords touching the item, co-occurrence chords only touch the first
+     * item of each category
+     */
+    public int getChordCount(int index) {
+        ChordGraphItem<T> item = getItem(index);
+        if (pairWeights != null) {
+            return (getFirstMemberId(item.symbol) == item.id) ? getPairDegree(item.symbol) : 0;
+        }
+        return (storage == ChordStorage.IMPLICIT)
+                ? getCategorySize(item.symbol) - 1
+                : chordStore.getDegree(item.storeId);
+    }
+
+    /**
+     * Resets the cursor of the model to walk all of the chords. The same cursor is returned every
+     * time so nothing is allocated, it can't be used by two loops at once. Readers on other
+     * threads should use newChordCursor() instead.
+     * @return the cursor positioned before the first chord
+     */
+    public ChordCursor getChordCursor() {
+        cursor.reset(-1);
+        return cursor;
+    }
+
+    /**
+     * Creates a cursor of its own to walk all of the chords. A snapshot can be walked by any
+     * number of threads at once as long as each uses its own cursor.
+     * @return a new cursor positioned before the first chord
+     */
+    public ChordCursor newChordCursor() {
+        ChordCursor walk = new ChordCursor();
+        walk.reset(-1);
+        return walk;
+    }
+
+    /**
+     * Creates a cursor of its own to walk the chords touching one item.
+     * @param index the index of the item
+     * @return a new cursor positioned before the first chord of the item
+     */
+    public ChordCursor newChordCursor(int index) {
+        ChordCursor walk = new ChordCursor();
+        walk.reset(index);
+        return walk;
+    }
+
+    /**
+     * Resets the cursor of the model to walk the chords touching one item.
+     * @param index the index of the item
+     * @return the cursor positioned before the first chord of the item
+     */
+    public ChordCursor getChordCursor(int index) {
+        cursor.reset(index);
+        return cursor;
+    }
+
+    /**
+     * Walks chords without allocating, whichever way they are stored. Call next() until it returns
+     * false and read the current chord with the getters in between.
+     */
+    public class ChordCursor {
+        private int item; // the item whose chords are walked, -1 for all of the chords
+        private int position;
+        private int headItem; // the head item when walking implicit chords
+        private int member; // the id of the next category member to walk, or UNSTARTED
+        private int head;
+        private int tail;
+        private float value;
+
+        /**
+         * Moves the cursor back before the first chord.
+         *
+         * @param item the item whose chords to walk, -1 for all of the chords
+         */
+        private void reset(int item) {
+            this.item = item;
+            this.position = 0;
+            this.headItem = 0;
+            this.member = UNSTARTED;
+        }
+
+        /**
+         * Moves to the next chord.
+         *
+         * @return true if there is a chord, false when the end has been reached
+         */
+        public boolean next() {
+            if (pairWeights != null) {
+                return nextPair();
+            }
+            if (storage == ChordStorage.IMPLICIT) {
+                return (item < 0) ? nextImplicit() : nextImplicitOfItem();
+            }
+
+            return nextStored();
+        }
+
+        /**
+         * Moves to the next chord of the chord store. The position is after the last chord, in
+         * chord number order or along the list of the item.
+         *
+         * @return true if there is a chord, false when the end has been reached
+         */
+        private boolean nextStored() {
+            int chord;
+            if (item < 0) {
+                chord = chordStore.nextChord(position);
+            } else {
+                int id = items.get(item).storeId;
+                chord = (position == 0)
+                        ? chordStore.getFirstChord(id)
+                        : chordStore.getNextChord(position - 1, id);
+            }
+            if (chord < 0) {
+                return false;
+            }
+            head = chordStore.getHead(chord);
+            tail = chordStore.getTail(chord);
+            value = chordStore.getValue(chord);
+            position = chord + 1;
+            return true;
+        }
+
+        /**
+         * Moves to the next co-occurrence chord. All of the chords are walked by the slots of the
+         * pair map in order, the chords of one item along the partner list of its word so walking
+         * them costs its degree.
+         *
+         * @return true if there is a chord, false when the end has been reached
+         */
+        private boolean nextPair() {
+            if (item >= 0) {
+                ChordGraphItem<T> walked = items.get(item);
+                // only the first item of a category has chords
+                if (getFirstMemberId(walked.symbol) != walked.id
+                        || position >= getPairDegree(walked.symbol)) {
+                    return false;
+                }
+                int partner = pairPartners.get(walked.symbol)[position++];
+                setPair(walked.symbol, partner,
+                        pairWeights.get(PairWeightMap.pairKey(walked.symbol, partner)));
+                return true;
+            }
+            while (position < pairWeights.capacity()) {
+                int slot = position++;
+                if (!pairWeights.isHolding(slot)) {
+                    continue;
+                }
+                long key = pairWeights.getKey(slot);
+                setPair(PairWeightMap.lowId(key), PairWeightMap.highId(key),
+                        pairWeights.getWeight(slot));
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Makes a co-occurrence chord the current one, between the first items of the words.
+         *
+         * @param first the symbol id of one word
+         * @param second the symbol id of the other word
+         * @param weight the weight of the pair
+         */
+        private void setPair(int first, int second, int weight) {
+            int firstItem = getFirstMember(first);
+            int secondItem = getFirstMember(second);
+            head = Math.min(firstItem, secondItem);
+            tail = Math.max(firstItem, secondItem);
+            value = weight;
+        }
+
+        /**
+         * Moves to the next implicit chord. The chords are walked by head item and for each head
+         * item by the members of its category that come after it.
+         *
+         * @return true if there is a chord, false when the end has been reached
+         */
+        private boolean nextImplicit() {
+            while (headItem < itemCount) {
+                if (member == UNSTARTED) {
+                    // start after the head item in its category
+                    member = nextMembers.get(items.get(headItem).id);
+                }
+                if (member >= 0) {
+                    head = headItem;
+                    tail = itemIndices.get(member);
+                    value = 1.0f;
+                    member = nextMembers.get(member);
+                    return true;
+                }
+                headItem++;
+                member = UNSTARTED;
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the next implicit chord touching the item, one for every other category member.
+         *
+         * @return true if there is a chord, false when the end has been reached
+         */
+        private boolean nextImplicitOfItem() {
+            ChordGraphItem<T> walked = items.get(item);
+            if (member == UNSTARTED) {
+                member = firstMembers.get(walked.symbol);
+            }
+            if (member == walked.id) {
+                member = nextMembers.get(member);
+            }
+            if (member < 0) {
+                return false;
+            }
+
+            int other = itemIndices.get(member);
+            head = Math.min(item, other);
+            tail = Math.max(item, other);
+            value = 1.0f;
+            member = nextMembers.get(member);
+            return true;
+        }
+
+        /**
+         * @return the index of the head item of the current chord
+         */
+        public int getHead() {
+            return head;
+        }
+
+        /**
+         * @return the index of the tail item of the current chord
+         */
+        public int getTail() {
+            return tail;
+        }
+
+        /**
+         * @return the value of the current chord
+         */
+        public float getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * The distinct keys of one chunk of values for addItems(). Every value gets a chunk-local id,
+     * handed out in order of first appearance so the chunks can be merged into the SymbolTable in
+     * the order a sequential build would intern them.
+     */
+    private static class ChunkSymbols {
+        private final ArrayList<String> keys; // the key of every local id
+        private final int[] localIds; // the local id of every value in the chunk
+
+        /**
+         * Constructor works out the keys of the chunk
+         *
+         * @param chunk the values of the chunk
+         * @param matcher the matcher that makes the keys
+         */
+        private <V> ChunkSymbols(List<V> chunk, ValueMatcher<? super V> matcher) {
+            HashMap<String, Integer> ids = new HashMap<String, Integer>();
+            keys = new ArrayList<String>();
+            localIds = new int[chunk.size()];
+            for (int i = 0; i < localIds.length; i++) {
+                String key = matcher.getKey(chunk.get(i));
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = keys.size();
+                    ids.put(key, id);
+                    keys.add(key);
+                }
+                localIds[i] = id;
+            }
+        }
     }
 
     /**
      * This class represents a link between two items in the data model. A value can be assigned
      * for changing the visualization in some way(ie. higher alpha value based on number of
-     * connections).
+     * connections). A chord doesn't change once it is made, so snapshots share it.
      */
     protected class Chord {
-        public Pair<ChordGraphItem<T>, ChordGraphItem<T>> itemTuple;
-        public float value;
+        public final Pair<ChordGraphItem<T>, ChordGraphItem<T>> itemTuple;
+        public final float value;
 
         /**
          * Constructor just initializes values that were passed in.
@@ -158,73 +1836,48 @@ public class ChordGraphModel<T> {
 
     /**
      * This class represents one item that will be or has been loaded into the model. An item can
-     * be any sub-class of Object as it will use the .equals() to determine a link between other
-     * items.
+     * be any sub-class of Object as the matcher of the model, .equals() by default, determines a
+     * link between other items. The model keeps the index of an item by its id, so an item
+     * doesn't change once it is in the model and snapshots share it.
      *
      * @param <T>
      */
     protected class ChordGraphItem<T> {
-        protected UUID id; //a unique id for finding this item
-        protected int index; //the index in the ChordGraph for ordering
         protected T value; //the value to store, will be used to link to other items
-        protected ArrayList<ChordGraphModel.Chord> chords; //the collection of chords
+        protected int symbol; //the symbol id of the value's key, the id of its category
+        protected ChordGraphCategory category; //the category this item belongs to
+        protected int id = -1; //the id of the item in the model, its index is kept by the id
+        protected int storeId = -1; //the id of the item in the chord store, -1 if there isn't one
 
         /**
          * Constructor just initializes values that were passed in
          *
-         * @param index the index of this item
          * @param value the value this item is representing
+         * @param symbol the symbol id of the value
          */
-        protected ChordGraphItem(int index, T value) {
-            id = UUID.randomUUID();
-            this.index = index;
+        protected ChordGraphItem(T value, int symbol) {
             this.value = value;
-            this.chords = new ArrayList<ChordGraphModel.Chord>();
-        }
-
-        /**
-         * Adds a chord to the list of chords linked to this item
-         *
-         * @param chord the chord to add to the list
-         */
-        protected void addChord(ChordGraphModel.Chord chord) {
-            this.chords.add(chord);
+            this.symbol = symbol;
         }
     }
 
     /**
      * This class represents a distinct value category. There should be one per distinct value in
-     * the model. A list of the items that have this value is stored as well as the count of
-     * items that have the same value.
+     * the model. The items that have this value are kept by the model in index order, see
+     * getCategorySize() and getFirstMember().
      */
     protected class ChordGraphCategory {
-        protected String distinctValue;
-        protected int count;
-        protected ArrayList<ChordGraphItem<T>> items;
+        protected final String distinctValue;
+        protected final int symbol; // the symbol id of distinctValue
 
         /**
          * Constructor just initializes values that were passed in.
          *
-         * @param item the first item to be added to the category
-         */
-        protected ChordGraphCategory(ChordGraphItem<T> item) {
-            distinctValue = item.value.toString();
-            count = 1;
-            items = new ArrayList<ChordGraphItem<T>>();
-            items.add(item);
-        }
-
-        /**
-         * Adds another item to list of items with the same value.
-         *
-         * @param item the item to be added to the category
+         * @param symbol the symbol id of the category
          */
-        protected void addItem(ChordGraphItem<T> item) {
-            if (item.value.toString().equals(distinctValue)) {
-                // we could check for duplicates but for now it is unnecessary
-                items.add(item);
-                count++;
-            }
+        protected ChordGraphCategory(int symbol) {
+            this.symbol = symbol;
+            distinctValue = symbols.getSymbol(symbol);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+/**
+ * This interface is what a ChordGraphLayout draws a graph into. The layout works out where
+ * everything goes and which color it is, a renderer only knows how to draw the few shapes a graph
+ * is made of. CanvasRenderer draws into an Android Canvas, PngRenderer into pixels it encodes as a
+ * PNG and SvgRenderer streams SVG elements, the last two run on a plain JVM.
+ *
+ * Coordinates are in pixels from the top left corner and colors are ARGB ints. The shapes come as
+ * primitives so a renderer can draw them without allocating.
+ */
+public interface ChordGraphRenderer {
+
+    /**
+     * Called before anything is drawn.
+     * @param width - the width of the graph in pixels
+     * @param height - the height of the graph in pixels
+     */
+    void begin(int width, int height);
+
+    /**
+     * Draws the outline of a circle, the rim of the graph.
+     * @param centerX - the x of the center
+     * @param centerY - the y of the center
+     * @param radius - the radius
+     * @param strokeWidth - the width of the outline
+     * @param color - the color
+     */
+    void drawCircle(float centerX, float centerY, float radius, float strokeWidth, int color);
+
+    /**
+     * Draws a filled circle, a slot on the rim.
+     * @param centerX - the x of the center
+     * @param centerY - the y of the center
+     * @param radius - the radius
+     * @param color - the color
+     */
+    void fillCircle(float centerX, float centerY, float radius, int color);
+
+    /**
+     * Draws a quadratic Bezier curve, a chord.
+     * @param startX - the x of the start point
+     * @param startY - the y of the start point
+     * @param controlX - the x of the control point
+     * @param controlY - the y of the control point
+     * @param endX - the x of the end point
+     * @param endY - the y of the end point
+     * @param strokeWidth - the width of the curve
+     * @param color - the color
+     */
+    void drawQuad(float startX, float startY, float controlX, float controlY, float endX,
+                  float endY, float strokeWidth, int color);
+
+    /**
+     * Draws separate line segments all in one paint, a batch of chords flattened into lines. The
+     * segments of a chord follow on from each other but each is drawn on its own, like the Canvas
+     * drawLines() does.
+     * @param points - the segments, x0 y0 x1 y1 each
+     * @param offset - the index of the first float to draw
+     * @param count - the number of floats to draw, 4 per segment
+     * @param strokeWidth - the width of the lines
+     * @param color - the color
+     */
+    void drawLines(float[] points, int offset, int count, float strokeWidth, int color);
+
+    /**
+     * Fills a ribbon, the outline goes from fromFirst along the rim to fromLast, curves through the
+     * control point to toFirst, along the rim to toLast and curves back to fromFirst. It is
+     * stroked as well so a ribbon between two single slots is still a line.
+     * @param fromFirstX - the x of the first point of the start range
+     * @param fromFirstY - the y of the first point of the start range
+     * @param fromLastX - the x of the last point of the start range
+     * @param fromLastY - the y of the last point of the start range
+     * @param toFirstX - the x of the first point of the end range
+     * @param toFirstY - the y of the first point of the end range
+     * @param toLastX - the x of the last point of the end range
+     * @param toLastY - the y of the last point of the end range
+     * @param controlX - the x of the control point of both curves
+     * @param controlY - the y of the control point of both curves
+     * @param strokeWidth - the width of the outline
+     * @param color - the color
+     */
+    void fillRibbon(float fromFirstX, float fromFirstY, float fromLastX, float fromLastY,
+                    float toFirstX, float toFirstY, float toLastX, float toLastY,
+                    float controlX, float controlY, float strokeWidth, int color);
+
+    /**
+     * Draws a label rotated about its anchor. The text is centered vertically on the line through
+     * the anchor.
+     * @param label - the text
+     * @param x - the x of the anchor
+     * @param y - the y of the anchor
+     * @param degrees - the rotation clockwise, 0 reads left to right
+     * @param alignEnd - true if the text ends at the anchor, false if it starts there
+     * @param textSize - the size of the text in pixels
+     * @param color - the color
+     */
+    void drawLabel(String label, float x, float y, float degrees, boolean alignEnd, float textSize,
+                   int color);
+
+    /**
+     * Called once everything is drawn.
+     */
+    void end();
+}
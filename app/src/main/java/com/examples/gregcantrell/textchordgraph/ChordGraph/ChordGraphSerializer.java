@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * This class saves a ChordGraphModel of words in a compact binary format and loads it again, so a
+ * model can be restored without tokenizing and linking the text again. Every section is a flat
+ * array that is copied in bulk, the format is little endian to match the devices so the copies
+ * are plain memory copies. A model can be loaded from any ByteBuffer, including a direct one or
+ * a memory-mapped file.
+ *
+ * The format, version 3:
+ * <pre>
+ *   int     magic, "CGMS"
+ *   int     format version
+ *   int     chord storage, the ordinal of ChordGraphModel.ChordStorage
+ *   long    model version
+ *   int     text length + 1, of the text the model was built from, 0 if unknown
+ *   int     text CRC32, of the UTF-16LE chars of the text
+ *   long    text hash, the 64-bit FNV-1a hash of the chars of the text
+ *   int     symbol count S
+ *   int     total symbol chars C
+ *   int[S]  the end offset of every symbol in the chars
+ *   char[C] the chars of every symbol, one after the other
+ *   int     item count N
+ *   int[N]  the symbol id of every item, in index order
+ *   int     chord count K, only stored for PRIMITIVE storage
+ *   int[K]  chord heads, int[K] chord tails, float[K] chord values, only for PRIMITIVE storage
+ * </pre>
+ * The category membership is the item symbol array: the members of a category are the items
+ * with its symbol id in index order, so it is rebuilt without hashing. Chord objects are linked
+ * again on load since they have to be allocated anyway, implicit chords take no space. Since only
+ * exact matching is saved the chords follow from the items, so a model saved with any storage can
+ * be loaded with OBJECTS or IMPLICIT storage instead.
+ * A model can be saved with the checksum of the text it was built from and only loaded with the
+ * same checksum, so a file left over from other text is rejected before anything else is read.
+ * The checksum is the length of the text, its CRC32 and a 64-bit hash, two texts of the same
+ * length would have to collide in both to be mistaken for each other.
+ * Sliding-window models can't be saved, their ring position and released symbol ids aren't part of
+ * the format. Neither can models with a matcher other than exact, the values are restored from the
+ * symbols which are only the values themselves for exact matching, or co-occurrence models.
+ */
+public final class ChordGraphSerializer {
+
+    private static final int MAGIC = 0x534D4743; // "CGMS" in little endian
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 4 + 4 + 8;
+    // The chars of a text are fed to the CRC32 this many at a time
+    private static final int CHECKSUM_CHUNK_CHARS = 1024;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The checksum of the text a model was built from: its length, the CRC32 of its chars and
+     * their 64-bit FNV-1a hash.
+     */
+    public static final class TextChecksum {
+        private final int length;
+        private final int crc;
+        private final long hash;
+
+        /**
+         * Constructor just initializes values that were passed in
+         * @param length - the length of the text
+         * @param crc - the CRC32 of the UTF-16LE chars of the text
+         * @param hash - the 64-bit FNV-1a hash of the chars of the text
+         */
+        private TextChecksum(int length, int crc, long hash) {
+            this.length = length;
+            this.crc = crc;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof TextChecksum)) {
+                return false;
+            }
+            TextChecksum checksum = (TextChecksum) other;
+            return length == checksum.length && crc == checksum.crc && hash == checksum.hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    private ChordGraphSerializer() { }
+
+    /**
+     * @param text - the text a model is built from
+     * @return the checksum of the text to save the model with
+     */
+    public static TextChecksum getTextChecksum(CharSequence text) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[2 * CHECKSUM_CHUNK_CHARS];
+        long hash = FNV_OFFSET_BASIS;
+        int length = text.length();
+        for (int start = 0; start < length; start += CHECKSUM_CHUNK_CHARS) {
+            int end = Math.min(length, start + CHECKSUM_CHUNK_CHARS);
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                bytes[2 * (i - start)] = (byte) c;
+                bytes[2 * (i - start) + 1] = (byte) (c >>> 8);
+                hash = (hash ^ c) * FNV_PRIME;
+            }
+            crc.update(bytes, 0, 2 * (end - start));
+        }
+        return new TextChecksum(length, (int) crc.getValue(), hash);
+    }
+
+    /**
+     * @param model - the model to save
+     * @return the number of bytes write() needs for the model
+     */
+    public static int getSerializedSize(ChordGraphModel<String> model) {
+        checkSavable(model);
+        SymbolTable symbols = model.getSymbols();
+        long chars = 0;
+        for (int s = 0; s < symbols.size(); s++) {
+            chars += symbols.getSymbol(s).length();
+        }
+        long size = HEADER_BYTES
+                + 4 + 4 + 4L * symbols.size() + 2 * chars
+                + 4 + 4L * model.getItemCount();
+        if (model.getStorage() == ChordGraphModel.ChordStorage.PRIMITIVE) {
+            size += 4 + 12L * model.getChordStore().size();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The model is too large to save");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Writes the model to the buffer at its position. The byte order of the buffer is set to
+     * little endian.
+     * @param model - the model to save
+     * @param buffer - the buffer to write to, it needs getSerializedSize() bytes remaining
+     */
+    public static void write(ChordGraphModel<String> model, ByteBuffer buffer) {
+        write(model, null, buffer);
+    }
+
+    /**
+     * Writes the model to the buffer at its position along with the checksum of the text it was
+     * built from. The byte order of the buffer is set to little endian.
+     * @param model - the model to save
+     * @param textChecksum - the getTextChecksum() of the text of the model, null if unknown
+     * @param buffer - the buffer to write to, it needs getSerializedSize() bytes remaining
+     */
+    public static void write(ChordGraphModel<String> model, TextChecksum textChecksum,
+                             ByteBuffer buffer) {
+        checkSavable(model);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(model.getStorage().ordinal());
+        buffer.putLong(model.getVersion());
+        if (textChecksum != null) {
+            buffer.putInt(textChecksum.length + 1);
+            buffer.putInt(textChecksum.crc);
+            buffer.putLong(textChecksum.hash);
+        } else {
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(0);
+        }
+
+        // the symbol table, the offsets and then all of the chars
+        SymbolTable symbols = model.getSymbols();
+        int symbolCount = symbols.size();
+        int[] ends = new int[symbolCount];
+        int chars = 0;
+        for (int s = 0; s < symbolCount; s++) {
+            chars += symbols.getSymbol(s).length();
+            ends[s] = chars;
+        }
+        buffer.putInt(symbolCount);
+        buffer.putInt(chars);
+        buffer.asIntBuffer().put(ends);
+        buffer.position(buffer.position() + 4 * symbolCount);
+        CharBuffer charBuffer = buffer.asCharBuffer();
+        for (int s = 0; s < symbolCount; s++) {
+            charBuffer.put(symbols.getSymbol(s));
+        }
+        buffer.position(buffer.position() + 2 * chars);
+
+        // the items
+        int itemCount = model.getItemCount();
+        int[] itemSymbols = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            itemSymbols[i] = model.getSymbol(i);
+        }
+        buffer.putInt(itemCount);
+        buffer.asIntBuffer().put(itemSymbols);
+        buffer.position(buffer.position() + 4 * itemCount);
+
+        // the chords, only when they are stored in primitive arrays
+        if (model.getStorage() == ChordGraphModel.ChordStorage.PRIMITIVE) {
+            ChordStore store = model.getChordStore();
+            buffer.putInt(store.size());
+            store.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a model written by write() from the buffer at its position. The byte order of the
+     * buffer is set to little endian.
+     * @param buffer - the buffer to read from, ie. a direct or memory-mapped buffer
+     * @return a new model that can be changed, equal to the model that was saved
+     * @throws IOException if the buffer doesn't hold a model in a known format
+     */
+    public static ChordGraphModel<String> read(ByteBuffer buffer) throws IOException {
+        return read(buffer, null);
+    }
+
+    /**
+     * Reads a model written by write() from the buffer at its position into a model with the
+     * given chord storage. The byte order of the buffer is set to little endian.
+     * @param buffer - the buffer to read from, ie. a direct or memory-mapped buffer
+     * @param storage - the chord storage of the new model, null for the one it was saved with.
+     *                PRIMITIVE storage can only be read from a model saved with it.
+     * @return a new model that can be changed, with the items and chords of the model that was
+     * saved
+     * @throws IOException if the buffer doesn't hold a model in a known format or the model can't
+     * be read with the given storage
+     */
+    public static ChordGraphModel<String> read(ByteBuffer buffer,
+                                               ChordGraphModel.ChordStorage storage)
+            throws IOException {
+        return read(buffer, storage, null);
+    }
+
+    /**
+     * Reads a model written by write() from the buffer at its position into a model with the
+     * given chord storage, if it was saved with the checksum of the given text. The byte order of
+     * the buffer is set to little endian.
+     * @param buffer - the buffer to read from, ie. a direct or memory-mapped buffer
+     * @param storage - the chord storage of the new model, null for the one it was saved with
+     * @param textChecksum - the getTextChecksum() the model has to be saved with, null for any
+     * @return a new model that can be changed, with the items and chords of the model that was
+     * saved
+     * @throws IOException if the buffer doesn't hold a model in a known format, the model was
+     * saved from other text or it can't be read with the given storage
+     */
+    public static ChordGraphModel<String> read(ByteBuffer buffer,
+                                               ChordGraphModel.ChordStorage storage,
+                                               TextChecksum textChecksum) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a saved chord graph model");
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unknown chord graph model format " + formatVersion);
+            }
+            int storageOrdinal = buffer.getInt();
+            ChordGraphModel.ChordStorage[] storages = ChordGraphModel.ChordStorage.values();
+            if (storageOrdinal < 0 || storageOrdinal >= storages.length) {
+                throw new IOException("Unknown chord storage " + storageOrdinal);
+            }
+            ChordGraphModel.ChordStorage savedStorage = storages[storageOrdinal];
+            if (storage == null) {
+                storage = savedStorage;
+            } else if (storage == ChordGraphModel.ChordStorage.PRIMITIVE
+                    && savedStorage != ChordGraphModel.ChordStorage.PRIMITIVE) {
+                throw new IOException("A model saved with " + savedStorage
+                        + " storage can't be read with PRIMITIVE storage");
+            }
+            long modelVersion = buffer.getLong();
+            TextChecksum savedChecksum = new TextChecksum(buffer.getInt() - 1, buffer.getInt(),
+                    buffer.getLong());
+            if (textChecksum != null && !textChecksum.equals(savedChecksum)) {
+                throw new IOException("The chord graph model was saved from other text");
+            }
+
+            // the symbol table
+            int symbolCount = checkCount(buffer.getInt(), buffer, 4);
+            int chars = checkCount(buffer.getInt(), buffer, 2);
+            int[] ends = new int[symbolCount];
+            buffer.asIntBuffer().get(ends);
+            buffer.position(buffer.position() + 4 * symbolCount);
+            char[] symbolChars = new char[chars];
+            buffer.asCharBuffer().get(symbolChars);
+            buffer.position(buffer.position() + 2 * chars);
+            SymbolTable symbols = new SymbolTable();
+            String[] symbolStrings = new String[symbolCount];
+            int start = 0;
+            for (int s = 0; s < symbolCount; s++) {
+                if (ends[s] < start || ends[s] > chars) {
+                    throw new IOException("Corrupt chord graph model symbols");
+                }
+                symbolStrings[s] = new String(symbolChars, start, ends[s] - start);
+                if (symbols.intern(symbolStrings[s]) != s) {
+                    throw new IOException("Corrupt chord graph model symbols");
+                }
+                start = ends[s];
+            }
+
+            // the items, the values are the symbols themselves
+            int itemCount = checkCount(buffer.getInt(), buffer, 4);
+            int[] itemSymbols = new int[itemCount];
+            buffer.asIntBuffer().get(itemSymbols);
+            buffer.position(buffer.position() + 4 * itemCount);
+            ArrayList<String> values = new ArrayList<String>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                if (itemSymbols[i] < 0 || itemSymbols[i] >= symbolCount) {
+                    throw new IOException("Corrupt chord graph model items");
+                }
+                values.add(symbolStrings[itemSymbols[i]]);
+            }
+
+            // the chords, skipped if the new model derives them from the items
+            ChordStore store = null;
+            if (savedStorage == ChordGraphModel.ChordStorage.PRIMITIVE) {
+                int chordCount = checkCount(buffer.getInt(), buffer, 12);
+                if (storage == ChordGraphModel.ChordStorage.PRIMITIVE) {
+                    store = ChordStore.read(buffer, chordCount, itemCount);
+                } else {
+                    buffer.position(buffer.position() + 12 * chordCount);
+                }
+            }
+
+            ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+            model.restore(values, itemSymbols, symbols, store, modelVersion);
+            return model;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated chord graph model");
+        }
+    }
+
+    /**
+     * Saves the model to a file, replacing it.
+     * @param model - the model to save
+     * @param file - the file to save to
+     * @throws IOException if writing fails
+     */
+    public static void save(ChordGraphModel<String> model, File file) throws IOException {
+        save(model, null, file);
+    }
+
+    /**
+     * Saves the model to a file along with the checksum of the text it was built from, replacing
+     * the file.
+     * @param model - the model to save
+     * @param textChecksum - the getTextChecksum() of the text of the model, null if unknown
+     * @param file - the file to save to
+     * @throws IOException if writing fails
+     */
+    public static void save(ChordGraphModel<String> model, TextChecksum textChecksum, File file)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(getSerializedSize(model));
+        write(model, textChecksum, buffer);
+        buffer.flip();
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Loads a model from a file saved by save(). The file is memory-mapped and read in bulk.
+     * @param file - the file to load from
+     * @return a new model that can be changed, equal to the model that was saved
+     * @throws IOException if reading fails or the file doesn't hold a model in a known format
+     */
+    public static ChordGraphModel<String> load(File file) throws IOException {
+        return load(file, null);
+    }
+
+    /**
+     * Loads a model from a file saved by save() into a model with the given chord storage. The
+     * file is memory-mapped and read in bulk.
+     * @param file - the file to load from
+     * @param storage - the chord storage of the new model, null for the one it was saved with
+     * @return a new model that can be changed, with the items and chords of the model that was
+     * saved
+     * @throws IOException if reading fails, the file doesn't hold a model in a known format or
+     * the model can't be read with the given storage
+     * @see #read(ByteBuffer, ChordGraphModel.ChordStorage)
+     */
+    public static ChordGraphModel<String> load(File file, ChordGraphModel.ChordStorage storage)
+            throws IOException {
+        return load(file, storage, null);
+    }
+
+    /**
+     * Loads a model from a file saved by save() into a model with the given chord storage, if it
+     * was saved with the checksum of the given text. The file is memory-mapped and read in bulk.
+     * @param file - the file to load from
+     * @param storage - the chord storage of the new model, null for the one it was saved with
+     * @param textChecksum - the getTextChecksum() the model has to be saved with, null for any
+     * @return a new model that can be changed, with the items and chords of the model that was
+     * saved
+     * @throws IOException if reading fails, the file doesn't hold a model in a known format, the
+     * model was saved from other text or it can't be read with the given storage
+     * @see #read(ByteBuffer, ChordGraphModel.ChordStorage, TextChecksum)
+     */
+    public static ChordGraphModel<String> load(File file, ChordGraphModel.ChordStorage storage,
+                                               TextChecksum textChecksum) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), storage,
+                    textChecksum);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Throws if the model can't be saved in this format.
+     * @param model - the model to save
+     */
+    private static void checkSavable(ChordGraphModel<String> model) {
+        if (model.getWindowSize() > 0) {
+            throw new IllegalArgumentException("A sliding-window model can't be saved");
+        }
+        if (model.getMatcher() != ValueMatchers.exact()) {
+            throw new IllegalArgumentException("Only a model with exact matching can be saved");
+        }
+        if (model.getCooccurrenceWindow() > 0) {
+            throw new IllegalArgumentException("A co-occurrence model can't be saved");
+        }
+    }
+
+    /**
+     * Checks a count read from the buffer against the bytes left, so a corrupt count can't cause
+     * a huge allocation.
+     * @param count - the count that was read
+     * @param buffer - the buffer it was read from
+     * @param bytesEach - the number of bytes each counted element takes
+     * @return the count
+     * @throws IOException if the count is negative or there aren't enough bytes left
+     */
+    private static int checkCount(int count, ByteBuffer buffer, int bytesEach) throws IOException {
+        if (count < 0 || (long) count * bytesEach > buffer.remaining()) {
+            throw new IOException("Truncated chord graph model");
+        }
+        return count;
+    }
+}
@@ -5,27 +5,25 @@
 package com.examples.gregcantrell.textchordgraph.ChordGraph;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.Rect;
-import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.OvalShape;
 
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 
 import com.examples.gregcantrell.textchordgraph.R;
 
-import java.util.HashMap;
 
 /**
  * Created by gcantrell on 8/21/2015.
  *
  * This class is the View of the MVC pattern of the Chordgraph visualization. The view depends on
  * the ChordGraphModel. An item in the Model will result in a slot and label around the rim of the
- * graph. A chord in the Model will be drawn as an arc with a random color and transparency based
- * on the number of connections.
+ * graph. A chord in the Model will be drawn as an arc with a color picked by its word and a
+ * transparency based on the number of connections. Tapping a slot or a chord selects it.
  *
  * @param <T> - the type that the chordgraph is graphing. This must match the type parameter of
  *           the ChordGraphModel<T>
@@ -33,24 +31,319 @@ import java.util.HashMap;
 public class ChordGraphView<T> extends View {
 
     private ChordGraphModel<T> model;
-    private HashMap<String, Integer> distinctValueColors;
-    private ColorPalette colorPalette;
+    private ChordGraphLayout layout; // lays out and draws the graph, it doesn't depend on Android
+    private CanvasRenderer renderer; // draws what the layout lays out into a Canvas
+
+    // Metrics, only measured when there is a listener or the debug overlay is shown
+    private FrameMetrics frameMetrics;
+    private MetricsListener metricsListener;
+    private boolean debugOverlayEnabled;
+    private boolean measuring; // set at the start of every frame
+    private Paint overlayPaint;
+    private StringBuilder overlayText; // reused for every line of the overlay
+    private static final float OVERLAY_TEXT_SIZE = 28.0f;
+
+    // The cached graph layer and what it was drawn from. The graph is drawn into an offscreen
+    // Bitmap and replayed until the model version or the view size changes. A Bitmap rather than
+    // a Picture, drawPicture() isn't supported on hardware accelerated canvases before API 23.
+    private Bitmap graphCache;
+    private Canvas graphCacheCanvas;
+    private ChordGraphModel<T> cachedModel;
+    private long cachedVersion;
+
+    // The selection, drawn as a highlight over the graph, and the tap being tracked. The items
+    // are kept as well as their indices, an index is only valid while the same item is at it.
+    private int selectedItem = -1;
+    private int selectedChordHead = -1;
+    private int selectedChordTail = -1;
+    private ChordGraphModel<T>.ChordGraphItem<T> selectedItemRef;
+    private ChordGraphModel<T>.ChordGraphItem<T> selectedHeadRef;
+    private ChordGraphModel<T>.ChordGraphItem<T> selectedTailRef;
+    private SelectionListener selectionListener;
+    private final float touchSlop;
+    private float downX;
+    private float downY;
+
+    /**
+     * Receives the draw metrics of every frame.
+     */
+    public interface MetricsListener {
+        /**
+         * Called on the UI thread at the end of every frame.
+         * @param metrics - the metrics of the view, updated in place so copy what should be kept
+         */
+        void onFrameDrawn(FrameMetrics metrics);
+    }
+
+    /**
+     * Receives the items and chords the user selects by tapping the graph.
+     */
+    public interface SelectionListener {
+        /**
+         * Called on the UI thread when an item is selected or the selection is cleared.
+         * @param index - the index of the selected item, -1 when nothing is selected
+         */
+        void onItemSelected(int index);
+
+        /**
+         * Called on the UI thread when a chord is selected.
+         * @param head - the index of the item at the head of the chord
+         * @param tail - the index of the item at the tail of the chord
+         */
+        void onChordSelected(int head, int tail);
+    }
 
     /**
-     * Constructor initalizes collections and the color palette
+     * Constructor initalizes collections, the paints and the color palette
      * @param context the Android context
      * @param model the model that drives this view
      */
     public ChordGraphView(Context context, ChordGraphModel<T> model) {
         super(context);
         this.model = model;
-        this.distinctValueColors = new HashMap<String, Integer>();
 
         // Initialize the color palette
-        this.colorPalette = new ColorPalette(
+        ColorPalette colorPalette = new ColorPalette(
                 getResources().getColor(R.color.chord_palette_gradient_begin),
                 getResources().getColor(R.color.chord_palette_gradient_end),
                 50);
+
+        int primaryColor = getResources().getColor(R.color.graph_primary_color);
+        layout = new ChordGraphLayout(colorPalette, primaryColor);
+        renderer = new CanvasRenderer();
+
+        // setup the debug overlay Paint style
+        overlayPaint = new Paint();
+        overlayPaint.setColor(primaryColor);
+        overlayPaint.setTextSize(OVERLAY_TEXT_SIZE);
+        overlayPaint.setAntiAlias(true);
+        overlayText = new StringBuilder();
+        frameMetrics = new FrameMetrics();
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    /**
+     * @return the number of label measurements served from the cache
+     */
+    public int getLabelCacheHitCount() {
+        return renderer.getLabelCacheHitCount();
+    }
+
+    /**
+     * @return the number of label measurements that had to be measured
+     */
+    public int getLabelCacheMissCount() {
+        return renderer.getLabelCacheMissCount();
+    }
+
+    /**
+     * @return the fraction of label measurements served from the cache, 0 if there were none
+     */
+    public float getLabelCacheHitRate() {
+        int total = getLabelCacheHitCount() + getLabelCacheMissCount();
+        return (total == 0) ? 0.0f : (float) getLabelCacheHitCount() / total;
+    }
+
+    /**
+     * Sets the listener that receives the draw metrics of every frame. Without a listener or the
+     * debug overlay nothing is measured.
+     * @param metricsListener - the listener, or null to remove it
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Shows or hides the debug overlay that draws the model and frame metrics over the graph.
+     * @param debugOverlayEnabled - true to show the overlay
+     */
+    public void setDebugOverlayEnabled(boolean debugOverlayEnabled) {
+        this.debugOverlayEnabled = debugOverlayEnabled;
+        invalidate();
+    }
+
+    /**
+     * @return the draw metrics of the view, only measured while there is a listener or overlay
+     */
+    public FrameMetrics getFrameMetrics() {
+        return frameMetrics;
+    }
+
+    /**
+     * Sets the number of chords above which the chords are drawn as bundled ribbons.
+     * @param bundleThreshold - the chord count threshold
+     */
+    public void setBundleThreshold(int bundleThreshold) {
+        layout.setBundleThreshold(bundleThreshold);
+        cachedModel = null;
+        invalidate();
+    }
+
+    /**
+     * Turns drawing the chords in batches of lines per color on or off, to compare the chords
+     * phase of the frame metrics with a path per chord.
+     * @param chordBatching - true to batch the chords, the default
+     */
+    public void setChordBatching(boolean chordBatching) {
+        layout.setChordBatching(chordBatching);
+        cachedModel = null;
+        invalidate();
+    }
+
+    /**
+     * Sets the listener that receives the items and chords the user selects.
+     * @param selectionListener - the listener, or null to remove it
+     */
+    public void setSelectionListener(SelectionListener selectionListener) {
+        this.selectionListener = selectionListener;
+    }
+
+    /**
+     * @return the index of the selected item, -1 if no item is selected
+     */
+    public int getSelectedItem() {
+        followSelection();
+        return selectedItem;
+    }
+
+    /**
+     * Selects an item, its chords are highlighted over the graph. The listener isn't called.
+     * @param index - the index of the item, -1 to clear the selection
+     */
+    public void setSelectedItem(int index) {
+        setSelection((index < model.getItemCount()) ? index : -1, -1, -1);
+        invalidate();
+    }
+
+    /**
+     * @return the model that drives this view
+     */
+    public ChordGraphModel<T> getModel() {
+        return model;
+    }
+
+    /**
+     * Swaps in a new model and redraws. Must be called on the UI thread, the model should not be
+     * changed while the view holds it (ie. a snapshot from ChordGraphModel.snapshot() or a model
+     * handed over by a ChordGraphBuilder).
+     * @param model - the new model that drives this view
+     */
+    public void setModel(ChordGraphModel<T> model) {
+        this.model = model;
+        // the indices of the old model mean nothing in the new one
+        setSelection(-1, -1, -1);
+        invalidate();
+    }
+
+    /**
+     * Selects what is under a tap, only the highlight is redrawn
+     * @param event - the touch event
+     * @return true to receive the rest of the gesture
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                downX = event.getX();
+                downY = event.getY();
+                // build the chord index while the finger is down if the model changed, so the
+                // tap is answered within a frame when it lifts
+                layout.update(getWidth(), getHeight(), model.getItemCount());
+                layout.getChordAt(model, downX, downY, touchSlop);
+                return true;
+            case MotionEvent.ACTION_UP:
+                // a tap if the finger didn't move further than the touch slop
+                float dx = event.getX() - downX;
+                float dy = event.getY() - downY;
+                if (dx * dx + dy * dy <= touchSlop * touchSlop) {
+                    performClick();
+                    select(event.getX(), event.getY());
+                }
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    /**
+     * Makes taps announced to accessibility services like a click
+     * @return true as the click was handled
+     */
+    @Override
+    public boolean performClick() {
+        super.performClick();
+        return true;
+    }
+
+    /**
+     * Selects the item at a point, or else the chord nearest to it, or clears the selection.
+     * @param x - the x of the point in the view
+     * @param y - the y of the point in the view
+     */
+    private void select(float x, float y) {
+        // the layout follows the model the same way it does when drawing
+        layout.update(getWidth(), getHeight(), model.getItemCount());
+        int item = layout.getSlotAt(x, y);
+        int chordHead = -1;
+        int chordTail = -1;
+        if (item < 0) {
+            int chord = layout.getChordAt(model, x, y, touchSlop);
+            if (chord >= 0) {
+                chordHead = layout.getChordHead(chord);
+                chordTail = layout.getChordTail(chord);
+            }
+        }
+        if (item == selectedItem && chordHead == selectedChordHead
+                && chordTail == selectedChordTail) {
+            return;
+        }
+
+        setSelection(item, chordHead, chordTail);
+        invalidate();
+        if (selectionListener != null) {
+            if (chordHead >= 0) {
+                selectionListener.onChordSelected(chordHead, chordTail);
+            } else {
+                selectionListener.onItemSelected(item);
+            }
+        }
+    }
+
+    /**
+     * Recreates the cached graph layer when the view size changes, the layout follows the size of
+     * the canvas on the next frame
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        // the cached graph layer has to match the size of the view
+        releaseGraphCache();
+        if (w > 0 && h > 0) {
+            graphCache = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            graphCacheCanvas = new Canvas(graphCache);
+        }
+    }
+
+    /**
+     * Releases the cached graph layer when the view goes away
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseGraphCache();
+    }
+
+    /**
+     * Recycles the cached graph layer, it is created again on the next size change
+     */
+    private void releaseGraphCache() {
+        if (graphCache != null) {
+            graphCache.recycle();
+            graphCache = null;
+            graphCacheCanvas = null;
+        }
+        cachedModel = null;
     }
 
     /**
@@ -60,7 +353,35 @@ public class ChordGraphView<T> extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        drawGraph(canvas);
+        measuring = metricsListener != null || debugOverlayEnabled;
+        long frameStart = measuring ? System.nanoTime() : 0;
+        boolean graphDrawn = true;
+
+        if (graphCache == null) {
+            // without a cache layer just draw straight to the canvas
+            drawGraph(canvas);
+        } else {
+            // redraw the cached layer only if the model changed since it was drawn
+            graphDrawn = cachedModel != model || cachedVersion != model.getVersion();
+            if (graphDrawn) {
+                graphCache.eraseColor(Color.TRANSPARENT);
+                drawGraph(graphCacheCanvas);
+                cachedModel = model;
+                cachedVersion = model.getVersion();
+            }
+            canvas.drawBitmap(graphCache, 0, 0, null);
+        }
+        drawHighlight(canvas);
+
+        if (measuring) {
+            frameMetrics.recordFrame(System.nanoTime() - frameStart, graphDrawn);
+            if (debugOverlayEnabled) {
+                drawDebugOverlay(canvas);
+            }
+            if (metricsListener != null) {
+                metricsListener.onFrameDrawn(frameMetrics);
+            }
+        }
     }
 
     /**
@@ -68,192 +389,157 @@ public class ChordGraphView<T> extends View {
      * @param canvas - the canvas to draw into
      */
     private void drawGraph(Canvas canvas) {
+        layout.update(canvas.getWidth(), canvas.getHeight(), model.getItemCount());
+        renderer.setCanvas(canvas);
+        renderer.begin(canvas.getWidth(), canvas.getHeight());
+
         // draw the rim first
-        float buffer = 150 * 2; // buffer from edge TODO: move to style
-        float canvasWidth = canvas.getWidth();
-        float canvasHeight = canvas.getHeight();
-        float radius = (Math.min(canvasWidth, canvasHeight) - buffer) / 2;
-
-        // setup the Paint style
-        Paint paint = new Paint();
-        paint.setColor(getResources().getColor(R.color.graph_primary_color));
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(4); //TODO: move to style
-        paint.setAntiAlias(true);
-
-        // create the rim and set the size
-        ShapeDrawable rim = new ShapeDrawable(new OvalShape());
-        float left = (canvasWidth / 2) - radius;
-        float top = (canvasHeight / 2) - radius;
-        float right = (canvasWidth / 2) + radius;
-        float bottom = (canvasHeight / 2) + radius;
-        rim.setBounds(new Rect((int) left, (int) top, (int) right, (int) bottom));
-        rim.getPaint().set(paint);
-
-        // draw the rim to the canvas
-        rim.draw(canvas);
+        layout.drawRim(renderer);
 
         // draw the items around the rim
-        drawItems(canvas, rim);
+        drawItems();
+        renderer.end();
     }
 
     /**
-     * Calls methods to draw the elements for the items
+     * Draws the highlight of the selection over the graph, straight to the canvas so the cached
+     * graph layer is left as it is
      * @param canvas - the canvas to draw into
-     * @param rim - the ShapeDrawable of the chordgraph rim
      */
-    private void drawItems(Canvas canvas, ShapeDrawable rim) {
-        // calculate the distance between each item around the rim
-        float currentIntervalRad = (float) Math.toRadians(360.0f / ((float) model.getItems().size()));
-        // draw the chords
-        drawItemsChords(canvas, rim, currentIntervalRad);
-        // draw the slots aroudn the rim
-        drawItemsSlots(canvas, rim, currentIntervalRad);
-        // draw the labels around the rim
-        drawItemsLabels(canvas, rim, currentIntervalRad);
+    private void drawHighlight(Canvas canvas) {
+        followSelection();
+        if (selectedItem < 0 && selectedChordHead < 0) {
+            return;
+        }
+
+        layout.update(canvas.getWidth(), canvas.getHeight(), model.getItemCount());
+        renderer.setCanvas(canvas);
+        renderer.begin(canvas.getWidth(), canvas.getHeight());
+        if (selectedItem >= 0) {
+            layout.drawItemHighlight(model, renderer, selectedItem);
+        } else {
+            layout.drawChordHighlight(model, renderer, selectedChordHead, selectedChordTail);
+        }
+        renderer.end();
     }
 
     /**
-     * Draw the slots around the rim of the chordgraph. One for each item.
-     * @param canvas - the canvas to draw into
-     * @param rim - the ShapeDrawable of the chordgraph rim
-     * @param intervalRad - the interval in radians between each slot
+     * Sets the selection and remembers the items at its indices.
+     * @param item - the index of the selected item, -1 if a chord or nothing is selected
+     * @param chordHead - the index of the head of the selected chord, -1 if none is selected
+     * @param chordTail - the index of the tail of the selected chord, -1 if none is selected
      */
-    private void drawItemsSlots(Canvas canvas, ShapeDrawable rim, float intervalRad) {
-        //set the paint style
-        Paint paint = new Paint();
-        paint.setColor(getResources().getColor(R.color.graph_primary_color));
-        paint.setStyle(Paint.Style.FILL_AND_STROKE);
-        paint.setAntiAlias(true);
-
-        // iterate around the rim drawing markers around the rim
-        //TODO: Refactor this, move the radius to the style
-        float newX, newY;
-        int slot = 0;
-        while (slot * intervalRad < 6.28) {
-            newX = rim.getBounds().exactCenterX() + ((rim.getBounds().width() / 2) * (float) Math.sin(intervalRad * slot));
-            newY = rim.getBounds().exactCenterY() - ((rim.getBounds().height() / 2) * (float) Math.cos(intervalRad * slot));
-            canvas.drawCircle(newX, newY, 10, paint);
-            slot++;
-        }
+    private void setSelection(int item, int chordHead, int chordTail) {
+        selectedItem = item;
+        selectedChordHead = chordHead;
+        selectedChordTail = chordTail;
+        selectedItemRef = (item >= 0) ? model.getItem(item) : null;
+        selectedHeadRef = (chordHead >= 0) ? model.getItem(chordHead) : null;
+        selectedTailRef = (chordTail >= 0) ? model.getItem(chordTail) : null;
     }
 
     /**
-     * Draw the labels around the rim of the chordgraph. One for each item.
-     * @param canvas - the canvas to draw into
-     * @param rim - the ShapeDrawable of the chordgraph rim
-     * @param intervalRad - the interval in radians between each slot
+     * Moves the selection to the indices its items are at now, ie. after update() shifted them.
+     * If a selected item is gone the selection is cleared, even when another item took its slot
+     * like the newest item of a sliding window does.
      */
-    private void drawItemsLabels(Canvas canvas, ShapeDrawable rim, float intervalRad) {
-        //setup the paint style
-        Paint paint = new Paint();
-        paint.setColor(getResources().getColor(R.color.graph_primary_color));
-        paint.setTextSize(34.0f);
-        paint.setTextAlign(Paint.Align.LEFT);
-        paint.setAntiAlias(true);
-
-        // iterate through the models values and draw the labels
-        for (ChordGraphModel.ChordGraphItem item : model.getItems().values()) {
-            //TODO: Refactor path caclulation, move magic numbers to a style
-            String labelStr = (String) item.value.toString();
-            // calculate the label bounds and adjust to center the label
-            Rect textBounds = new Rect();
-            paint.getTextBounds(labelStr, 0, labelStr.length(), textBounds);
-            float vCenterTextBounds = textBounds.height() / 2;
-            int slot = item.index;
-            float spacing = 17.0f;
-            float maxLength = 300.0f;
-            float startX = rim.getBounds().exactCenterX() + ((rim.getBounds().width() / 2 + spacing) * (float) Math.sin(intervalRad * slot));
-            float startY = rim.getBounds().exactCenterY() - ((rim.getBounds().height() / 2 + spacing) * (float) Math.cos(intervalRad * slot));
-            float endX = rim.getBounds().exactCenterX() + ((rim.getBounds().width() / 2 + maxLength) * (float) Math.sin(intervalRad * slot));
-            float endY = rim.getBounds().exactCenterY() - ((rim.getBounds().height() / 2 + maxLength) * (float) Math.cos(intervalRad * slot));
-
-            // Have text stick out radially
-            Path path = new Path();
-            if (intervalRad * slot < 3.14) {
-                paint.setTextAlign(Paint.Align.LEFT);
-                path.setLastPoint(startX, startY);
-                path.lineTo(endX, endY);
-            } else {
-                // flip the label path if it's on the left side
-                paint.setTextAlign(Paint.Align.RIGHT);
-                path.setLastPoint(endX, endY);
-                path.lineTo(startX, startY);
-            }
-            // draw the text
-            canvas.drawTextOnPath(labelStr, path, 0, vCenterTextBounds, paint);
+    private void followSelection() {
+        int item = indexOf(selectedItemRef);
+        int chordHead = indexOf(selectedHeadRef);
+        int chordTail = indexOf(selectedTailRef);
+        if ((selectedItemRef != null && item < 0)
+                || (selectedHeadRef != null && (chordHead < 0 || chordTail < 0))) {
+            setSelection(-1, -1, -1);
+        } else {
+            selectedItem = item;
+            selectedChordHead = chordHead;
+            selectedChordTail = chordTail;
         }
     }
 
     /**
-     * Draws the chords from the model that represent a match between items.
-     * @param canvas - the canvas to draw into
-     * @param rim - the ShapeDrawable of the chordgraph rim
-     * @param intervalRad - the interval in radians between each slot
+     * @param item - an item that was in the model, or null
+     * @return the index of the item if it is still in the model, -1 if not or it is null
      */
-    private void drawItemsChords(Canvas canvas, ShapeDrawable rim, float intervalRad) {
-        // setup the paint style
-        Paint paint = new Paint();
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(3);
-
-        // iterate through the model chords and draw the arcs
-        for (ChordGraphModel.Chord chord : model.getChords()) {
-            int startSlot = ((ChordGraphModel.ChordGraphItem) chord.itemTuple.first).index;
-            float startX = rim.getBounds().exactCenterX() + ((rim.getBounds().width() / 2) * (float) Math.sin(intervalRad * startSlot));
-            float startY = rim.getBounds().exactCenterY() - ((rim.getBounds().height() / 2) * (float) Math.cos(intervalRad * startSlot));
-            int endSlot = ((ChordGraphModel.ChordGraphItem) chord.itemTuple.second).index;
-            float endX = rim.getBounds().exactCenterX() + ((rim.getBounds().width() / 2) * (float) Math.sin(intervalRad * endSlot));
-            float endY = rim.getBounds().exactCenterY() - ((rim.getBounds().height() / 2) * (float) Math.cos(intervalRad * endSlot));
-
-            // create the Path, add the first point, and add he quadratic Bezier Curve
-            Path path = new Path();
-            path.setLastPoint(startX, startY);
-            path.quadTo(rim.getBounds().exactCenterX(), rim.getBounds().exactCenterY(), endX, endY);
-
-            // get the category String value
-            ChordGraphModel.ChordGraphCategory cat = this.model.getChordCategories().get(
-                    ((ChordGraphModel.ChordGraphItem) chord.itemTuple.first).value.toString());
-            // get the color associated with this category String
-            Integer color = getColorForValue(cat.distinctValue);
-            paint.setColor(color);
-
-            //TODO: Could move this to a table - if this had to be realtime we would optimize a lot of stuff
-            // set the alpha value based on the number of connections, limit if more than 9
-            int chordCount = cat.count>9?9:cat.count;
-            paint.setAlpha(255 - chordCount*25);
-
-            // draw the path
-            canvas.drawPath(path, paint);
-        }
+    private int indexOf(ChordGraphModel<T>.ChordGraphItem<T> item) {
+        return model.indexOf(item);
     }
 
     /**
-     * Gets the color value for the provided string
-     * @param value - the String value of the item to find the color of
-     * @return the integer value of the Color
+     * Calls the layout to draw the elements for the items, timing each phase when measuring
      */
-    private Integer getColorForValue(String value){
-        // default color
-        Integer color = Color.DKGRAY;
-
-        if(model != null && distinctValueColors != null && colorPalette != null){
-            // get the color if there is one
-            color = distinctValueColors.get(value);
-            if(color == null){
-                // if there is no color, get a new random one
-                color = colorPalette.getColor();
-                // TODO: this is unbounded but for this small app it is acceptable
-                distinctValueColors.put(value, color);
-            }
+    private void drawItems() {
+        long start = measuring ? System.nanoTime() : 0;
+
+        // draw the chords, bundled if there are too many to draw one by one
+        boolean bundled = layout.drawChords(model, renderer);
+        long chordsEnd = measuring ? System.nanoTime() : 0;
+        // draw the slots aroudn the rim
+        layout.drawSlots(renderer);
+        long slotsEnd = measuring ? System.nanoTime() : 0;
+        // draw the labels around the rim
+        layout.drawLabels(model, renderer);
+
+        if (measuring) {
+            frameMetrics.recordGraph(chordsEnd - start, slotsEnd - chordsEnd,
+                    System.nanoTime() - slotsEnd, bundled);
         }
-        return color;
     }
 
-    //TODO Move items into this class for handling touch events
-    //TODO add a large hitbox
-    private class ChordGraphViewItem {
-        public ChordGraphViewItem() { }
-        public void draw(Canvas canvas) { }
+    /**
+     * Draws the model and frame metrics in the top left corner. This is for debugging so the
+     * text is formatted on every frame, the StringBuilder is reused.
+     * @param canvas - the canvas to draw into
+     */
+    private void drawDebugOverlay(Canvas canvas) {
+        float lineHeight = OVERLAY_TEXT_SIZE * 1.25f;
+        float y = lineHeight;
+
+        // the model
+        overlayText.setLength(0);
+        overlayText.append("items ").append(model.getItemCount())
+                .append("  categories ").append(model.getCategoryCount())
+                .append("  chords ").append(model.getChordCount());
+        canvas.drawText(overlayText, 0, overlayText.length(), 0, y, overlayPaint);
+        y += lineHeight;
+
+        overlayText.setLength(0);
+        overlayText.append("build ");
+        appendMillis(model.getLastBuildNanos());
+        overlayText.append("  ~").append(model.estimateRetainedBytes() / 1024).append("KB");
+        canvas.drawText(overlayText, 0, overlayText.length(), 0, y, overlayPaint);
+        y += lineHeight;
+
+        // the phases of the last graph drawn
+        overlayText.setLength(0);
+        overlayText.append(frameMetrics.isBundled() ? "ribbons " : "chords ");
+        appendMillis(frameMetrics.getChordsNanos());
+        overlayText.append("  slots ");
+        appendMillis(frameMetrics.getSlotsNanos());
+        overlayText.append("  labels ");
+        appendMillis(frameMetrics.getLabelsNanos());
+        canvas.drawText(overlayText, 0, overlayText.length(), 0, y, overlayPaint);
+        y += lineHeight;
+
+        // the frames
+        overlayText.setLength(0);
+        overlayText.append("frame ");
+        appendMillis(frameMetrics.getFrameNanos());
+        overlayText.append("  frames ").append(frameMetrics.getFrameCount())
+                .append("  jank ").append(frameMetrics.getJankFrameCount());
+        canvas.drawText(overlayText, 0, overlayText.length(), 0, y, overlayPaint);
+    }
+
+    /**
+     * Appends a duration to the overlay text in milliseconds with two decimals
+     * @param nanos - the duration in nanoseconds
+     */
+    private void appendMillis(long nanos) {
+        long hundredths = nanos / 10000;
+        overlayText.append(hundredths / 100).append('.');
+        if (hundredths % 100 < 10) {
+            overlayText.append('0');
+        }
+        overlayText.append(hundredths % 100).append("ms");
     }
 }
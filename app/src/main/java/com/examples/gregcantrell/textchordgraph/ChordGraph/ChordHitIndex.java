@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the chord nearest to a point, ie. a touch, without looking at every chord. A
+ * chord is flattened into straight pieces no longer than a cell of a grid over the graph, and
+ * every cell lists the pieces whose bounding box overlaps it, at most 4 per piece. A query only
+ * measures the distance to the pieces listed in the cells within reach of the point, one piece at
+ * a time, so it costs the number of pieces nearby rather than the number of chords.
+ *
+ * A piece is kept as one int, its chord and its number along the chord, and is recomputed from the
+ * ends of the chord when it is measured. The pieces of all the cells are one int array with the
+ * start of every cell in another, filled with a counting sort by cell when the index is built. So
+ * the index holds no objects and costs about 12 bytes per piece and cell while it is built and 4
+ * bytes after.
+ */
+final class ChordHitIndex {
+
+    // The size in pixels of a cell, at least twice the reach of a query so a query looks at no
+    // more than 4 cells
+    private static final float CELL_SIZE = 48.0f;
+    // The greatest distance in pixels between a chord and the pieces it is flattened into
+    private static final float FLATNESS = 0.5f;
+    // A piece is its chord shifted up by 8 bits and its number along the chord
+    private static final int PIECE_BITS = 8;
+    private static final int MAX_PIECES = 1 << PIECE_BITS;
+
+    // The grid, its top left corner and size in cells
+    private float originX;
+    private float originY;
+    private int columns;
+    private int rows;
+
+    // The chords, their slots, the curve they follow and the number of pieces they are cut into
+    private int chordCount;
+    private int[] chordHeads;
+    private int[] chordTails;
+    private float[] chordStartX;
+    private float[] chordStartY;
+    private float[] chordEndX;
+    private float[] chordEndY;
+    private int[] chordPieces;
+    private float controlX;
+    private float controlY;
+
+    // The cell and piece of every entry while the chords are added
+    private int entryCount;
+    private int[] entryCells;
+    private int[] entryPieces;
+
+    // The pieces of every cell after build(), cellStarts has the end of the last cell too
+    private int[] cellStarts;
+    private int[] cellPieces;
+
+    /**
+     * Constructor just initializes the arrays
+     */
+    ChordHitIndex() {
+        chordHeads = new int[64];
+        chordTails = new int[64];
+        chordStartX = new float[64];
+        chordStartY = new float[64];
+        chordEndX = new float[64];
+        chordEndY = new float[64];
+        chordPieces = new int[64];
+        entryCells = new int[256];
+        entryPieces = new int[256];
+        cellStarts = new int[1];
+        cellPieces = new int[0];
+    }
+
+    /**
+     * Empties the index and sets up the grid for a graph, the arrays are kept for the next chords.
+     *
+     * @param centerX the x of the center of the graph, the control point of every chord
+     * @param centerY the y of the center of the graph
+     * @param radius the radius of the rim, every chord is inside it
+     */
+    void clear(float centerX, float centerY, float radius) {
+        controlX = centerX;
+        controlY = centerY;
+        originX = centerX - radius;
+        originY = centerY - radius;
+        columns = Math.max(1, (int) Math.ceil(2 * radius / CELL_SIZE));
+        rows = columns;
+        chordCount = 0;
+        entryCount = 0;
+    }
+
+    /**
+     * @return the number of chords in the index
+     */
+    int getChordCount() {
+        return chordCount;
+    }
+
+    /**
+     * @param chord the number of the chord, in the order they were added
+     * @return the slot of the head of the chord
+     */
+    int getHead(int chord) {
+        return chordHeads[chord];
+    }
+
+    /**
+     * @param chord the number of the chord, in the order they were added
+     * @return the slot of the tail of the chord
+     */
+    int getTail(int chord) {
+        return chordTails[chord];
+    }
+
+    /**
+     * Adds a chord, a quadratic Bezier curve through the control point given to clear().
+     *
+     * @param head the slot of the head of the chord
+     * @param tail the slot of the tail of the chord
+     * @param startX the x of the head slot
+     * @param startY the y of the head slot
+     * @param endX the x of the tail slot
+     * @param endY the y of the tail slot
+     */
+    void add(int head, int tail, float startX, float startY, float endX, float endY) {
+        if (chordCount == chordHeads.length) {
+            int capacity = chordCount * 2;
+            chordHeads = Arrays.copyOf(chordHeads, capacity);
+            chordTails = Arrays.copyOf(chordTails, capacity);
+            chordStartX = Arrays.copyOf(chordStartX, capacity);
+            chordStartY = Arrays.copyOf(chordStartY, capacity);
+            chordEndX = Arrays.copyOf(chordEndX, capacity);
+            chordEndY = Arrays.copyOf(chordEndY, capacity);
+            chordPieces = Arrays.copyOf(chordPieces, capacity);
+        }
+        int chord = chordCount++;
+        chordHeads[chord] = head;
+        chordTails[chord] = tail;
+        chordStartX[chord] = startX;
+        chordStartY[chord] = startY;
+        chordEndX[chord] = endX;
+        chordEndY[chord] = endY;
+
+        // as few pieces as keep to the curve, and short enough that a piece's box is small
+        float ddx = startX - 2 * controlX + endX;
+        float ddy = startY - 2 * controlY + endY;
+        double bend = Math.sqrt(ddx * ddx + ddy * ddy);
+        double length = Math.hypot(controlX - startX, controlY - startY)
+                + Math.hypot(endX - controlX, endY - controlY);
+        int pieces = (int) Math.ceil(Math.max(Math.sqrt(bend / (4 * FLATNESS)),
+                length / CELL_SIZE));
+        pieces = Math.max(1, Math.min(MAX_PIECES, pieces));
+        chordPieces[chord] = pieces;
+
+        // add every piece to the cells its box overlaps
+        float fromX = startX;
+        float fromY = startY;
+        for (int piece = 0; piece < pieces; piece++) {
+            float t = (float) (piece + 1) / pieces;
+            float u = 1 - t;
+            float toX = u * u * startX + 2 * u * t * controlX + t * t * endX;
+            float toY = u * u * startY + 2 * u * t * controlY + t * t * endY;
+            int firstColumn = columnOf(Math.min(fromX, toX));
+            int lastColumn = columnOf(Math.max(fromX, toX));
+            int firstRow = rowOf(Math.min(fromY, toY));
+            int lastRow = rowOf(Math.max(fromY, toY));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    addEntry(row * columns + column, (chord << PIECE_BITS) | piece);
+                }
+            }
+            fromX = toX;
+            fromY = toY;
+        }
+    }
+
+    /**
+     * Sorts the entries into the pieces of every cell, called once every chord is added.
+     */
+    void build() {
+        int cellCount = columns * rows;
+        if (cellStarts.length < cellCount + 1) {
+            cellStarts = new int[cellCount + 1];
+        }
+        if (cellPieces.length < entryCount) {
+            cellPieces = new int[entryCount];
+        }
+
+        // count the entries of every cell, turn the counts into where the cells start and then
+        // place the entries, moving the starts up to where the cells end
+        Arrays.fill(cellStarts, 0, cellCount + 1, 0);
+        for (int e = 0; e < entryCount; e++) {
+            cellStarts[entryCells[e]]++;
+        }
+        int start = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int count = cellStarts[cell];
+            cellStarts[cell] = start;
+            start += count;
+        }
+        for (int e = 0; e < entryCount; e++) {
+            cellPieces[cellStarts[entryCells[e]]++] = entryPieces[e];
+        }
+        for (int cell = cellCount; cell > 0; cell--) {
+            cellStarts[cell] = cellStarts[cell - 1];
+        }
+        cellStarts[0] = 0;
+    }
+
+    /**
+     * Finds the chord nearest to a point.
+     *
+     * @param x the x of the point
+     * @param y the y of the point
+     * @param reach the greatest distance from the point to the chord, at most half a cell
+     * @return the number of the nearest chord, -1 if none is within reach
+     */
+    int find(float x, float y, float reach) {
+        reach = Math.min(reach, CELL_SIZE / 2);
+        int firstColumn = columnOf(x - reach);
+        int lastColumn = columnOf(x + reach);
+        int firstRow = rowOf(y - reach);
+        int lastRow = rowOf(y + reach);
+
+        int nearest = -1;
+        float nearestDistanceSquared = reach * reach;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int p = cellStarts[cell]; p < cellStarts[cell + 1]; p++) {
+                    int chord = cellPieces[p] >>> PIECE_BITS;
+                    float distanceSquared = distanceSquared(chord,
+                            cellPieces[p] & (MAX_PIECES - 1), x, y);
+                    if (distanceSquared <= nearestDistanceSquared) {
+                        nearest = chord;
+                        nearestDistanceSquared = distanceSquared;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Measures the distance from a point to one piece of a chord.
+     *
+     * @param chord the number of the chord
+     * @param piece the number of the piece along the chord
+     * @param x the x of the point
+     * @param y the y of the point
+     * @return the distance squared
+     */
+    private float distanceSquared(int chord, int piece, float x, float y) {
+        float startX = chordStartX[chord];
+        float startY = chordStartY[chord];
+        float endX = chordEndX[chord];
+        float endY = chordEndY[chord];
+        int pieces = chordPieces[chord];
+
+        // the ends of the piece
+        float t = (float) piece / pieces;
+        float u = 1 - t;
+        float fromX = u * u * startX + 2 * u * t * controlX + t * t * endX;
+        float fromY = u * u * startY + 2 * u * t * controlY + t * t * endY;
+        t = (float) (piece + 1) / pieces;
+        u = 1 - t;
+        float toX = u * u * startX + 2 * u * t * controlX + t * t * endX;
+        float toY = u * u * startY + 2 * u * t * controlY + t * t * endY;
+
+        // the nearest point of the piece to the point
+        float dx = toX - fromX;
+        float dy = toY - fromY;
+        float lengthSquared = dx * dx + dy * dy;
+        float along = (lengthSquared == 0) ? 0
+                : Math.max(0, Math.min(1, ((x - fromX) * dx + (y - fromY) * dy) / lengthSquared));
+        float offX = fromX + along * dx - x;
+        float offY = fromY + along * dy - y;
+        return offX * offX + offY * offY;
+    }
+
+    /**
+     * @param x the x of a point
+     * @return the column of the grid the point is in, the nearest one if it is off the grid
+     */
+    private int columnOf(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - originX) / CELL_SIZE)));
+    }
+
+    /**
+     * @param y the y of a point
+     * @return the row of the grid the point is in, the nearest one if it is off the grid
+     */
+    private int rowOf(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - originY) / CELL_SIZE)));
+    }
+
+    /**
+     * @param cell the cell
+     * @param piece the chord and number of the piece in it
+     */
+    private void addEntry(int cell, int piece) {
+        if (entryCount == entryCells.length) {
+            entryCells = Arrays.copyOf(entryCells, entryCount * 2);
+            entryPieces = Arrays.copyOf(entryPieces, entryCount * 2);
+        }
+        entryCells[entryCount] = cell;
+        entryPieces[entryCount++] = piece;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the chords of a graph flattened into line segments and grouped by how they are
+ * painted, so a whole group is drawn with one ChordGraphRenderer.drawLines() call instead of one
+ * path per chord. Every group has a color, a stroke width and a float[] of segments, x0 y0 x1 y1
+ * each, the layout the Canvas drawLines() takes. The arrays only grow and are reused when the
+ * chords are flattened again.
+ *
+ * The group of a chord is found by a small int key the caller picks, ie. the palette index of its
+ * color and its alpha bucket, looked up in a direct table. The groups are drawn in the order they
+ * were first added to.
+ *
+ * A chord is split into as few segments as keep it within FLATNESS pixels of the curve. A chord
+ * through the center is close to straight and needs one, a chord between neighbouring slots is
+ * the most bent and needs the most, up to MAX_SEGMENTS.
+ */
+final class ChordLineBatch {
+
+    // The greatest distance in pixels between a chord and the segments it is flattened into
+    private static final float FLATNESS = 0.5f;
+    private static final int MAX_SEGMENTS = 24;
+    private static final int INITIAL_GROUP_FLOATS = 256;
+
+    // The group of every key, -1 when the key has no group yet
+    private int[] keyGroups;
+
+    // The groups, their paint and their segments
+    private int groupCount;
+    private int[] groupKeys;
+    private int[] groupColors;
+    private float[] groupStrokeWidths;
+    private float[][] groupPoints;
+    private int[] groupFloatCounts;
+    private int segmentCount;
+
+    /**
+     * Constructor just initializes the arrays
+     */
+    ChordLineBatch() {
+        keyGroups = new int[0];
+        groupKeys = new int[8];
+        groupColors = new int[8];
+        groupStrokeWidths = new float[8];
+        groupPoints = new float[8][];
+        groupFloatCounts = new int[8];
+    }
+
+    /**
+     * Empties every group, the arrays are kept for the next chords.
+     *
+     * @param keyCount the number of keys, every key added until the next clear is below it
+     */
+    void clear(int keyCount) {
+        if (keyGroups.length < keyCount) {
+            keyGroups = new int[keyCount];
+            Arrays.fill(keyGroups, -1);
+        } else {
+            // only the keys in use have a group
+            for (int g = 0; g < groupCount; g++) {
+                keyGroups[groupKeys[g]] = -1;
+            }
+        }
+        for (int g = 0; g < groupCount; g++) {
+            groupFloatCounts[g] = 0;
+        }
+        groupCount = 0;
+        segmentCount = 0;
+    }
+
+    /**
+     * @return the number of groups, ie. the number of draw calls
+     */
+    int getGroupCount() {
+        return groupCount;
+    }
+
+    /**
+     * @return the number of line segments in all the groups
+     */
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return the number of bytes held by the segment arrays
+     */
+    long getRetainedBytes() {
+        long bytes = 0;
+        for (float[] points : groupPoints) {
+            if (points != null) {
+                bytes += 4L * points.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Flattens a quadratic Bezier curve into the group of a key.
+     *
+     * @param key the key of the group, below the key count of the last clear()
+     * @param color the color of the group, only used when the key has no group yet
+     * @param strokeWidth the stroke width of the group, only used when the key has no group yet
+     * @param startX the x of the start point
+     * @param startY the y of the start point
+     * @param controlX the x of the control point
+     * @param controlY the y of the control point
+     * @param endX the x of the end point
+     * @param endY the y of the end point
+     */
+    void addQuad(int key, int color, float strokeWidth, float startX, float startY,
+                 float controlX, float controlY, float endX, float endY) {
+        int group = keyGroups[key];
+        if (group < 0) {
+            group = addGroup(key, color, strokeWidth);
+        }
+
+        // the distance from the segments to the curve is at most a quarter of |start - 2 control
+        // + end| / segments^2
+        float ddx = startX - 2 * controlX + endX;
+        float ddy = startY - 2 * controlY + endY;
+        double bend = Math.sqrt(ddx * ddx + ddy * ddy);
+        int segments = (int) Math.ceil(Math.sqrt(bend / (4 * FLATNESS)));
+        segments = Math.max(1, Math.min(MAX_SEGMENTS, segments));
+
+        int floats = groupFloatCounts[group];
+        float[] points = groupPoints[group];
+        if (points.length < floats + segments * 4) {
+            points = Arrays.copyOf(points, Math.max(floats + segments * 4, points.length * 2));
+            groupPoints[group] = points;
+        }
+
+        // step along the curve, each segment starts where the last one ended
+        float x = startX;
+        float y = startY;
+        for (int s = 1; s <= segments; s++) {
+            float t = (float) s / segments;
+            float u = 1 - t;
+            float nextX = u * u * startX + 2 * u * t * controlX + t * t * endX;
+            float nextY = u * u * startY + 2 * u * t * controlY + t * t * endY;
+            points[floats++] = x;
+            points[floats++] = y;
+            points[floats++] = nextX;
+            points[floats++] = nextY;
+            x = nextX;
+            y = nextY;
+        }
+        groupFloatCounts[group] = floats;
+        segmentCount += segments;
+    }
+
+    /**
+     * Draws every group with one call.
+     *
+     * @param renderer the renderer to draw into
+     */
+    void draw(ChordGraphRenderer renderer) {
+        for (int g = 0; g < groupCount; g++) {
+            renderer.drawLines(groupPoints[g], 0, groupFloatCounts[g], groupStrokeWidths[g],
+                    groupColors[g]);
+        }
+    }
+
+    /**
+     * Adds a group for a key, reusing the segment array of a group from before the last clear().
+     *
+     * @param key the key of the group
+     * @param color the color of the group
+     * @param strokeWidth the stroke width of the group
+     * @return the group
+     */
+    private int addGroup(int key, int color, float strokeWidth) {
+        if (groupCount == groupKeys.length) {
+            int capacity = groupCount * 2;
+            groupKeys = Arrays.copyOf(groupKeys, capacity);
+            groupColors = Arrays.copyOf(groupColors, capacity);
+            groupStrokeWidths = Arrays.copyOf(groupStrokeWidths, capacity);
+            groupPoints = Arrays.copyOf(groupPoints, capacity);
+            groupFloatCounts = Arrays.copyOf(groupFloatCounts, capacity);
+        }
+        int group = groupCount++;
+        groupKeys[group] = key;
+        groupColors[group] = color;
+        groupStrokeWidths[group] = strokeWidth;
+        if (groupPoints[group] == null) {
+            groupPoints[group] = new float[INITIAL_GROUP_FLOATS];
+        }
+        keyGroups[key] = group;
+        return group;
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * This class stores chords in primitive arrays instead of one object per chord. Chord c is the
+ * link from item heads[c] to item tails[c] with weight values[c]. The arrays are PagedArrays that
+ * grow geometrically, so a snapshot of the model shares them through share() and a change after
+ * that only copies the pages it writes.
+ *
+ * The chords refer to the items by an id the store hands out, not by their index, so inserting or
+ * removing items only changes the index of each id that moved and never touches the chords. Every
+ * item has a list of its chords threaded through the arrays: the next chord of the head item and
+ * the next chord of the tail item are kept with every chord. So the chords of an item are walked
+ * and removed in the time of its degree, not the number of chords.
+ *
+ * A removed chord is only marked dead and skipped. Once half of the chords are dead they are
+ * squeezed out and the lists are threaded again, so a removal costs O(1) on average and the order
+ * of the live chords is kept.
+ *
+ * The store can also keep an object with every chord, ie. the Chord objects of a model that
+ * stores its chords as objects, which are then linked to their items the same way.
+ */
+public class ChordStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The chords by chord number, dead ones included
+    private PagedArray.Ints heads; // the id of the head item
+    private PagedArray.Ints tails; // the id of the tail item
+    private PagedArray.Floats values;
+    private PagedArray.Ints nextOfHead; // the next chord in the list of the head item, -1 at end
+    private PagedArray.Ints nextOfTail; // the next chord in the list of the tail item, -1 at end
+    private PagedArray.Ints dead; // 1 if the chord was removed
+    private PagedArray.Refs<Object> objects; // the object of every chord, null if none are kept
+    private int slotCount; // the chord numbers used, live or dead
+    private int deadCount;
+
+    // The items by id
+    private PagedArray.Ints itemIndices; // the index of the item in the model
+    private PagedArray.Ints firstChords; // the first chord in the list of the item, -1 if none
+    private PagedArray.Ints lastChords; // the last chord in the list of the item, -1 if none
+    private PagedArray.Ints degrees; // the number of live chords of the item
+    private int idCount; // the ids handed out, live or free
+    private int[] freeIds; // the ids of removed items, handed out again first
+    private int freeIdCount;
+
+    /**
+     * Constructor just initializes the arrays, no objects are kept with the chords
+     */
+    public ChordStore() {
+        this(false);
+    }
+
+    /**
+     * Constructor just initializes the arrays
+     *
+     * @param keepObjects true to keep an object with every chord
+     */
+    public ChordStore(boolean keepObjects) {
+        heads = new PagedArray.Ints(INITIAL_CAPACITY);
+        tails = new PagedArray.Ints(INITIAL_CAPACITY);
+        values = new PagedArray.Floats(INITIAL_CAPACITY);
+        nextOfHead = new PagedArray.Ints(INITIAL_CAPACITY);
+        nextOfTail = new PagedArray.Ints(INITIAL_CAPACITY);
+        dead = new PagedArray.Ints(INITIAL_CAPACITY);
+        if (keepObjects) {
+            objects = new PagedArray.Refs<Object>(INITIAL_CAPACITY);
+        }
+        itemIndices = new PagedArray.Ints(INITIAL_CAPACITY);
+        firstChords = new PagedArray.Ints(INITIAL_CAPACITY);
+        lastChords = new PagedArray.Ints(INITIAL_CAPACITY);
+        degrees = new PagedArray.Ints(INITIAL_CAPACITY);
+        freeIds = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Constructor for a copy that shares the arrays of a store
+     *
+     * @param shared the store to share the arrays of
+     */
+    private ChordStore(ChordStore shared) {
+        heads = shared.heads.share();
+        tails = shared.tails.share();
+        values = shared.values.share();
+        nextOfHead = shared.nextOfHead.share();
+        nextOfTail = shared.nextOfTail.share();
+        dead = shared.dead.share();
+        if (shared.objects != null) {
+            objects = shared.objects.share();
+        }
+        itemIndices = shared.itemIndices.share();
+        firstChords = shared.firstChords.share();
+        lastChords = shared.lastChords.share();
+        degrees = shared.degrees.share();
+        // a shared copy doesn't add items
+        freeIds = new int[0];
+    }
+
+    /**
+     * Adds an item without any chords.
+     *
+     * @param index the index of the item in the model
+     * @return the id of the item, the chords of the item are added with it
+     */
+    public int addItem(int index) {
+        int id;
+        if (freeIdCount > 0) {
+            id = freeIds[--freeIdCount];
+        } else {
+            id = idCount++;
+            itemIndices.ensureLength(idCount);
+            firstChords.ensureLength(idCount);
+            lastChords.ensureLength(idCount);
+            degrees.ensureLength(idCount);
+        }
+        itemIndices.set(id, index);
+        firstChords.set(id, -1);
+        lastChords.set(id, -1);
+        degrees.set(id, 0);
+        return id;
+    }
+
+    /**
+     * Moves an item to a new index, ie. after items were inserted or removed before it.
+     *
+     * @param id    the id of the item
+     * @param index the new index of the item in the model
+     */
+    public void setItemIndex(int id, int index) {
+        itemIndices.set(id, index);
+    }
+
+    /**
+     * Removes an item and every chord touching it. The id may be handed out again.
+     *
+     * @param id the id of the item
+     */
+    public void removeItem(int id) {
+        for (int chord = firstChords.get(id); chord >= 0; chord = next(chord, id)) {
+            if (dead.get(chord) != 0) {
+                continue;
+            }
+            dead.set(chord, 1);
+            deadCount++;
+            int other = (heads.get(chord) == id) ? tails.get(chord) : heads.get(chord);
+            degrees.set(other, degrees.get(other) - 1);
+        }
+        firstChords.set(id, -1);
+        lastChords.set(id, -1);
+        degrees.set(id, 0);
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        }
+        freeIds[freeIdCount++] = id;
+
+        if (deadCount * 2 > slotCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Adds a chord.
+     *
+     * @param headId the id of the head item
+     * @param tailId the id of the tail item
+     * @param value  the value of the chord
+     */
+    public void add(int headId, int tailId, float value) {
+        add(headId, tailId, value, null);
+    }
+
+    /**
+     * Adds a chord along with its object, if the store keeps them.
+     *
+     * @param headId the id of the head item
+     * @param tailId the id of the tail item
+     * @param value  the value of the chord
+     * @param object the object of the chord
+     */
+    public void add(int headId, int tailId, float value, Object object) {
+        int chord = slotCount++;
+        ensureChordLength(slotCount);
+        heads.set(chord, headId);
+        tails.set(chord, tailId);
+        values.set(chord, value);
+        dead.set(chord, 0);
+        if (objects != null) {
+            objects.set(chord, object);
+        }
+        link(chord);
+    }
+
+    /**
+     * Makes room in the chord arrays.
+     *
+     * @param length the number of chord numbers to make room for
+     */
+    private void ensureChordLength(int length) {
+        heads.ensureLength(length);
+        tails.ensureLength(length);
+        values.ensureLength(length);
+        nextOfHead.ensureLength(length);
+        nextOfTail.ensureLength(length);
+        dead.ensureLength(length);
+        if (objects != null) {
+            objects.ensureLength(length);
+        }
+    }
+
+    /**
+     * @return the number of chords
+     */
+    public int size() {
+        return slotCount - deadCount;
+    }
+
+    /**
+     * @param from the chord number to start at
+     * @return the number of the first chord at or after from, -1 if there is none
+     */
+    public int nextChord(int from) {
+        for (int chord = from; chord < slotCount; chord++) {
+            if (dead.get(chord) == 0) {
+                return chord;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param id the id of the item
+     * @return the number of the first chord touching the item, -1 if it has none
+     */
+    public int getFirstChord(int id) {
+        return skipDead(firstChords.get(id), id);
+    }
+
+    /**
+     * @param chord the number of a chord touching the item
+     * @param id    the id of the item
+     * @return the number of the chord after it in the list of the item, -1 at the end
+     */
+    public int getNextChord(int chord, int id) {
+        return skipDead(next(chord, id), id);
+    }
+
+    /**
+     * @param id the id of the item
+     * @return the number of chords touching the item
+     */
+    public int getDegree(int id) {
+        return degrees.get(id);
+    }
+
+    /**
+     * @param chord the chord number
+     * @return the index of the head item of the chord
+     */
+    public int getHead(int chord) {
+        return itemIndices.get(heads.get(chord));
+    }
+
+    /**
+     * @param chord the chord number
+     * @return the index of the tail item of the chord
+     */
+    public int getTail(int chord) {
+        return itemIndices.get(tails.get(chord));
+    }
+
+    /**
+     * @param chord the chord number
+     * @return the value of the chord
+     */
+    public float getValue(int chord) {
+        return values.get(chord);
+    }
+
+    /**
+     * @param chord the chord number
+     * @return the object kept with the chord, null if the store doesn't keep them
+     */
+    public Object getObject(int chord) {
+        return (objects != null) ? objects.get(chord) : null;
+    }
+
+    /**
+     * Removes every chord and item. The arrays are made again, they may be shared.
+     */
+    public void clear() {
+        ChordStore empty = new ChordStore(objects != null);
+        heads = empty.heads;
+        tails = empty.tails;
+        values = empty.values;
+        nextOfHead = empty.nextOfHead;
+        nextOfTail = empty.nextOfTail;
+        dead = empty.dead;
+        objects = empty.objects;
+        itemIndices = empty.itemIndices;
+        firstChords = empty.firstChords;
+        lastChords = empty.lastChords;
+        degrees = empty.degrees;
+        slotCount = 0;
+        deadCount = 0;
+        idCount = 0;
+        freeIdCount = 0;
+    }
+
+    /**
+     * @param chord the number of a chord touching the item
+     * @param id    the id of the item
+     * @return the number of the chord after it in the list of the item, dead or not, -1 at the end
+     */
+    private int next(int chord, int id) {
+        return (heads.get(chord) == id) ? nextOfHead.get(chord) : nextOfTail.get(chord);
+    }
+
+    /**
+     * @param chord the number of a chord in the list of the item, or -1
+     * @param id    the id of the item
+     * @return the first live chord from the chord on in the list, -1 if there is none
+     */
+    private int skipDead(int chord, int id) {
+        while (chord >= 0 && dead.get(chord) != 0) {
+            chord = next(chord, id);
+        }
+        return chord;
+    }
+
+    /**
+     * Appends a chord to the lists of both of its items.
+     *
+     * @param chord the chord number
+     */
+    private void link(int chord) {
+        nextOfHead.set(chord, -1);
+        nextOfTail.set(chord, -1);
+        append(chord, heads.get(chord));
+        append(chord, tails.get(chord));
+    }
+
+    /**
+     * Appends a chord to the list of one of its items.
+     *
+     * @param chord the chord number
+     * @param id    the id of the item
+     */
+    private void append(int chord, int id) {
+        int last = lastChords.get(id);
+        if (last < 0) {
+            firstChords.set(id, chord);
+        } else if (heads.get(last) == id) {
+            nextOfHead.set(last, chord);
+        } else {
+            nextOfTail.set(last, chord);
+        }
+        lastChords.set(id, chord);
+        degrees.set(id, degrees.get(id) + 1);
+    }
+
+    /**
+     * Squeezes out the dead chords, keeping the order of the live ones, and threads the lists of
+     * the items again.
+     */
+    private void compact() {
+        for (int id = 0; id < idCount; id++) {
+            firstChords.set(id, -1);
+            lastChords.set(id, -1);
+            degrees.set(id, 0);
+        }
+        int kept = 0;
+        for (int chord = 0; chord < slotCount; chord++) {
+            if (dead.get(chord) != 0) {
+                continue;
+            }
+            heads.set(kept, heads.get(chord));
+            tails.set(kept, tails.get(chord));
+            values.set(kept, values.get(chord));
+            dead.set(kept, 0);
+            if (objects != null) {
+                objects.set(kept, objects.get(chord));
+            }
+            link(kept);
+            kept++;
+        }
+        if (objects != null) {
+            // let go of the objects of the dead chords
+            for (int chord = kept; chord < slotCount; chord++) {
+                objects.set(chord, null);
+            }
+        }
+        slotCount = kept;
+        deadCount = 0;
+    }
+
+    /**
+     * Writes the live chords to the buffer as the head indices, then the tail indices, then the
+     * values, in chord order.
+     *
+     * @param buffer the buffer to write to, its position is moved past the chords
+     */
+    void write(ByteBuffer buffer) {
+        int size = size();
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int chord = nextChord(0); chord >= 0; chord = nextChord(chord + 1)) {
+            ints.put(getHead(chord));
+        }
+        for (int chord = nextChord(0); chord >= 0; chord = nextChord(chord + 1)) {
+            ints.put(getTail(chord));
+        }
+        buffer.position(buffer.position() + size * 8);
+        FloatBuffer floats = buffer.asFloatBuffer();
+        for (int chord = nextChord(0); chord >= 0; chord = nextChord(chord + 1)) {
+            floats.put(values.get(chord));
+        }
+        buffer.position(buffer.position() + size * 4);
+    }
+
+    /**
+     * Reads chords written by write() from the buffer, in bulk. The items get the ids 0 to
+     * itemCount - 1, the id of an item is its index.
+     *
+     * @param buffer    the buffer to read from, its position is moved past the chords
+     * @param size      the number of chords
+     * @param itemCount the number of items the chords link
+     * @return a store holding the chords
+     * @throws IOException if a chord doesn't link a lower index to a higher one within the items
+     */
+    static ChordStore read(ByteBuffer buffer, int size, int itemCount) throws IOException {
+        ChordStore store = new ChordStore();
+        store.ensureChordLength(size);
+        store.heads.read(buffer.asIntBuffer(), size);
+        buffer.position(buffer.position() + size * 4);
+        store.tails.read(buffer.asIntBuffer(), size);
+        buffer.position(buffer.position() + size * 4);
+        store.values.read(buffer.asFloatBuffer(), size);
+        buffer.position(buffer.position() + size * 4);
+
+        for (int id = 0; id < itemCount; id++) {
+            store.addItem(id);
+        }
+        for (int chord = 0; chord < size; chord++) {
+            int head = store.heads.get(chord);
+            int tail = store.tails.get(chord);
+            if (head < 0 || tail >= itemCount || head >= tail) {
+                throw new IOException("Corrupt chord graph model chords");
+            }
+            store.link(chord);
+        }
+        store.slotCount = size;
+        return store;
+    }
+
+    /**
+     * @return a copy of this store to be read only, it shares the arrays with this store until
+     * this one writes them
+     */
+    public ChordStore share() {
+        ChordStore copy = new ChordStore(this);
+        copy.slotCount = slotCount;
+        copy.deadCount = deadCount;
+        copy.idCount = idCount;
+        return copy;
+    }
+}
@@ -6,20 +6,37 @@ package com.examples.gregcantrell.textchordgraph.ChordGraph;
 
 import android.graphics.Color;
 
-import java.util.ArrayList;
-
 /**
  * Created by gcantrell on 9/1/2015.
  *
  * This class manages a color palette. The palette is generated by selecting colors along a gradient
- * from color1 to color2 at intervals determined by the numColors parameter. There are two accessor
- * methods: one to get a random color from the palette and one to get a color at an index.
+ * from color1 to color2 at intervals determined by the numColors parameter. There are accessor
+ * methods to get a random color from the palette, a color at an index and a color at an index
+ * faded to an alpha.
  *
+ * The colors are kept packed in an int[] along with every color at each of ALPHA_BUCKETS alphas,
+ * so drawing with a faded color is a single array read. A category is given a color by hashing its
+ * word, which picks the same color on every build and in every process. The color index of the
+ * last word seen in each slot of a small direct-mapped cache is kept, a new word evicts the one in
+ * its slot and getting a category's color again is a reference compare and an array read.
  */
 public class ColorPalette {
 
-    // List to save the generated colors from the gradient colors
-    private ArrayList<Integer> colors;
+    // The number of alpha levels every color is precomputed at
+    public static final int ALPHA_BUCKETS = 16;
+
+    // The number of slots of the category cache, a power of 2
+    private static final int CACHE_SLOTS = 1024;
+
+    // The generated colors from the gradient colors, opaque
+    private final int[] colors;
+
+    // Every color at every alpha bucket, indexed by color * ALPHA_BUCKETS + bucket
+    private final int[] fadedColors;
+
+    // The category cache, the word and color index last seen in every slot
+    private final String[] cachedKeys;
+    private final int[] cachedIndices;
 
     /**
      * Constructor takes in a start and end color gradient and generates a color palette of numcolors
@@ -30,7 +47,7 @@ public class ColorPalette {
      */
     public ColorPalette(int color1, int color2, int numColors) {
 
-        colors = new ArrayList<Integer>();
+        colors = new int[numColors];
 
         // gather the color values needed
         int red1 = Color.red(color1);
@@ -47,15 +64,28 @@ public class ColorPalette {
         int blueOffset = (blue1 == blue2) ? 0 : Math.round(((float) blue2 - (float) blue1) / (float) numColors);
 
         // add the first color
-        colors.add(Color.rgb(red1, green1, blue1));
+        colors[0] = Color.rgb(red1, green1, blue1);
 
         // generate the incremental colors
         for (int i = 1; i < numColors - 1; i++) {
-            colors.add(Color.rgb(red1 + redOffset * i, green1 + greenOffset * i, blue1 + blueOffset * i));
+            colors[i] = Color.rgb(red1 + redOffset * i, green1 + greenOffset * i,
+                    blue1 + blueOffset * i);
         }
 
         // add the last color
-        colors.add(Color.rgb(red2, green2, blue2));
+        colors[numColors - 1] = Color.rgb(red2, green2, blue2);
+
+        // precompute every color at every alpha
+        fadedColors = new int[numColors * ALPHA_BUCKETS];
+        for (int i = 0; i < numColors; i++) {
+            for (int bucket = 0; bucket < ALPHA_BUCKETS; bucket++) {
+                fadedColors[i * ALPHA_BUCKETS + bucket] =
+                        (getBucketAlpha(bucket) << 24) | (colors[i] & 0x00FFFFFF);
+            }
+        }
+
+        cachedKeys = new String[CACHE_SLOTS];
+        cachedIndices = new int[CACHE_SLOTS];
     }
 
     /**
@@ -64,7 +94,7 @@ public class ColorPalette {
      * @return returns the color at index from the color palette
      */
     public final int getColor(int index) {
-        return colors.get(index);
+        return colors[index];
     }
 
     /**
@@ -72,6 +102,74 @@ public class ColorPalette {
      * @return random color form the color palette
      */
     public final int getColor() {
-        return colors.get((int)Math.round(Math.random()*(double)(colors.size()-1)));
+        return colors[(int)Math.round(Math.random()*(double)(colors.length-1))];
+    }
+
+    /**
+     * returns the color at the given index faded to an alpha bucket
+     * @param index the index of the color to get
+     * @param alphaBucket the alpha bucket, from getAlphaBucket()
+     * @return the ARGB color
+     */
+    public final int getColor(int index, int alphaBucket) {
+        return fadedColors[index * ALPHA_BUCKETS + alphaBucket];
+    }
+
+    /**
+     * @return the number of colors in the palette
+     */
+    public final int size() {
+        return colors.length;
+    }
+
+    /**
+     * Gets the color index of a category. The index only depends on the word, so it is the same
+     * on every build and in every process. A word that is looked up again with the same String
+     * instance and id is served from the cache.
+     * @param id the id of the category, ie. its symbol id, it picks the cache slot
+     * @param key the word of the category
+     * @return the index of the category's color
+     */
+    public final int getColorIndex(int id, String key) {
+        int slot = id & (CACHE_SLOTS - 1);
+        if (cachedKeys[slot] == key) {
+            return cachedIndices[slot];
+        }
+        int index = getColorIndex(key);
+        cachedKeys[slot] = key;
+        cachedIndices[slot] = index;
+        return index;
+    }
+
+    /**
+     * Hashes a word to a color index. String.hashCode() is specified by the language so the
+     * index is stable across processes, the bits are mixed so similar words get different colors.
+     * @param key the word
+     * @return the index of the word's color
+     */
+    public final int getColorIndex(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return (int) ((hash & 0xFFFFFFFFL) % colors.length);
+    }
+
+    /**
+     * @param alpha an alpha from 0 to 255
+     * @return the alpha bucket the alpha falls in
+     */
+    public static int getAlphaBucket(int alpha) {
+        return Math.max(0, Math.min(ALPHA_BUCKETS - 1, alpha * ALPHA_BUCKETS / 256));
+    }
+
+    /**
+     * @param alphaBucket an alpha bucket
+     * @return the alpha the colors of the bucket have, the top of the bucket
+     */
+    public static int getBucketAlpha(int alphaBucket) {
+        return 256 * (alphaBucket + 1) / ALPHA_BUCKETS - 1;
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class lets a ChordGraphModel be written by some threads while others read it. Writers
+ * change a private working model one at a time and publish() a read-only snapshot of the changes,
+ * which is swapped in atomically. Readers call getSnapshot() and can walk the snapshot for as long
+ * as they like without locking, it never changes under them. A reader that wants to see new changes
+ * just gets the snapshot again.
+ *
+ * The snapshots share structure with the working model: a snapshot takes the pages of its tables
+ * as they are, in time proportional to the number of pages, and the working model copies a page
+ * the first time it writes it afterwards. So publish() holds the writers up only for as long as it
+ * takes to share the pages, and a publish() after a change of a few items only costs the pages
+ * those items touched. Publishing after every item is fine.
+ *
+ * Readers sharing a snapshot should each walk the chords with their own newChordCursor(), the
+ * cursor from getChordCursor() is shared by every caller.
+ *
+ * @param <T> - .equals() is used so any type used should take that into consideration
+ */
+public class ConcurrentChordGraphModel<T> {
+
+    private final ChordGraphModel<T> working; // guarded by itself
+    private boolean changed; // working changed since the last publish(), guarded by working
+    private final AtomicReference<ChordGraphModel<T>> published;
+
+    /**
+     * Constructor just initializes values, the chords are stored as objects
+     */
+    public ConcurrentChordGraphModel() {
+        this(ChordGraphModel.ChordStorage.OBJECTS);
+    }
+
+    /**
+     * Constructor initializes the working model and publishes its first, empty, snapshot
+     *
+     * @param storage how the chords should be stored
+     */
+    public ConcurrentChordGraphModel(ChordGraphModel.ChordStorage storage) {
+        working = new ChordGraphModel<T>(storage);
+        published = new AtomicReference<ChordGraphModel<T>>(working.snapshot());
+    }
+
+    /**
+     * Constructor for a sliding window over a stream, only the last windowSize items are kept.
+     * Only addItem() and addItems() can be used to change it.
+     *
+     * @param storage how the chords should be stored
+     * @param windowSize the number of items to keep
+     * @see ChordGraphModel#ChordGraphModel(ChordGraphModel.ChordStorage, int)
+     */
+    public ConcurrentChordGraphModel(ChordGraphModel.ChordStorage storage, int windowSize) {
+        working = new ChordGraphModel<T>(storage, windowSize);
+        published = new AtomicReference<ChordGraphModel<T>>(working.snapshot());
+    }
+
+    /**
+     * Sets the matcher of the working model, it must be empty.
+     *
+     * @param matcher the matcher to use
+     * @see ChordGraphModel#setMatcher(ValueMatcher)
+     */
+    public void setMatcher(ValueMatcher<? super T> matcher) {
+        synchronized (working) {
+            working.setMatcher(matcher);
+            changed = true;
+        }
+    }
+
+    /**
+     * Switches the working model to co-occurrence chords, it must be empty.
+     *
+     * @param windowTokens the largest distance in tokens between two words that co-occur
+     * @see ChordGraphModel#setCooccurrence(int)
+     */
+    public void setCooccurrence(int windowTokens) {
+        synchronized (working) {
+            working.setCooccurrence(windowTokens);
+            changed = true;
+        }
+    }
+
+    /**
+     * Adds a new item to the working model. It isn't seen by readers until the next publish().
+     *
+     * @param item the new item to add
+     */
+    public void addItem(T item) {
+        synchronized (working) {
+            working.addItem(item);
+            changed = true;
+        }
+    }
+
+    /**
+     * Adds new items to the working model in one go, no other writer can interleave with them.
+     *
+     * @param items the new items to add, in order
+     */
+    public void addItems(List<T> items) {
+        synchronized (working) {
+            for (int i = 0; i < items.size(); i++) {
+                working.addItem(items.get(i));
+            }
+            changed = true;
+        }
+    }
+
+    /**
+     * Updates the working model so that it holds the given values in order.
+     *
+     * @param newValues the complete list of values the model should contain
+     * @see ChordGraphModel#update(List)
+     */
+    public void update(List<T> newValues) {
+        update(newValues, null);
+    }
+
+    /**
+     * Updates the working model like update(List) but checks the signal between items. A cancelled
+     * update is published as far as it got, the values the working model was left holding.
+     *
+     * @param newValues the complete list of values the model should contain
+     * @param signal the signal to check, may be null
+     * @return true if the update finished, false if it was cancelled
+     * @see ChordGraphModel#update(List, ChordGraphModel.CancelSignal)
+     */
+    public boolean update(List<T> newValues, ChordGraphModel.CancelSignal signal) {
+        synchronized (working) {
+            changed = true;
+            return working.update(newValues, signal);
+        }
+    }
+
+    /**
+     * Clears the working model.
+     */
+    public void clear() {
+        synchronized (working) {
+            working.clear();
+            changed = true;
+        }
+    }
+
+    /**
+     * Publishes the changes made so far. A snapshot of the working model that shares its pages is
+     * swapped in for the readers. If nothing changed since the last publish() that snapshot is
+     * kept.
+     *
+     * @return the published snapshot
+     */
+    public ChordGraphModel<T> publish() {
+        synchronized (working) {
+            if (!changed) {
+                return published.get();
+            }
+            ChordGraphModel<T> snapshot = working.snapshot();
+            published.set(snapshot);
+            changed = false;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Gets the last published snapshot. This never blocks and the snapshot never changes.
+     *
+     * @return a read-only snapshot of the model
+     */
+    public ChordGraphModel<T> getSnapshot() {
+        return published.get();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+/**
+ * This class holds the draw metrics of a ChordGraphView: how long each phase of drawing the graph
+ * took and a histogram of frame times. The view keeps one instance and updates it in place, so
+ * measuring doesn't allocate. The phase timings are from the last frame that drew the graph, the
+ * frames in between only replay the cached graph.
+ */
+public class FrameMetrics {
+
+    // One frame at 60fps, a slower frame is dropped
+    private static final long FRAME_BUDGET_NANOS = 16666667L;
+
+    // The upper bounds of the histogram buckets, the last bucket holds every slower frame
+    private static final long[] BUCKET_BOUNDS_NANOS = {
+            1000000L,   // 1ms
+            2000000L,   // 2ms
+            4000000L,   // 4ms
+            8000000L,   // 8ms
+            FRAME_BUDGET_NANOS,
+            33333333L,  // two frames
+            66666667L   // four frames
+    };
+
+    private long chordsNanos;
+    private long slotsNanos;
+    private long labelsNanos;
+    private boolean bundled;
+    private long frameNanos;
+    private boolean graphDrawn;
+    private long frameCount;
+    private final int[] histogram;
+
+    /**
+     * Constructor just initializes the histogram
+     */
+    public FrameMetrics() {
+        histogram = new int[BUCKET_BOUNDS_NANOS.length + 1];
+    }
+
+    /**
+     * Records the timings of the phases of drawing the graph.
+     *
+     * @param chordsNanos how long drawing the chords took
+     * @param slotsNanos how long drawing the slots took
+     * @param labelsNanos how long drawing the labels took
+     * @param bundled true if the chords were drawn as bundled ribbons
+     */
+    void recordGraph(long chordsNanos, long slotsNanos, long labelsNanos, boolean bundled) {
+        this.chordsNanos = chordsNanos;
+        this.slotsNanos = slotsNanos;
+        this.labelsNanos = labelsNanos;
+        this.bundled = bundled;
+    }
+
+    /**
+     * Records a whole frame and adds it to the histogram.
+     *
+     * @param frameNanos how long the frame took
+     * @param graphDrawn true if the graph was drawn, false if the cached graph was replayed
+     */
+    void recordFrame(long frameNanos, boolean graphDrawn) {
+        this.frameNanos = frameNanos;
+        this.graphDrawn = graphDrawn;
+        frameCount++;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && frameNanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket]++;
+    }
+
+    /**
+     * @return how long drawing the chords, or the ribbons, took the last time the graph was drawn
+     */
+    public long getChordsNanos() {
+        return chordsNanos;
+    }
+
+    /**
+     * @return how long drawing the slots took the last time the graph was drawn
+     */
+    public long getSlotsNanos() {
+        return slotsNanos;
+    }
+
+    /**
+     * @return how long drawing the labels took the last time the graph was drawn
+     */
+    public long getLabelsNanos() {
+        return labelsNanos;
+    }
+
+    /**
+     * @return true if the chords were drawn as bundled ribbons the last time the graph was drawn
+     */
+    public boolean isBundled() {
+        return bundled;
+    }
+
+    /**
+     * @return how long the last frame took
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * @return true if the last frame drew the graph, false if it replayed the cached graph
+     */
+    public boolean isGraphDrawn() {
+        return graphDrawn;
+    }
+
+    /**
+     * @return the number of frames recorded since the last reset()
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of buckets in the frame time histogram
+     */
+    public int getBucketCount() {
+        return histogram.length;
+    }
+
+    /**
+     * @param bucket the bucket, 0 to getBucketCount() - 1
+     * @return the number of frames in the bucket
+     */
+    public int getBucketFrames(int bucket) {
+        return histogram[bucket];
+    }
+
+    /**
+     * @param bucket the bucket, 0 to getBucketCount() - 1
+     * @return the longest frame time in the bucket, Long.MAX_VALUE for the last bucket
+     */
+    public long getBucketUpperBoundNanos(int bucket) {
+        return (bucket < BUCKET_BOUNDS_NANOS.length) ? BUCKET_BOUNDS_NANOS[bucket] : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of frames that took longer than one frame at 60fps
+     */
+    public long getJankFrameCount() {
+        long jank = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            if (getBucketUpperBoundNanos(bucket) > FRAME_BUDGET_NANOS) {
+                jank += histogram[bucket];
+            }
+        }
+        return jank;
+    }
+
+    /**
+     * Clears the histogram and the frame count.
+     */
+    public void reset() {
+        frameCount = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            histogram[bucket] = 0;
+        }
+    }
+}
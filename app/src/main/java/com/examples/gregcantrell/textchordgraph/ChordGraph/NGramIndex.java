@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Arrays;
+
+/**
+ * This class finds every String within a Levenshtein distance of a query without comparing it to
+ * all of them. Every String is indexed by its bigrams, the pairs of adjacent chars. An edit
+ * changes at most two bigrams, so a String within k edits of the query shares all but 2k of the
+ * query's distinct bigrams. Only the Strings that share enough bigrams and are close enough in
+ * length are compared, with a distance that stops once it is over k. Queries too short to have
+ * enough bigrams compare the Strings of about the same length instead.
+ *
+ * A BK-tree was tried first but words of the same length are all about as far from each other, so
+ * it pruned little and a query visited most of the tree.
+ *
+ * The postings are kept in int arrays and a query allocates nothing once the buffers have grown.
+ * An index is used by one thread at a time.
+ */
+final class NGramIndex {
+
+    private static final int GRAM_LENGTH = 2;
+    private static final int GRAM_BUCKETS = 4096; // bigrams are hashed, a collision only adds work
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] keys;
+    private int[] values; // the value stored with every key, ie. a symbol id
+    private int size;
+    private final int[][] postings; // the keys with a bigram, by the bucket of the bigram
+    private final int[] postingSizes;
+    private int[][] lengthKeys; // the keys by their length, for the short queries
+    private int[] lengthSizes;
+
+    private int[] sharedGrams; // the bigrams each key shares with the query, 0 between queries
+    private int[] candidates; // the keys with a shared bigram
+    private int[] grams = new int[16]; // the distinct bigram buckets of a key or query
+    private int[] results = new int[INITIAL_CAPACITY]; // the values found by the last query
+    private int[] previousRow = new int[16]; // the rows of the distance matrix
+    private int[] currentRow = new int[16];
+
+    /**
+     * Constructor just initializes the arrays
+     */
+    NGramIndex() {
+        keys = new String[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        sharedGrams = new int[INITIAL_CAPACITY];
+        candidates = new int[INITIAL_CAPACITY];
+        postings = new int[GRAM_BUCKETS][];
+        postingSizes = new int[GRAM_BUCKETS];
+        lengthKeys = new int[16][];
+        lengthSizes = new int[16];
+    }
+
+    /**
+     * Adds a key to the index. The caller adds every key once.
+     *
+     * @param key the key to add
+     * @param value the value to return for the key
+     */
+    void add(String key, int value) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            sharedGrams = Arrays.copyOf(sharedGrams, capacity);
+            candidates = Arrays.copyOf(candidates, capacity);
+        }
+        int node = size++;
+        keys[node] = key;
+        values[node] = value;
+
+        int gramCount = findGrams(key);
+        for (int g = 0; g < gramCount; g++) {
+            postingSizes[grams[g]] = append(postings, grams[g], postingSizes[grams[g]], node);
+        }
+        int length = key.length();
+        if (length >= lengthKeys.length) {
+            int capacity = Math.max(length + 1, lengthKeys.length * 2);
+            lengthKeys = Arrays.copyOf(lengthKeys, capacity);
+            lengthSizes = Arrays.copyOf(lengthSizes, capacity);
+        }
+        lengthSizes[length] = append(lengthKeys, length, lengthSizes[length], node);
+    }
+
+    /**
+     * Finds the keys within a distance of the query, read them with getResult().
+     *
+     * @param query the key to look for
+     * @param maxDistance the largest distance of a key that is found
+     * @return the number of keys found
+     */
+    int query(String query, int maxDistance) {
+        int found = 0;
+        int length = query.length();
+        int gramCount = findGrams(query);
+        int minShared = gramCount - GRAM_LENGTH * maxDistance;
+
+        if (minShared <= 0) {
+            // too few bigrams to filter on, compare the keys of about the same length
+            int maxLength = Math.min(length + maxDistance, lengthKeys.length - 1);
+            for (int l = Math.max(0, length - maxDistance); l <= maxLength; l++) {
+                for (int k = 0; k < lengthSizes[l]; k++) {
+                    found = check(query, lengthKeys[l][k], maxDistance, found);
+                }
+            }
+            return found;
+        }
+
+        // count the bigrams every key shares with the query
+        int candidateCount = 0;
+        for (int g = 0; g < gramCount; g++) {
+            int[] posting = postings[grams[g]];
+            for (int p = 0; p < postingSizes[grams[g]]; p++) {
+                int node = posting[p];
+                if (sharedGrams[node]++ == 0) {
+                    candidates[candidateCount++] = node;
+                }
+            }
+        }
+
+        // compare the keys that share enough of them, and reset the counts for the next query
+        for (int c = 0; c < candidateCount; c++) {
+            int node = candidates[c];
+            if (sharedGrams[node] >= minShared
+                    && Math.abs(keys[node].length() - length) <= maxDistance) {
+                found = check(query, node, maxDistance, found);
+            }
+            sharedGrams[node] = 0;
+        }
+        return found;
+    }
+
+    /**
+     * @param result the result of the last query, 0 to the count it returned - 1
+     * @return the value of the key that was found
+     */
+    int getResult(int result) {
+        return results[result];
+    }
+
+    /**
+     * @return the number of keys in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every key, the arrays are kept for reuse.
+     */
+    void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(postingSizes, 0);
+        Arrays.fill(lengthSizes, 0);
+        size = 0;
+    }
+
+    /**
+     * Adds the key to the results if it is within the distance of the query.
+     *
+     * @param query the key being looked for
+     * @param node the key to compare
+     * @param maxDistance the largest distance of a key that is found
+     * @param found the number of results so far
+     * @return the number of results now
+     */
+    private int check(String query, int node, int maxDistance, int found) {
+        if (distance(query, keys[node], maxDistance) > maxDistance) {
+            return found;
+        }
+        if (found == results.length) {
+            results = Arrays.copyOf(results, found * 2);
+        }
+        results[found] = values[node];
+        return found + 1;
+    }
+
+    /**
+     * Finds the distinct bigram buckets of a String and leaves them in grams.
+     *
+     * @param key the String
+     * @return the number of distinct buckets
+     */
+    private int findGrams(String key) {
+        int count = 0;
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            int bucket = (key.charAt(i) * 31 + key.charAt(i + 1)) & (GRAM_BUCKETS - 1);
+            int g = 0;
+            while (g < count && grams[g] != bucket) {
+                g++;
+            }
+            if (g == count) {
+                if (count == grams.length) {
+                    grams = Arrays.copyOf(grams, count * 2);
+                }
+                grams[count++] = bucket;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends a key to one of the lists of a table, growing the list if it is full.
+     *
+     * @param table the lists
+     * @param list the list to append to
+     * @param listSize the size of the list
+     * @param node the key to append
+     * @return the new size of the list
+     */
+    private static int append(int[][] table, int list, int listSize, int node) {
+        if (table[list] == null) {
+            table[list] = new int[4];
+        } else if (listSize == table[list].length) {
+            table[list] = Arrays.copyOf(table[list], listSize * 2);
+        }
+        table[list][listSize] = node;
+        return listSize + 1;
+    }
+
+    /**
+     * The Levenshtein distance between two Strings, up to a bound. Two rows of the matrix are
+     * reused and the rows stop as soon as every entry is over the bound.
+     *
+     * @param a the first String
+     * @param b the second String
+     * @param bound the largest distance that needs to be exact
+     * @return the distance, or bound + 1 if it is larger than the bound
+     */
+    private int distance(String a, String b, int bound) {
+        int columns = b.length() + 1;
+        if (previousRow.length < columns) {
+            previousRow = new int[columns * 2];
+            currentRow = new int[columns * 2];
+        }
+        for (int j = 0; j < columns; j++) {
+            previousRow[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            currentRow[0] = i;
+            int rowMin = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j < columns; j++) {
+                int substitute = previousRow[j - 1] + ((c == b.charAt(j - 1)) ? 0 : 1);
+                currentRow[j] = Math.min(substitute,
+                        Math.min(previousRow[j], currentRow[j - 1]) + 1);
+                rowMin = Math.min(rowMin, currentRow[j]);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] row = previousRow;
+            previousRow = currentRow;
+            currentRow = row;
+        }
+        return Math.min(previousRow[columns - 1], bound + 1);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is an array split into pages of PAGE_SIZE entries that a model shares with its
+ * snapshots. share() hands out a copy that refers to the same pages, in constant time. After that
+ * the first write to a page copies the page and the first write at all copies the table of pages,
+ * so between two snapshots only the pages that were written are copied and the others stay
+ * shared. A copy never sees a write to the array it was shared from.
+ *
+ * A copy from share() is only read, by any number of threads at once. The array doesn't know how
+ * many of its entries are in use, its owner keeps the count.
+ */
+abstract class PagedArray {
+
+    static final int PAGE_BITS = 7;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    Object[] pages; // the pages of the typed subclass, read by it directly
+    private int[] pageGenerations; // the generation every page was made or copied in
+    private int tableGeneration; // the generation the table was made or copied in
+    private int generation; // the pages and table of this generation are only in this array
+
+    /**
+     * Constructor just initializes the table
+     *
+     * @param length the number of entries to make room for
+     */
+    PagedArray(int length) {
+        pages = new Object[0];
+        pageGenerations = new int[0];
+        ensureLength(length);
+    }
+
+    /**
+     * @return a new page
+     */
+    abstract Object newPage();
+
+    /**
+     * @param page a page
+     * @return a copy of the page
+     */
+    abstract Object copyPage(Object page);
+
+    /**
+     * @return the number of entries there is room for, a multiple of PAGE_SIZE
+     */
+    final int length() {
+        return pages.length << PAGE_BITS;
+    }
+
+    /**
+     * Makes room for at least the given number of entries, at least doubling the pages if it has
+     * to add any. The new entries hold what a new page holds.
+     *
+     * @param length the number of entries to make room for
+     */
+    final void ensureLength(int length) {
+        int pageCount = (length + PAGE_MASK) >>> PAGE_BITS;
+        if (pageCount <= pages.length) {
+            return;
+        }
+        pageCount = Math.max(pageCount, pages.length * 2);
+        int oldCount = pages.length;
+        pages = Arrays.copyOf(pages, pageCount);
+        pageGenerations = Arrays.copyOf(pageGenerations, pageCount);
+        tableGeneration = generation;
+        for (int p = oldCount; p < pageCount; p++) {
+            pages[p] = newPage();
+            pageGenerations[p] = generation;
+        }
+    }
+
+    /**
+     * Gets a page that can be written, copying it and the table first if they are shared.
+     *
+     * @param page the number of the page
+     * @return the page
+     */
+    final Object writablePage(int page) {
+        if (tableGeneration != generation) {
+            pages = pages.clone();
+            pageGenerations = pageGenerations.clone();
+            tableGeneration = generation;
+        }
+        if (pageGenerations[page] != generation) {
+            pages[page] = copyPage(pages[page]);
+            pageGenerations[page] = generation;
+        }
+        return pages[page];
+    }
+
+    /**
+     * Lets a new array refer to the pages of this one. From then on every page and the table are
+     * shared, this array copies them before it writes them.
+     *
+     * @param copy the new array
+     */
+    final void shareInto(PagedArray copy) {
+        copy.pages = pages;
+        copy.pageGenerations = pageGenerations;
+        // no generation is -1, so a write to the copy would copy as well
+        copy.generation = -1;
+        generation++;
+    }
+
+    /**
+     * An array of ints.
+     */
+    static final class Ints extends PagedArray {
+
+        /**
+         * Constructor just initializes the table, the entries are 0
+         *
+         * @param length the number of entries to make room for
+         */
+        Ints(int length) {
+            super(length);
+        }
+
+        @Override
+        Object newPage() {
+            return new int[PAGE_SIZE];
+        }
+
+        @Override
+        Object copyPage(Object page) {
+            return ((int[]) page).clone();
+        }
+
+        /**
+         * @param index the index of the entry
+         * @return the entry
+         */
+        int get(int index) {
+            return ((int[]) pages[index >>> PAGE_BITS])[index & PAGE_MASK];
+        }
+
+        /**
+         * @param index the index of the entry
+         * @param value the new value of the entry
+         */
+        void set(int index, int value) {
+            ((int[]) writablePage(index >>> PAGE_BITS))[index & PAGE_MASK] = value;
+        }
+
+        /**
+         * Reads entries from the start of the array in bulk, a page at a time.
+         *
+         * @param source the buffer to read from, its position is moved past the entries
+         * @param count the number of entries to read
+         */
+        void read(IntBuffer source, int count) {
+            ensureLength(count);
+            for (int start = 0; start < count; start += PAGE_SIZE) {
+                source.get((int[]) writablePage(start >>> PAGE_BITS), 0,
+                        Math.min(PAGE_SIZE, count - start));
+            }
+        }
+
+        /**
+         * @return a copy that shares the pages of this array, to be read only
+         */
+        Ints share() {
+            Ints copy = new Ints(0);
+            shareInto(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * An array of longs.
+     */
+    static final class Longs extends PagedArray {
+
+        private final long fill; // the value of every entry of a new page
+
+        /**
+         * Constructor just initializes the table
+         *
+         * @param length the number of entries to make room for
+         * @param fill the value of every new entry
+         */
+        Longs(int length, long fill) {
+            super(0);
+            this.fill = fill;
+            ensureLength(length);
+        }
+
+        @Override
+        Object newPage() {
+            long[] page = new long[PAGE_SIZE];
+            if (fill != 0) {
+                Arrays.fill(page, fill);
+            }
+            return page;
+        }
+
+        @Override
+        Object copyPage(Object page) {
+            return ((long[]) page).clone();
+        }
+
+        /**
+         * @param index the index of the entry
+         * @return the entry
+         */
+        long get(int index) {
+            return ((long[]) pages[index >>> PAGE_BITS])[index & PAGE_MASK];
+        }
+
+        /**
+         * @param index the index of the entry
+         * @param value the new value of the entry
+         */
+        void set(int index, long value) {
+            ((long[]) writablePage(index >>> PAGE_BITS))[index & PAGE_MASK] = value;
+        }
+
+        /**
+         * @return a copy that shares the pages of this array, to be read only
+         */
+        Longs share() {
+            Longs copy = new Longs(0, fill);
+            shareInto(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * An array of floats.
+     */
+    static final class Floats extends PagedArray {
+
+        /**
+         * Constructor just initializes the table, the entries are 0
+         *
+         * @param length the number of entries to make room for
+         */
+        Floats(int length) {
+            super(length);
+        }
+
+        @Override
+        Object newPage() {
+            return new float[PAGE_SIZE];
+        }
+
+        @Override
+        Object copyPage(Object page) {
+            return ((float[]) page).clone();
+        }
+
+        /**
+         * @param index the index of the entry
+         * @return the entry
+         */
+        float get(int index) {
+            return ((float[]) pages[index >>> PAGE_BITS])[index & PAGE_MASK];
+        }
+
+        /**
+         * @param index the index of the entry
+         * @param value the new value of the entry
+         */
+        void set(int index, float value) {
+            ((float[]) writablePage(index >>> PAGE_BITS))[index & PAGE_MASK] = value;
+        }
+
+        /**
+         * Reads entries from the start of the array in bulk, a page at a time.
+         *
+         * @param source the buffer to read from, its position is moved past the entries
+         * @param count the number of entries to read
+         */
+        void read(FloatBuffer source, int count) {
+            ensureLength(count);
+            for (int start = 0; start < count; start += PAGE_SIZE) {
+                source.get((float[]) writablePage(start >>> PAGE_BITS), 0,
+                        Math.min(PAGE_SIZE, count - start));
+            }
+        }
+
+        /**
+         * @return a copy that shares the pages of this array, to be read only
+         */
+        Floats share() {
+            Floats copy = new Floats(0);
+            shareInto(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * An array of references. The objects themselves are shared along with the pages, so they
+     * shouldn't change once they are in the array.
+     *
+     * @param <E> the type of the entries
+     */
+    static final class Refs<E> extends PagedArray {
+
+        /**
+         * Constructor just initializes the table, the entries are null
+         *
+         * @param length the number of entries to make room for
+         */
+        Refs(int length) {
+            super(length);
+        }
+
+        @Override
+        Object newPage() {
+            return new Object[PAGE_SIZE];
+        }
+
+        @Override
+        Object copyPage(Object page) {
+            return ((Object[]) page).clone();
+        }
+
+        /**
+         * @param index the index of the entry
+         * @return the entry
+         */
+        @SuppressWarnings("unchecked")
+        E get(int index) {
+            return (E) ((Object[]) pages[index >>> PAGE_BITS])[index & PAGE_MASK];
+        }
+
+        /**
+         * @param index the index of the entry
+         * @param value the new value of the entry
+         */
+        void set(int index, E value) {
+            ((Object[]) writablePage(index >>> PAGE_BITS))[index & PAGE_MASK] = value;
+        }
+
+        /**
+         * @return a copy that shares the pages of this array, to be read only
+         */
+        Refs<E> share() {
+            Refs<E> copy = new Refs<E>(0);
+            shareInto(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+/**
+ * This class keeps an int weight for unordered pairs of non-negative ids, ie. how often two words
+ * appear near each other. A pair is packed into one long key, the lower id in the high half, and
+ * the keys and weights live in two primitive arrays with open addressing and linear probing. The
+ * table is kept at most 3/4 full so a pair costs 16 to 32 bytes and no objects. A pair whose
+ * weight drops to 0 is removed, the entries after it are shifted back so no tombstones are left.
+ *
+ * The pairs are walked by slot: every slot from 0 to capacity() - 1 that isHolding() a pair.
+ *
+ * The arrays are PagedArrays, so share() hands a snapshot the pairs without copying them.
+ */
+final class PairWeightMap {
+
+    private static final long EMPTY = -1L; // a real key is never negative
+    private static final int INITIAL_CAPACITY = 64; // a power of 2
+
+    private PagedArray.Longs keys;
+    private PagedArray.Ints weights;
+    private int size;
+    private int mask; // capacity - 1
+
+    /**
+     * Constructor just initializes the arrays
+     */
+    PairWeightMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor just initializes the arrays
+     *
+     * @param capacity the capacity to start with, a power of 2
+     */
+    private PairWeightMap(int capacity) {
+        keys = new PagedArray.Longs(capacity, EMPTY);
+        weights = new PagedArray.Ints(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @param first the id of one end of the pair
+     * @param second the id of the other end
+     * @return the key of the unordered pair
+     */
+    static long pairKey(int first, int second) {
+        return (first < second)
+                ? ((long) first << 32) | second
+                : ((long) second << 32) | first;
+    }
+
+    /**
+     * @param key the key of a pair
+     * @return the lower id of the pair
+     */
+    static int lowId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * @param key the key of a pair
+     * @return the higher id of the pair
+     */
+    static int highId(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Adds to the weight of a pair, adding the pair if it isn't in the map yet and removing it if
+     * its weight drops to 0.
+     *
+     * @param key the key of the pair
+     * @param delta the amount to add, may be negative
+     * @return the new weight of the pair
+     */
+    int add(long key, int delta) {
+        int slot = find(key);
+        if (keys.get(slot) == key) {
+            int weight = weights.get(slot) + delta;
+            if (weight == 0) {
+                removeSlot(slot);
+            } else {
+                weights.set(slot, weight);
+            }
+            return weight;
+        }
+        if (delta == 0) {
+            return 0;
+        }
+        keys.set(slot, key);
+        weights.set(slot, delta);
+        size++;
+        if (size * 4 > capacity() * 3) {
+            resize(capacity() * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * @param key the key of the pair
+     * @return the weight of the pair, 0 if it isn't in the map
+     */
+    int get(long key) {
+        int slot = find(key);
+        return (keys.get(slot) == key) ? weights.get(slot) : 0;
+    }
+
+    /**
+     * @return the number of pairs
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots to walk
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @param slot a slot, 0 to capacity() - 1
+     * @return true if the slot holds a pair
+     */
+    boolean isHolding(int slot) {
+        return keys.get(slot) != EMPTY;
+    }
+
+    /**
+     * @param slot a slot that holds a pair
+     * @return the key of the pair in the slot
+     */
+    long getKey(int slot) {
+        return keys.get(slot);
+    }
+
+    /**
+     * @param slot a slot that holds a pair
+     * @return the weight of the pair in the slot
+     */
+    int getWeight(int slot) {
+        return weights.get(slot);
+    }
+
+    /**
+     * Removes every pair. The arrays are made again, they may be shared.
+     */
+    void clear() {
+        keys = new PagedArray.Longs(capacity(), EMPTY);
+        weights = new PagedArray.Ints(capacity());
+        size = 0;
+    }
+
+    /**
+     * @return a copy of this map to be read only, it shares the arrays with this map until this
+     * one writes them
+     */
+    PairWeightMap share() {
+        PairWeightMap copy = new PairWeightMap(0);
+        copy.keys = keys.share();
+        copy.weights = weights.share();
+        copy.size = size;
+        copy.mask = mask;
+        return copy;
+    }
+
+    /**
+     * Finds the slot of a key, or the empty slot where it would go.
+     *
+     * @param key the key to find
+     * @return the slot
+     */
+    private int find(long key) {
+        int slot = hash(key) & mask;
+        long probe;
+        while ((probe = keys.get(slot)) != EMPTY && probe != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot and shifts back the entries after it that were pushed past it, so every
+     * entry can still be found by probing from its home slot.
+     *
+     * @param slot the slot to empty
+     */
+    private void removeSlot(int slot) {
+        size--;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        long key;
+        while ((key = keys.get(next)) != EMPTY) {
+            int home = hash(key) & mask;
+            // move the entry into the hole unless its home is cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys.set(hole, key);
+                weights.set(hole, weights.get(next));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys.set(hole, EMPTY);
+    }
+
+    /**
+     * Moves every pair to new arrays.
+     *
+     * @param capacity the new capacity, a power of 2
+     */
+    private void resize(int capacity) {
+        PagedArray.Longs oldKeys = keys;
+        PagedArray.Ints oldWeights = weights;
+        int oldCapacity = capacity();
+        keys = new PagedArray.Longs(capacity, EMPTY);
+        weights = new PagedArray.Ints(capacity);
+        mask = capacity - 1;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long key = oldKeys.get(slot);
+            if (key != EMPTY) {
+                int newSlot = find(key);
+                keys.set(newSlot, key);
+                weights.set(newSlot, oldWeights.get(slot));
+            }
+        }
+    }
+
+    /**
+     * Mixes the bits of a key so pairs with nearby ids spread over the table.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class draws a chord graph into pixels with a Rasterizer and encodes them as a PNG, in plain
+ * Java so it runs on a headless JVM. There is no font rasterizer so the labels are left out, the
+ * SvgRenderer draws them.
+ *
+ * The PNG is 8 bit RGBA. Every row is filtered by subtracting the pixel to its left, which turns
+ * the flat background into zeros, and compressed with a Deflater as it is produced, so only one
+ * row and one IDAT chunk are buffered. The pixel buffer and the Deflater are reused from one graph
+ * to the next, release() frees the Deflater when the renderer isn't needed anymore.
+ */
+public class PngRenderer implements ChordGraphRenderer {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IDAT_SIZE = 64 * 1024;
+    private static final int FILTER_SUB = 1;
+
+    private final int background;
+    private final Rasterizer rasterizer;
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final byte[] idat; // the IDAT chunk being filled
+    private byte[] row; // the filter byte and the RGBA of one row
+    private byte[] filtered;
+
+    /**
+     * Constructor just initializes values
+     * @param background - the ARGB color the graph is drawn over, may be transparent
+     * @param compressionLevel - the Deflater level, Deflater.BEST_SPEED suits a batch of graphs
+     */
+    public PngRenderer(int background, int compressionLevel) {
+        this.background = background;
+        rasterizer = new Rasterizer(1, 1);
+        deflater = new Deflater(compressionLevel);
+        crc = new CRC32();
+        idat = new byte[IDAT_SIZE];
+        row = new byte[0];
+        filtered = new byte[0];
+    }
+
+    /**
+     * @param x - the x of the pixel
+     * @param y - the y of the pixel
+     * @return the ARGB color of a pixel of the last graph drawn
+     */
+    public int getPixel(int x, int y) {
+        return rasterizer.getPixel(x, y);
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        rasterizer.resize(width, height);
+        rasterizer.clear(background);
+    }
+
+    @Override
+    public void drawCircle(float centerX, float centerY, float radius, float strokeWidth,
+                           int color) {
+        rasterizer.beginPath();
+        rasterizer.addCircle(centerX, centerY, radius);
+        rasterizer.strokePath(strokeWidth, color);
+    }
+
+    @Override
+    public void fillCircle(float centerX, float centerY, float radius, int color) {
+        rasterizer.beginPath();
+        rasterizer.addCircle(centerX, centerY, radius);
+        rasterizer.fillPath(color);
+    }
+
+    @Override
+    public void drawQuad(float startX, float startY, float controlX, float controlY, float endX,
+                         float endY, float strokeWidth, int color) {
+        rasterizer.beginPath();
+        rasterizer.moveTo(startX, startY);
+        rasterizer.quadTo(controlX, controlY, endX, endY);
+        rasterizer.strokePath(strokeWidth, color);
+    }
+
+    @Override
+    public void drawLines(float[] points, int offset, int count, float strokeWidth, int color) {
+        // stroke every run of segments that follow on from each other, ie. every chord, as one
+        // path so a translucent chord is blended once where its segments meet
+        int end = offset + count;
+        int i = offset;
+        while (i < end) {
+            rasterizer.beginPath();
+            rasterizer.moveTo(points[i], points[i + 1]);
+            rasterizer.lineTo(points[i + 2], points[i + 3]);
+            i += 4;
+            while (i < end && points[i] == points[i - 2] && points[i + 1] == points[i - 1]) {
+                rasterizer.lineTo(points[i + 2], points[i + 3]);
+                i += 4;
+            }
+            rasterizer.strokePath(strokeWidth, color);
+        }
+    }
+
+    @Override
+    public void fillRibbon(float fromFirstX, float fromFirstY, float fromLastX, float fromLastY,
+                           float toFirstX, float toFirstY, float toLastX, float toLastY,
+                           float controlX, float controlY, float strokeWidth, int color) {
+        rasterizer.beginPath();
+        rasterizer.moveTo(fromFirstX, fromFirstY);
+        rasterizer.lineTo(fromLastX, fromLastY);
+        rasterizer.quadTo(controlX, controlY, toFirstX, toFirstY);
+        rasterizer.lineTo(toLastX, toLastY);
+        rasterizer.quadTo(controlX, controlY, fromFirstX, fromFirstY);
+        rasterizer.closeContour();
+        rasterizer.fillAndStrokePath(strokeWidth, color);
+    }
+
+    @Override
+    public void drawLabel(String label, float x, float y, float degrees, boolean alignEnd,
+                          float textSize, int color) {
+        // no font, see the class comment
+    }
+
+    @Override
+    public void end() {
+        // the pixels are kept until write()
+    }
+
+    /**
+     * Encodes the last graph drawn as a PNG. The stream is not closed.
+     * @param out - the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream out) throws IOException {
+        int width = rasterizer.getWidth();
+        int height = rasterizer.getHeight();
+        out.write(SIGNATURE);
+
+        // the header, 8 bit RGBA, not interlaced
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 6;
+        writeChunk(out, "IHDR", header, header.length);
+
+        // the rows, filtered and compressed as they go
+        int rowBytes = 1 + width * 4;
+        if (row.length < rowBytes) {
+            row = new byte[rowBytes];
+            filtered = new byte[rowBytes];
+        }
+        deflater.reset();
+        int idatLength = 0;
+        for (int y = 0; y < height; y++) {
+            rasterizer.getRowRgba(y, row, 1);
+            filtered[0] = FILTER_SUB;
+            System.arraycopy(row, 1, filtered, 1, 4);
+            for (int i = 5; i < rowBytes; i++) {
+                filtered[i] = (byte) (row[i] - row[i - 4]);
+            }
+            deflater.setInput(filtered, 0, rowBytes);
+            while (!deflater.needsInput()) {
+                idatLength = deflateInto(out, idatLength);
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            idatLength = deflateInto(out, idatLength);
+        }
+        if (idatLength > 0) {
+            writeChunk(out, "IDAT", idat, idatLength);
+        }
+        writeChunk(out, "IEND", idat, 0);
+    }
+
+    /**
+     * Frees the Deflater, the renderer can't write after this.
+     */
+    public void release() {
+        deflater.end();
+    }
+
+    /**
+     * Deflates into the IDAT chunk, writing it out when it is full.
+     * @param out - the stream to write to
+     * @param idatLength - the number of bytes in the chunk
+     * @return the number of bytes in the chunk afterwards
+     * @throws IOException if writing fails
+     */
+    private int deflateInto(OutputStream out, int idatLength) throws IOException {
+        idatLength += deflater.deflate(idat, idatLength, idat.length - idatLength);
+        if (idatLength == idat.length) {
+            writeChunk(out, "IDAT", idat, idatLength);
+            idatLength = 0;
+        }
+        return idatLength;
+    }
+
+    /**
+     * Writes a chunk, its length, type, data and the CRC of the type and data.
+     * @param out - the stream to write to
+     * @param type - the four letter type
+     * @param data - the data
+     * @param length - the number of bytes of data
+     * @throws IOException if writing fails
+     */
+    private void writeChunk(OutputStream out, String type, byte[] data, int length)
+            throws IOException {
+        byte[] word = new byte[4];
+        putInt(word, 0, length);
+        out.write(word);
+        for (int i = 0; i < 4; i++) {
+            word[i] = (byte) type.charAt(i);
+        }
+        out.write(word);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(word);
+        crc.update(data, 0, length);
+        putInt(word, 0, (int) crc.getValue());
+        out.write(word);
+    }
+
+    /**
+     * Puts an int into bytes, big-endian like every number in a PNG.
+     * @param bytes - the bytes to write to
+     * @param offset - the offset of the first byte
+     * @param value - the value
+     */
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Arrays;
+
+/**
+ * This class draws anti-aliased shapes into an ARGB pixel buffer in plain Java, without AWT, so
+ * graphs can be rendered on a headless JVM. A shape is built as a path of contours, curves are
+ * flattened into lines as they are added, and then filled or stroked in one pass.
+ *
+ * Every contour of a path is turned to the same orientation before it is filled with the non-zero
+ * rule, so overlapping contours are covered once. A stroke is built from one rectangle per line of
+ * the path, extended by half the width at both ends so the corners between them are covered too,
+ * and filled the same way. A translucent shape is therefore blended once wherever it overlaps
+ * itself, like a Canvas draws it.
+ *
+ * The edges are scanned 4 sub-scanlines per row and the horizontal coverage of every span is
+ * exact, which gives 4x vertical and continuous horizontal anti-aliasing. Only the pixels at the
+ * ends of a span get their coverage added, the pixels in between get a step up at the start and
+ * down at the end that is summed once per row when the row is blended, so a span costs the same
+ * however wide it is. The pixels are kept premultiplied so blending is a multiply-add per
+ * channel, getPixel() undoes it.
+ */
+final class Rasterizer {
+
+    private static final int SUBSAMPLES = 4;
+    private static final float SUBSAMPLE_COVERAGE = 1.0f / SUBSAMPLES;
+    // The greatest distance in pixels between a curve and the lines it is flattened into
+    private static final float FLATNESS = 0.25f;
+    private static final int MAX_CURVE_LINES = 64;
+
+    private int width;
+    private int height;
+    private int[] pixels; // premultiplied ARGB, row by row
+
+    // The path, its points and where each contour starts
+    private float[] pathX;
+    private float[] pathY;
+    private int pointCount;
+    private int[] contourStarts;
+    private boolean[] contourClosed;
+    private int contourCount;
+
+    // The edges to fill, from top to bottom, and the direction they went in
+    private float[] edgeTopX;
+    private float[] edgeTopY;
+    private float[] edgeBottomY;
+    private float[] edgeSlope; // dx/dy
+    private int[] edgeWinding;
+    private int edgeCount;
+    private long[] edgeOrder; // the top of every edge as sortable bits and the edge
+    private int[] activeEdges;
+    private float[] crossingX;
+    private int[] crossingWinding;
+
+    // The pixel ranges covered by the spans of the row being filled
+    private int[] rowSpanFirst;
+    private int[] rowSpanLast;
+
+    // The coverage of the pixels at the ends of spans in the row being filled, and the steps of
+    // the coverage of the pixels in between
+    private float[] coverage;
+    private float[] coverageSteps;
+
+    /**
+     * Constructor just initializes the buffers
+     *
+     * @param width the width in pixels
+     * @param height the height in pixels
+     */
+    Rasterizer(int width, int height) {
+        pathX = new float[64];
+        pathY = new float[64];
+        contourStarts = new int[8];
+        contourClosed = new boolean[8];
+        edgeTopX = new float[64];
+        edgeTopY = new float[64];
+        edgeBottomY = new float[64];
+        edgeSlope = new float[64];
+        edgeWinding = new int[64];
+        edgeOrder = new long[64];
+        activeEdges = new int[64];
+        crossingX = new float[64];
+        crossingWinding = new int[64];
+        rowSpanFirst = new int[16];
+        rowSpanLast = new int[16];
+        resize(width, height);
+    }
+
+    /**
+     * Changes the size, the pixel buffer is reused when it is large enough.
+     *
+     * @param width the width in pixels
+     * @param height the height in pixels
+     */
+    void resize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The size must be positive: " + width + "x"
+                    + height);
+        }
+        this.width = width;
+        this.height = height;
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        if (coverage == null || coverage.length < width + 1) {
+            coverage = new float[width + 1];
+            coverageSteps = new float[width + 1];
+        }
+    }
+
+    /**
+     * @return the width in pixels
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height in pixels
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Fills every pixel with a color.
+     *
+     * @param color the ARGB color
+     */
+    void clear(int color) {
+        Arrays.fill(pixels, 0, width * height, premultiply(color));
+    }
+
+    /**
+     * @param x the x of the pixel
+     * @param y the y of the pixel
+     * @return the ARGB color of the pixel
+     */
+    int getPixel(int x, int y) {
+        return unpremultiply(pixels[y * width + x]);
+    }
+
+    /**
+     * Copies a row of pixels out as RGBA bytes, the layout of a PNG row.
+     *
+     * @param y the row
+     * @param rgba the bytes to write to
+     * @param offset the offset of the first byte
+     */
+    void getRowRgba(int y, byte[] rgba, int offset) {
+        int row = y * width;
+        for (int x = 0; x < width; x++) {
+            int color = unpremultiply(pixels[row + x]);
+            rgba[offset++] = (byte) (color >> 16);
+            rgba[offset++] = (byte) (color >> 8);
+            rgba[offset++] = (byte) color;
+            rgba[offset++] = (byte) (color >>> 24);
+        }
+    }
+
+    /**
+     * Starts a new path, the old one is forgotten.
+     */
+    void beginPath() {
+        pointCount = 0;
+        contourCount = 0;
+    }
+
+    /**
+     * Starts a new contour.
+     *
+     * @param x the x of the first point
+     * @param y the y of the first point
+     */
+    void moveTo(float x, float y) {
+        if (contourCount == contourStarts.length) {
+            contourStarts = Arrays.copyOf(contourStarts, contourCount * 2);
+            contourClosed = Arrays.copyOf(contourClosed, contourCount * 2);
+        }
+        contourStarts[contourCount] = pointCount;
+        contourClosed[contourCount] = false;
+        contourCount++;
+        addPoint(x, y);
+    }
+
+    /**
+     * Adds a line from the last point.
+     *
+     * @param x the x of the end point
+     * @param y the y of the end point
+     */
+    void lineTo(float x, float y) {
+        addPoint(x, y);
+    }
+
+    /**
+     * Adds a quadratic Bezier curve from the last point, flattened into enough lines that none is
+     * further than FLATNESS from the curve.
+     *
+     * @param controlX the x of the control point
+     * @param controlY the y of the control point
+     * @param x the x of the end point
+     * @param y the y of the end point
+     */
+    void quadTo(float controlX, float controlY, float x, float y) {
+        float startX = pathX[pointCount - 1];
+        float startY = pathY[pointCount - 1];
+        // the distance from the lines is at most |start - 2 control + end| / (8 n^2)
+        float ddx = startX - 2 * controlX + x;
+        float ddy = startY - 2 * controlY + y;
+        double deviation = Math.sqrt(ddx * ddx + ddy * ddy);
+        int lines = (int) Math.ceil(Math.sqrt(deviation / (8 * FLATNESS)));
+        lines = Math.max(1, Math.min(MAX_CURVE_LINES, lines));
+        for (int i = 1; i < lines; i++) {
+            float t = (float) i / lines;
+            float u = 1 - t;
+            addPoint(u * u * startX + 2 * u * t * controlX + t * t * x,
+                    u * u * startY + 2 * u * t * controlY + t * t * y);
+        }
+        addPoint(x, y);
+    }
+
+    /**
+     * Adds a circle as its own contour.
+     *
+     * @param centerX the x of the center
+     * @param centerY the y of the center
+     * @param radius the radius
+     */
+    void addCircle(float centerX, float centerY, float radius) {
+        // enough lines that the middle of each is no further than FLATNESS inside the circle
+        int lines = 8;
+        if (radius > FLATNESS) {
+            lines = Math.max(lines, (int) Math.ceil(Math.PI / Math.acos(1 - FLATNESS / radius)));
+        }
+        moveTo(centerX + radius, centerY);
+        for (int i = 1; i < lines; i++) {
+            double angle = 2 * Math.PI * i / lines;
+            lineTo(centerX + radius * (float) Math.cos(angle),
+                    centerY + radius * (float) Math.sin(angle));
+        }
+        closeContour();
+    }
+
+    /**
+     * Closes the current contour, a line is stroked back to its first point.
+     */
+    void closeContour() {
+        contourClosed[contourCount - 1] = true;
+    }
+
+    /**
+     * Fills the path, the contours are closed.
+     *
+     * @param color the ARGB color
+     */
+    void fillPath(int color) {
+        edgeCount = 0;
+        addFillEdges();
+        fillEdges(color);
+    }
+
+    /**
+     * Strokes the lines of the path.
+     *
+     * @param strokeWidth the width of the lines
+     * @param color the ARGB color
+     */
+    void strokePath(float strokeWidth, int color) {
+        edgeCount = 0;
+        addStrokeEdges(strokeWidth / 2);
+        fillEdges(color);
+    }
+
+    /**
+     * Fills and strokes the path at once, the overlap is only covered once.
+     *
+     * @param strokeWidth the width of the lines
+     * @param color the ARGB color
+     */
+    void fillAndStrokePath(float strokeWidth, int color) {
+        edgeCount = 0;
+        addFillEdges();
+        addStrokeEdges(strokeWidth / 2);
+        fillEdges(color);
+    }
+
+    /**
+     * @param x the x of the point
+     * @param y the y of the point
+     */
+    private void addPoint(float x, float y) {
+        if (pointCount == pathX.length) {
+            pathX = Arrays.copyOf(pathX, pointCount * 2);
+            pathY = Arrays.copyOf(pathY, pointCount * 2);
+        }
+        pathX[pointCount] = x;
+        pathY[pointCount] = y;
+        pointCount++;
+    }
+
+    /**
+     * Adds the edges of every contour, each turned so its area is positive.
+     */
+    private void addFillEdges() {
+        for (int c = 0; c < contourCount; c++) {
+            int start = contourStarts[c];
+            int end = (c + 1 < contourCount) ? contourStarts[c + 1] : pointCount;
+            if (end - start < 3) {
+                continue;
+            }
+            // twice the signed area, by the shoelace formula
+            double area = 0;
+            for (int i = start; i < end; i++) {
+                int next = (i + 1 < end) ? i + 1 : start;
+                area += (double) pathX[i] * pathY[next] - (double) pathX[next] * pathY[i];
+            }
+            int sign = (area < 0) ? -1 : 1;
+            for (int i = start; i < end; i++) {
+                int next = (i + 1 < end) ? i + 1 : start;
+                addEdge(pathX[i], pathY[i], pathX[next], pathY[next], sign);
+            }
+        }
+    }
+
+    /**
+     * Adds a rectangle around every line of the path, extended by half the width at both ends.
+     *
+     * @param halfWidth half the width of the lines
+     */
+    private void addStrokeEdges(float halfWidth) {
+        for (int c = 0; c < contourCount; c++) {
+            int start = contourStarts[c];
+            int end = (c + 1 < contourCount) ? contourStarts[c + 1] : pointCount;
+            int last = contourClosed[c] ? end : end - 1;
+            for (int i = start; i < last; i++) {
+                int next = (i + 1 < end) ? i + 1 : start;
+                float dx = pathX[next] - pathX[i];
+                float dy = pathY[next] - pathY[i];
+                float length = (float) Math.sqrt(dx * dx + dy * dy);
+                if (length == 0) {
+                    continue;
+                }
+                // the direction and normal scaled to half the width
+                float ux = dx / length * halfWidth;
+                float uy = dy / length * halfWidth;
+                float x0 = pathX[i] - ux;
+                float y0 = pathY[i] - uy;
+                float x1 = pathX[next] + ux;
+                float y1 = pathY[next] + uy;
+                // in this order the area of the corners is positive, like the turned contours
+                addEdge(x0 + uy, y0 - ux, x1 + uy, y1 - ux, 1);
+                addEdge(x1 + uy, y1 - ux, x1 - uy, y1 + ux, 1);
+                addEdge(x1 - uy, y1 + ux, x0 - uy, y0 + ux, 1);
+                addEdge(x0 - uy, y0 + ux, x0 + uy, y0 - ux, 1);
+            }
+        }
+    }
+
+    /**
+     * Adds an edge, horizontal edges are left out as they never cross a scanline.
+     *
+     * @param x0 the x of the start
+     * @param y0 the y of the start
+     * @param x1 the x of the end
+     * @param y1 the y of the end
+     * @param sign -1 to reverse the direction of the edge
+     */
+    private void addEdge(float x0, float y0, float x1, float y1, int sign) {
+        if (y0 == y1) {
+            return;
+        }
+        if (edgeCount == edgeTopX.length) {
+            int capacity = edgeCount * 2;
+            edgeTopX = Arrays.copyOf(edgeTopX, capacity);
+            edgeTopY = Arrays.copyOf(edgeTopY, capacity);
+            edgeBottomY = Arrays.copyOf(edgeBottomY, capacity);
+            edgeSlope = Arrays.copyOf(edgeSlope, capacity);
+            edgeWinding = Arrays.copyOf(edgeWinding, capacity);
+        }
+        if (y0 < y1) {
+            edgeTopX[edgeCount] = x0;
+            edgeTopY[edgeCount] = y0;
+            edgeBottomY[edgeCount] = y1;
+            edgeWinding[edgeCount] = sign;
+        } else {
+            edgeTopX[edgeCount] = x1;
+            edgeTopY[edgeCount] = y1;
+            edgeBottomY[edgeCount] = y0;
+            edgeWinding[edgeCount] = -sign;
+        }
+        edgeSlope[edgeCount] = (x1 - x0) / (y1 - y0);
+        edgeCount++;
+    }
+
+    /**
+     * Fills the edges with the non-zero rule, a row at a time from the top.
+     *
+     * @param color the ARGB color
+     */
+    private void fillEdges(int color) {
+        if (edgeCount == 0 || (color >>> 24) == 0) {
+            return;
+        }
+        sortEdges();
+
+        float minY = edgeTopY[(int) edgeOrder[0]];
+        float maxY = minY;
+        for (int e = 0; e < edgeCount; e++) {
+            maxY = Math.max(maxY, edgeBottomY[e]);
+        }
+        int firstRow = Math.max(0, (int) Math.floor(minY));
+        int lastRow = Math.min(height - 1, (int) Math.ceil(maxY));
+        if (activeEdges.length < edgeCount) {
+            activeEdges = new int[edgeCount];
+            crossingX = new float[edgeCount];
+            crossingWinding = new int[edgeCount];
+        }
+
+        int nextEdge = 0;
+        int activeCount = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int spans = 0;
+            for (int sub = 0; sub < SUBSAMPLES; sub++) {
+                float y = row + (sub + 0.5f) / SUBSAMPLES;
+
+                // add the edges that start above the sub-scanline, drop the ones that end above it
+                while (nextEdge < edgeCount && edgeTopY[(int) edgeOrder[nextEdge]] <= y) {
+                    activeEdges[activeCount++] = (int) edgeOrder[nextEdge++];
+                }
+                int crossings = 0;
+                for (int a = 0; a < activeCount; a++) {
+                    int e = activeEdges[a];
+                    if (edgeBottomY[e] <= y) {
+                        activeEdges[a--] = activeEdges[--activeCount];
+                        continue;
+                    }
+                    // insert the crossing in x order, there are only a few per sub-scanline
+                    float x = edgeTopX[e] + (y - edgeTopY[e]) * edgeSlope[e];
+                    int position = crossings++;
+                    while (position > 0 && crossingX[position - 1] > x) {
+                        crossingX[position] = crossingX[position - 1];
+                        crossingWinding[position] = crossingWinding[position - 1];
+                        position--;
+                    }
+                    crossingX[position] = x;
+                    crossingWinding[position] = edgeWinding[e];
+                }
+
+                // cover the spans where the winding isn't 0
+                int winding = 0;
+                float spanLeft = 0;
+                for (int c = 0; c < crossings; c++) {
+                    if (winding == 0) {
+                        spanLeft = crossingX[c];
+                    }
+                    winding += crossingWinding[c];
+                    if (winding == 0) {
+                        int covered = coverSpan(spanLeft, crossingX[c]);
+                        if (covered >= 0) {
+                            addRowSpan(spans++, Math.max(0, (int) spanLeft), covered);
+                        }
+                    }
+                }
+            }
+            blendRowSpans(row, spans, color);
+        }
+    }
+
+    /**
+     * Sorts the edges by their top. The top is turned into int bits that sort like the float and
+     * packed above the edge, so the edges are sorted as primitive longs.
+     */
+    private void sortEdges() {
+        if (edgeOrder.length < edgeCount) {
+            edgeOrder = new long[Math.max(edgeCount, edgeOrder.length * 2)];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int bits = Float.floatToIntBits(edgeTopY[e]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF; // negative floats sort backwards as ints
+            edgeOrder[e] = ((long) bits << 32) | e;
+        }
+        Arrays.sort(edgeOrder, 0, edgeCount);
+    }
+
+    /**
+     * Adds the coverage of one sub-scanline span to the row.
+     *
+     * @param left the x where the span starts
+     * @param right the x where the span ends
+     * @return the last pixel covered, -1 if the span is outside of the row
+     */
+    private int coverSpan(float left, float right) {
+        left = Math.max(0, left);
+        right = Math.min(width, right);
+        if (left >= right) {
+            return -1;
+        }
+        int first = (int) left;
+        int last = (int) right;
+        if (first == last) {
+            coverage[first] += (right - left) * SUBSAMPLE_COVERAGE;
+            return first;
+        }
+        coverage[first] += (first + 1 - left) * SUBSAMPLE_COVERAGE;
+        coverageSteps[first + 1] += SUBSAMPLE_COVERAGE;
+        coverageSteps[last] -= SUBSAMPLE_COVERAGE;
+        if (last < width) {
+            coverage[last] += (right - last) * SUBSAMPLE_COVERAGE;
+            return last;
+        }
+        return last - 1;
+    }
+
+    /**
+     * Records the pixel range of a span of the row.
+     *
+     * @param span the number of spans recorded so far
+     * @param first the first pixel of the span
+     * @param last the last pixel of the span
+     */
+    private void addRowSpan(int span, int first, int last) {
+        if (span == rowSpanFirst.length) {
+            rowSpanFirst = Arrays.copyOf(rowSpanFirst, span * 2);
+            rowSpanLast = Arrays.copyOf(rowSpanLast, span * 2);
+        }
+        // insert in order of the first pixel, there are only a few per row
+        int position = span;
+        while (position > 0 && rowSpanFirst[position - 1] > first) {
+            rowSpanFirst[position] = rowSpanFirst[position - 1];
+            rowSpanLast[position] = rowSpanLast[position - 1];
+            position--;
+        }
+        rowSpanFirst[position] = first;
+        rowSpanLast[position] = last;
+    }
+
+    /**
+     * Blends the color into the ranges of a row covered by its spans. Overlapping ranges are
+     * merged and the gaps between them, ie. inside a curve, are skipped. The steps of a span sum
+     * to 0 so the running sum starts at 0 again after a gap.
+     *
+     * @param row the row
+     * @param spans the number of spans recorded
+     * @param color the ARGB color
+     */
+    private void blendRowSpans(int row, int spans, int color) {
+        int s = 0;
+        while (s < spans) {
+            int first = rowSpanFirst[s];
+            int last = rowSpanLast[s];
+            for (s++; s < spans && rowSpanFirst[s] <= last + 1; s++) {
+                last = Math.max(last, rowSpanLast[s]);
+            }
+            blendRow(row, first, last, color);
+        }
+    }
+
+    /**
+     * Blends the color into the covered pixels of a row and clears the coverage.
+     *
+     * @param row the row
+     * @param first the first pixel that may be covered
+     * @param last the last pixel that may be covered
+     * @param color the ARGB color
+     */
+    private void blendRow(int row, int first, int last, int color) {
+        int alpha = color >>> 24;
+        // the channels in two lanes of 16 bits, red and blue, and alpha and green at full alpha
+        int sourceRedBlue = color & 0xFF00FF;
+        int sourceAlphaGreen = 0xFF0000 | ((color >> 8) & 0xFF);
+        int offset = row * width;
+        float stepped = 0; // the running sum of the steps
+        for (int x = first; x <= last; x++) {
+            stepped += coverageSteps[x];
+            coverageSteps[x] = 0;
+            float cover = coverage[x] + stepped;
+            coverage[x] = 0;
+            if (cover <= 0) {
+                continue;
+            }
+            int a = (int) (alpha * Math.min(1.0f, cover) + 0.5f);
+            if (a == 0) {
+                continue;
+            }
+            // source over, the destination is premultiplied, two channels per multiply
+            int inverse = 255 - a;
+            int dst = pixels[offset + x];
+            int redBlue = div255Lanes(sourceRedBlue * a + (dst & 0xFF00FF) * inverse);
+            int alphaGreen = div255Lanes(sourceAlphaGreen * a + ((dst >>> 8) & 0xFF00FF) * inverse);
+            pixels[offset + x] = redBlue | (alphaGreen << 8);
+        }
+        // a span that runs to the right edge steps down past the last pixel
+        coverageSteps[last + 1] = 0;
+    }
+
+    /**
+     * @param value a value from 0 to 255 * 255
+     * @return the value divided by 255, rounded
+     */
+    private static int div255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+
+    /**
+     * @param lanes two values from 0 to 255 * 255 in the low 16 bits of each half
+     * @return each value divided by 255, rounded, in the low 8 bits of each half
+     */
+    private static int div255Lanes(int lanes) {
+        lanes += 0x00800080;
+        return ((lanes + ((lanes >>> 8) & 0x00FF00FF)) >>> 8) & 0x00FF00FF;
+    }
+
+    /**
+     * @param color an ARGB color
+     * @return the color premultiplied by its alpha
+     */
+    private static int premultiply(int color) {
+        int a = color >>> 24;
+        if (a == 255) {
+            return color;
+        }
+        return (a << 24) | (div255(((color >> 16) & 0xFF) * a) << 16)
+                | (div255(((color >> 8) & 0xFF) * a) << 8) | div255((color & 0xFF) * a);
+    }
+
+    /**
+     * @param color a premultiplied ARGB color
+     * @return the color with its alpha divided back out
+     */
+    private static int unpremultiply(int color) {
+        int a = color >>> 24;
+        if (a == 255) {
+            return color;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        int half = a / 2;
+        int r = Math.min(255, (((color >> 16) & 0xFF) * 255 + half) / a);
+        int g = Math.min(255, (((color >> 8) & 0xFF) * 255 + half) / a);
+        int b = Math.min(255, ((color & 0xFF) * 255 + half) / a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class streams a chord graph to a Writer as SVG, one element per shape as it is drawn, so
+ * nothing but the element being written is held in memory however large the graph is. Each
+ * element is built in a reused StringBuilder, numbers are written with one decimal by hand rather
+ * than with String.format().
+ *
+ * The renderer methods can't throw, so the first IOException is kept and thrown by finish(), like
+ * PrintWriter does with checkError(). Nothing more is written after it.
+ */
+public class SvgRenderer implements ChordGraphRenderer {
+
+    private final int background;
+    private Writer writer;
+    private IOException error;
+    private final StringBuilder element; // the element being written
+    private char[] chars; // the element copied out for the writer
+
+    /**
+     * Constructor just initializes values
+     * @param background - the ARGB color the graph is drawn over, may be transparent
+     */
+    public SvgRenderer(int background) {
+        this.background = background;
+        element = new StringBuilder(256);
+        chars = new char[256];
+    }
+
+    /**
+     * Sets the writer the next graph is streamed to, it isn't closed.
+     * @param writer - the writer to write to
+     */
+    public void setWriter(Writer writer) {
+        this.writer = writer;
+        this.error = null;
+    }
+
+    /**
+     * Flushes the writer and throws the first error writing the graph hit, if any.
+     * @throws IOException if writing the graph failed
+     */
+    public void finish() throws IOException {
+        if (error == null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        element.setLength(0);
+        element.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                .append("\" height=\"").append(height).append("\" viewBox=\"0 0 ").append(width)
+                .append(' ').append(height).append("\">\n");
+        if ((background >>> 24) != 0) {
+            element.append("<rect width=\"100%\" height=\"100%\"");
+            appendPaint("fill", background);
+            element.append("/>\n");
+        }
+        flushElement();
+    }
+
+    @Override
+    public void drawCircle(float centerX, float centerY, float radius, float strokeWidth,
+                           int color) {
+        element.setLength(0);
+        element.append("<circle");
+        appendAttribute("cx", centerX);
+        appendAttribute("cy", centerY);
+        appendAttribute("r", radius);
+        element.append(" fill=\"none\"");
+        appendPaint("stroke", color);
+        appendAttribute("stroke-width", strokeWidth);
+        element.append("/>\n");
+        flushElement();
+    }
+
+    @Override
+    public void fillCircle(float centerX, float centerY, float radius, int color) {
+        element.setLength(0);
+        element.append("<circle");
+        appendAttribute("cx", centerX);
+        appendAttribute("cy", centerY);
+        appendAttribute("r", radius);
+        appendPaint("fill", color);
+        element.append("/>\n");
+        flushElement();
+    }
+
+    @Override
+    public void drawQuad(float startX, float startY, float controlX, float controlY, float endX,
+                         float endY, float strokeWidth, int color) {
+        element.setLength(0);
+        element.append("<path d=\"M");
+        appendPoint(startX, startY);
+        element.append('Q');
+        appendPoint(controlX, controlY);
+        element.append(' ');
+        appendPoint(endX, endY);
+        element.append("\" fill=\"none\"");
+        appendPaint("stroke", color);
+        appendAttribute("stroke-width", strokeWidth);
+        element.append("/>\n");
+        flushElement();
+    }
+
+    @Override
+    public void drawLines(float[] points, int offset, int count, float strokeWidth, int color) {
+        // the paint goes on a group, then a polyline per run of segments that follow on from each
+        // other, ie. per chord, so each chord is blended on its own
+        element.setLength(0);
+        element.append("<g fill=\"none\"");
+        appendPaint("stroke", color);
+        appendAttribute("stroke-width", strokeWidth);
+        element.append(">\n");
+        flushElement();
+        int end = offset + count;
+        int i = offset;
+        while (i < end) {
+            element.setLength(0);
+            element.append("<path d=\"M");
+            appendPoint(points[i], points[i + 1]);
+            do {
+                element.append('L');
+                appendPoint(points[i + 2], points[i + 3]);
+                i += 4;
+            } while (i < end && points[i] == points[i - 2] && points[i + 1] == points[i - 1]);
+            element.append("\"/>\n");
+            flushElement();
+        }
+        element.setLength(0);
+        element.append("</g>\n");
+        flushElement();
+    }
+
+    @Override
+    public void fillRibbon(float fromFirstX, float fromFirstY, float fromLastX, float fromLastY,
+                           float toFirstX, float toFirstY, float toLastX, float toLastY,
+                           float controlX, float controlY, float strokeWidth, int color) {
+        element.setLength(0);
+        element.append("<path d=\"M");
+        appendPoint(fromFirstX, fromFirstY);
+        element.append('L');
+        appendPoint(fromLastX, fromLastY);
+        element.append('Q');
+        appendPoint(controlX, controlY);
+        element.append(' ');
+        appendPoint(toFirstX, toFirstY);
+        element.append('L');
+        appendPoint(toLastX, toLastY);
+        element.append('Q');
+        appendPoint(controlX, controlY);
+        element.append(' ');
+        appendPoint(fromFirstX, fromFirstY);
+        element.append("Z\"");
+        appendPaint("fill", color);
+        appendPaint("stroke", color);
+        appendAttribute("stroke-width", strokeWidth);
+        element.append("/>\n");
+        flushElement();
+    }
+
+    @Override
+    public void drawLabel(String label, float x, float y, float degrees, boolean alignEnd,
+                          float textSize, int color) {
+        element.setLength(0);
+        element.append("<text");
+        appendAttribute("x", x);
+        appendAttribute("y", y);
+        element.append(" transform=\"rotate(");
+        appendNumber(degrees);
+        element.append(' ');
+        appendPoint(x, y);
+        element.append(")\"");
+        if (alignEnd) {
+            element.append(" text-anchor=\"end\"");
+        }
+        element.append(" dominant-baseline=\"central\"");
+        appendAttribute("font-size", textSize);
+        appendPaint("fill", color);
+        element.append('>');
+        appendEscaped(label);
+        element.append("</text>\n");
+        flushElement();
+    }
+
+    @Override
+    public void end() {
+        element.setLength(0);
+        element.append("</svg>\n");
+        flushElement();
+    }
+
+    /**
+     * Writes the element out, unless writing failed before.
+     */
+    private void flushElement() {
+        if (error != null) {
+            return;
+        }
+        int length = element.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        element.getChars(0, length, chars, 0);
+        try {
+            writer.write(chars, 0, length);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Appends a numeric attribute.
+     * @param name - the name of the attribute
+     * @param value - the value
+     */
+    private void appendAttribute(String name, float value) {
+        element.append(' ').append(name).append("=\"");
+        appendNumber(value);
+        element.append('"');
+    }
+
+    /**
+     * Appends a color attribute, and its opacity when the color isn't opaque.
+     * @param name - the name of the attribute, ie. fill or stroke
+     * @param color - the ARGB color
+     */
+    private void appendPaint(String name, int color) {
+        element.append(' ').append(name).append("=\"#");
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            element.append(Character.forDigit((color >> shift) & 0xF, 16));
+        }
+        element.append('"');
+        int alpha = color >>> 24;
+        if (alpha != 255) {
+            // the opacity with three decimals
+            int thousandths = (alpha * 1000 + 127) / 255;
+            element.append(' ').append(name).append("-opacity=\"0.");
+            if (thousandths < 100) {
+                element.append('0');
+            }
+            if (thousandths < 10) {
+                element.append('0');
+            }
+            element.append(thousandths).append('"');
+        }
+    }
+
+    /**
+     * Appends a point as x,y.
+     * @param x - the x
+     * @param y - the y
+     */
+    private void appendPoint(float x, float y) {
+        appendNumber(x);
+        element.append(',');
+        appendNumber(y);
+    }
+
+    /**
+     * Appends a number rounded to one decimal, without the decimal when it is 0.
+     * @param value - the number
+     */
+    private void appendNumber(float value) {
+        long tenths = Math.round(value * 10.0);
+        if (tenths < 0) {
+            element.append('-');
+            tenths = -tenths;
+        }
+        element.append(tenths / 10);
+        if (tenths % 10 != 0) {
+            element.append('.').append(tenths % 10);
+        }
+    }
+
+    /**
+     * Appends text with the characters that are special in XML escaped.
+     * @param text - the text
+     */
+    private void appendEscaped(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    element.append("&lt;");
+                    break;
+                case '>':
+                    element.append("&gt;");
+                    break;
+                case '&':
+                    element.append("&amp;");
+                    break;
+                case '"':
+                    element.append("&quot;");
+                    break;
+                default:
+                    // control characters aren't allowed in XML 1.0
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        element.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+}
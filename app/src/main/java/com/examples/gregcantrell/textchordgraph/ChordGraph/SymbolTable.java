@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class interns Strings to dense int ids. The first String interned gets id 0, the next
+ * distinct one id 1 and so on. Once a String has an id it keeps it, so anything kept per id (ie. a
+ * category or a color) can live in an array indexed by the id instead of a map keyed by the String.
+ * An id can be released when nothing uses it any more, ie. by a sliding-window model whose words
+ * keep changing. Released ids are handed out again before new ones, so the table stays as large
+ * as the most Strings it held at once.
+ *
+ * The Strings by id are kept in a PagedArray so a snapshot of a model can share them. The ids of
+ * the Strings are only needed to intern, so a shared table leaves them out and can't intern.
+ */
+public class SymbolTable {
+
+    private HashMap<String, Integer> ids; // null in a shared table
+    private PagedArray.Refs<String> symbols; // the String of every id, null if it was released
+    private int size; // the number of ids handed out
+    private ArrayList<Integer> freeIds; // the released ids, reused last released first
+
+    /**
+     * Constructor just initializes the collections
+     */
+    public SymbolTable() {
+        ids = new HashMap<String, Integer>();
+        symbols = new PagedArray.Refs<String>(PagedArray.PAGE_SIZE);
+        freeIds = new ArrayList<Integer>();
+    }
+
+    /**
+     * Constructor for a shared table
+     *
+     * @param symbols the Strings by id
+     * @param size the number of ids handed out
+     */
+    private SymbolTable(PagedArray.Refs<String> symbols, int size) {
+        this.symbols = symbols;
+        this.size = size;
+    }
+
+    /**
+     * Gets the id of a String, giving it a released id or the next id if it doesn't have one yet.
+     *
+     * @param symbol the String to intern
+     * @return the id of the String
+     */
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        if (!freeIds.isEmpty()) {
+            int reusedId = freeIds.remove(freeIds.size() - 1);
+            ids.put(symbol, reusedId);
+            symbols.set(reusedId, symbol);
+            return reusedId;
+        }
+        int newId = size++;
+        ids.put(symbol, newId);
+        symbols.ensureLength(size);
+        symbols.set(newId, symbol);
+        return newId;
+    }
+
+    /**
+     * Forgets the String with the id so the id can be handed out again. The caller must not use
+     * the id for the String any more.
+     *
+     * @param id the id to release
+     */
+    public void release(int id) {
+        String symbol = symbols.get(id);
+        if (symbol != null) {
+            ids.remove(symbol);
+            symbols.set(id, null);
+            freeIds.add(id);
+        }
+    }
+
+    /**
+     * @param symbol the String to look up
+     * @return the id of the String, or -1 if it was never interned
+     */
+    public int lookup(String symbol) {
+        Integer id = ids.get(symbol);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * @param id the id to look up
+     * @return the String with the id, or null if the id was released
+     */
+    public String getSymbol(int id) {
+        return symbols.get(id);
+    }
+
+    /**
+     * @return the number of ids handed out, including released ones, every id is less than this
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets every String, the ids start at 0 again.
+     */
+    public void clear() {
+        ids.clear();
+        symbols = new PagedArray.Refs<String>(PagedArray.PAGE_SIZE);
+        size = 0;
+        freeIds.clear();
+    }
+
+    /**
+     * @return a copy of this table to be read only, it shares the Strings by id with this table
+     * and can't intern or look up a String
+     */
+    public SymbolTable share() {
+        return new SymbolTable(symbols.share(), size);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class feeds text into a ChordGraphModel a chunk at a time from a Reader, an InputStream or a
+ * memory-mapped file. The text is tokenized as it arrives and each word is appended to the model,
+ * so neither the whole text nor an array of all its words is ever held in memory. It lives beside
+ * the model rather than in it because the model is generic and this only makes sense for words.
+ *
+ * The words are the same as the ones String.split("[^\\w']+") would produce for the whole text,
+ * including its edge cases, so ingesting a String gives the same model as adding its split words.
+ * Word chars are classified by TextTokenizer so the two always agree.
+ */
+public class TextStreamIngester {
+
+    // The number of chars read and tokenized at a time
+    private static final int CHUNK_SIZE = 8192;
+
+    // The number of bytes of a file mapped at a time
+    private static final int MAP_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Receives progress reports while text is ingested, once per chunk.
+     */
+    public interface ProgressListener {
+        /**
+         * @param charsRead - the number of chars read so far
+         * @param itemsAdded - the number of items added to the model so far
+         */
+        void onProgress(long charsRead, long itemsAdded);
+    }
+
+    private final ChordGraphModel<String> model;
+    private final ProgressListener listener;
+    private final StringBuilder word; // the word being read, it may span chunks
+    private long charsRead;
+    private long itemsAdded;
+    private boolean leadingDelimiter; // the text started with a delimiter
+
+    /**
+     * Constructor just initializes values that were passed in
+     * @param model - the model to append the words to
+     * @param listener - the listener for progress reports, may be null
+     */
+    private TextStreamIngester(ChordGraphModel<String> model, ProgressListener listener) {
+        this.model = model;
+        this.listener = listener;
+        this.word = new StringBuilder();
+    }
+
+    /**
+     * Appends the words read from a Reader to the model. The reader is not closed.
+     * @param model - the model to append the words to
+     * @param reader - the reader to read the text from
+     * @param listener - the listener for progress reports, may be null
+     * @return the number of items added to the model
+     * @throws IOException if reading fails
+     */
+    public static long ingest(ChordGraphModel<String> model, Reader reader,
+                              ProgressListener listener) throws IOException {
+        TextStreamIngester ingester = new TextStreamIngester(model, listener);
+        char[] chunk = new char[CHUNK_SIZE];
+        int read;
+        while ((read = reader.read(chunk, 0, CHUNK_SIZE)) != -1) {
+            ingester.append(chunk, 0, read);
+        }
+        ingester.finish();
+        return ingester.itemsAdded;
+    }
+
+    /**
+     * Appends the words read from an InputStream to the model. The stream is not closed.
+     * @param model - the model to append the words to
+     * @param stream - the stream to read the text from
+     * @param charsetName - the name of the charset of the text (ie. "UTF-8")
+     * @param listener - the listener for progress reports, may be null
+     * @return the number of items added to the model
+     * @throws IOException if reading fails
+     */
+    public static long ingest(ChordGraphModel<String> model, InputStream stream, String charsetName,
+                              ProgressListener listener) throws IOException {
+        return ingest(model, new InputStreamReader(stream, charsetName), listener);
+    }
+
+    /**
+     * Appends the words of a file to the model. The file is memory-mapped a window at a time and
+     * decoded straight from the mapping.
+     * @param model - the model to append the words to
+     * @param file - the file to read the text from
+     * @param charsetName - the name of the charset of the text (ie. "UTF-8")
+     * @param listener - the listener for progress reports, may be null
+     * @return the number of items added to the model
+     * @throws IOException if reading fails
+     */
+    public static long ingest(ChordGraphModel<String> model, File file, String charsetName,
+                              ProgressListener listener) throws IOException {
+        TextStreamIngester ingester = new TextStreamIngester(model, listener);
+        CharsetDecoder decoder = Charset.forName(charsetName).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chunk = CharBuffer.allocate(CHUNK_SIZE);
+
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                // map the next window, a char split across windows is left for the next one
+                long windowSize = Math.min(MAP_WINDOW_SIZE, size - position);
+                boolean lastWindow = position + windowSize == size;
+                MappedByteBuffer window =
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                CoderResult result;
+                do {
+                    result = decoder.decode(window, chunk, lastWindow);
+                    ingester.drain(chunk);
+                } while (result.isOverflow());
+                position += window.position();
+            }
+
+            // flush anything the decoder is holding on to
+            if (size > 0) {
+                while (decoder.flush(chunk).isOverflow()) {
+                    ingester.drain(chunk);
+                }
+                ingester.drain(chunk);
+            }
+        } finally {
+            stream.close();
+        }
+        ingester.finish();
+        return ingester.itemsAdded;
+    }
+
+    /**
+     * Tokenizes the decoded chars in the buffer and empties it
+     * @param chunk - the buffer the decoder wrote into
+     */
+    private void drain(CharBuffer chunk) {
+        chunk.flip();
+        if (chunk.hasRemaining()) {
+            append(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Tokenizes a chunk of text and appends the words that are completed in it
+     * @param chars - the chars of the chunk
+     * @param offset - the offset of the chunk in the array
+     * @param length - the length of the chunk
+     */
+    private void append(char[] chars, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (charsRead == 0 && !TextTokenizer.isWordChar(chars[offset])) {
+            leadingDelimiter = true;
+        }
+
+        int end = offset + length;
+        int wordStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (!TextTokenizer.isWordChar(chars[i])) {
+                // a delimiter ends the current word, if there is one
+                if (i > wordStart) {
+                    word.append(chars, wordStart, i - wordStart);
+                }
+                if (word.length() > 0) {
+                    addWord(word.toString());
+                    word.setLength(0);
+                }
+                wordStart = i + 1;
+            }
+        }
+
+        // keep the start of a word that continues in the next chunk
+        if (end > wordStart) {
+            word.append(chars, wordStart, end - wordStart);
+        }
+
+        charsRead += length;
+        if (listener != null) {
+            listener.onProgress(charsRead, itemsAdded);
+        }
+    }
+
+    /**
+     * Appends the last word and handles the edge cases of String.split()
+     */
+    private void finish() {
+        if (word.length() > 0) {
+            addWord(word.toString());
+            word.setLength(0);
+        }
+
+        // splitting an empty String results in one empty String
+        if (charsRead == 0) {
+            model.addItem("");
+            itemsAdded++;
+        }
+    }
+
+    /**
+     * Appends a word to the model. A text that starts with a delimiter has an empty first word.
+     * @param value - the word to append
+     */
+    private void addWord(String value) {
+        if (leadingDelimiter && itemsAdded == 0) {
+            model.addItem("");
+            itemsAdded++;
+        }
+        model.addItem(value);
+        itemsAdded++;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Arrays;
+
+/**
+ * This class splits text into words without a regex. It scans a CharSequence with a precomputed
+ * character class table and records the words as start and end offsets, so no String is created
+ * until a caller asks for one. The offset arrays are reused between calls.
+ *
+ * The words are exactly the ones String.split("[^\\w']+") produces: a word is a run of
+ * [a-zA-Z_0-9'], a text that starts with a delimiter has an empty first word, trailing empty words
+ * are dropped and an empty text is one empty word.
+ */
+public class TextTokenizer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // true for the chars that are part of a word, [\w'] is ASCII only
+    private static final boolean[] WORD_CHARS = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            WORD_CHARS[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            WORD_CHARS[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            WORD_CHARS[c] = true;
+        }
+        WORD_CHARS['_'] = true;
+        WORD_CHARS['\''] = true;
+    }
+
+    private int[] starts;
+    private int[] ends;
+    private int count;
+
+    /**
+     * Constructor just initializes the offset arrays
+     */
+    public TextTokenizer() {
+        starts = new int[INITIAL_CAPACITY];
+        ends = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param c the char to check
+     * @return true if the char is part of a word
+     */
+    public static boolean isWordChar(char c) {
+        return c < 128 && WORD_CHARS[c];
+    }
+
+    /**
+     * Finds the words of the text. The offsets replace the ones from the previous call.
+     *
+     * @param text the text to split into words
+     * @return the number of words
+     */
+    public int tokenize(CharSequence text) {
+        count = 0;
+        int length = text.length();
+
+        // splitting an empty text results in one empty word
+        if (length == 0) {
+            addToken(0, 0);
+            return count;
+        }
+
+        // a leading delimiter makes an empty first word, but only if a real word follows
+        boolean leadingDelimiter = !isWordChar(text.charAt(0));
+
+        int i = 0;
+        while (i < length) {
+            // skip the delimiters
+            while (i < length && !isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            // read the word
+            int start = i;
+            while (i < length && isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (leadingDelimiter && count == 0) {
+                addToken(0, 0);
+            }
+            addToken(start, i);
+        }
+        return count;
+    }
+
+    /**
+     * Records the offsets of a word, the arrays grow geometrically.
+     *
+     * @param start the offset of the first char of the word
+     * @param end the offset after the last char of the word
+     */
+    private void addToken(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * @return the number of words found by the last call to tokenize()
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param token the word number
+     * @return the offset of the first char of the word
+     */
+    public int getStart(int token) {
+        return starts[token];
+    }
+
+    /**
+     * @param token the word number
+     * @return the offset after the last char of the word
+     */
+    public int getEnd(int token) {
+        return ends[token];
+    }
+
+    /**
+     * Creates the String of a word.
+     *
+     * @param text the text that was tokenized
+     * @param token the word number
+     * @return the word
+     */
+    public String getToken(CharSequence text, int token) {
+        return text.subSequence(starts[token], ends[token]).toString();
+    }
+
+    /**
+     * Compares a word with a String without creating a String for the word.
+     *
+     * @param text the text that was tokenized
+     * @param token the word number
+     * @param value the String to compare with
+     * @return true if the word has the same chars as the value
+     */
+    public boolean tokenEquals(CharSequence text, int token, String value) {
+        int start = starts[token];
+        int length = ends[token] - start;
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+/**
+ * This interface decides which values of a ChordGraphModel are linked by chords. Every value is
+ * reduced to a key and the values with the same key form a category, so a matcher that only
+ * normalizes the values (ie. folds case or stems words) costs the same as exact matching: values
+ * are only compared to the members of their own category. A fuzzy matcher also links the values
+ * whose keys are within an edit distance of each other, the model finds those keys with an n-gram
+ * index of the distinct keys instead of comparing every pair. ValueMatchers has the common
+ * matchers.
+ *
+ * @param <T> - the type of the values
+ */
+public interface ValueMatcher<T> {
+
+    /**
+     * @param value the value to reduce
+     * @return the key of the value, values that match within a category have the same key
+     */
+    String getKey(T value);
+
+    /**
+     * Called for two values with the same key to make the final decision. The values of near keys
+     * for a fuzzy matcher are always linked.
+     *
+     * @param first the value already in the model
+     * @param second the value being added
+     * @return true if the values should be linked by a chord
+     */
+    boolean matches(T first, T second);
+
+    /**
+     * @return the largest edit distance between two keys whose values are linked, 0 if only the
+     * values with the same key are linked
+     */
+    int getMaxKeyDistance();
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.Locale;
+
+/**
+ * This class has the common ValueMatchers. They all work on the toString() of a value so they can
+ * be used with a model of any type.
+ */
+public final class ValueMatchers {
+
+    // The inflections stem() strips, longest first so "ing" wins over "s"
+    private static final String[] SUFFIXES = {"ing", "ed", "es", "s"};
+
+    // The shortest stem stem() leaves
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private static final ValueMatcher<Object> EXACT = new ValueMatcher<Object>() {
+        @Override
+        public String getKey(Object value) {
+            return value.toString();
+        }
+
+        @Override
+        public boolean matches(Object first, Object second) {
+            // .equals() is the final call for two values with the same toString(), it can only
+            // drop a link: values that are equal must have the same toString() to be linked
+            return first.equals(second);
+        }
+
+        @Override
+        public int getMaxKeyDistance() {
+            return 0;
+        }
+    };
+
+    private static final ValueMatcher<Object> CASE_FOLD = new KeyMatcher() {
+        @Override
+        public String getKey(Object value) {
+            return value.toString().toLowerCase(Locale.ROOT);
+        }
+    };
+
+    private static final ValueMatcher<Object> STEM = new KeyMatcher() {
+        @Override
+        public String getKey(Object value) {
+            return stem(value.toString().toLowerCase(Locale.ROOT));
+        }
+    };
+
+    private ValueMatchers() { }
+
+    /**
+     * @return the matcher that links equal values, the default of a model. The values are found
+     * by their toString(), so it only links every pair of equal values of a type whose equal
+     * values have the same toString()
+     */
+    public static ValueMatcher<Object> exact() {
+        return EXACT;
+    }
+
+    /**
+     * @return a matcher that links values that are the same apart from case, ie. "The" and "the"
+     */
+    public static ValueMatcher<Object> caseFold() {
+        return CASE_FOLD;
+    }
+
+    /**
+     * @return a matcher that links the inflections of a word apart from case, ie. "Run" and
+     * "running"
+     * @see #stem(String)
+     */
+    public static ValueMatcher<Object> stem() {
+        return STEM;
+    }
+
+    /**
+     * Creates a matcher that links the values whose keys are within an edit distance, ie. typos.
+     * The chords of a fuzzy matcher cross categories so it can't be used with IMPLICIT storage.
+     *
+     * @param keyMatcher the matcher that makes the keys and links the values with the same key
+     * @param maxDistance the largest Levenshtein distance between two keys that are linked
+     * @return the fuzzy matcher
+     */
+    public static ValueMatcher<Object> fuzzy(final ValueMatcher<Object> keyMatcher,
+                                             final int maxDistance) {
+        if (maxDistance < 1) {
+            throw new IllegalArgumentException("The edit distance must be at least 1");
+        }
+        return new ValueMatcher<Object>() {
+            @Override
+            public String getKey(Object value) {
+                return keyMatcher.getKey(value);
+            }
+
+            @Override
+            public boolean matches(Object first, Object second) {
+                return keyMatcher.matches(first, second);
+            }
+
+            @Override
+            public int getMaxKeyDistance() {
+                return maxDistance;
+            }
+        };
+    }
+
+    /**
+     * Strips one common English inflection from a lower case word and undoubles the consonant
+     * before "ing" and "ed", so "runs", "running" and "run" share the stem "run". It is a light
+     * stemmer, not Porter's, and leaves at least 3 chars.
+     *
+     * @param word the lower case word
+     * @return the stem of the word
+     */
+    public static String stem(String word) {
+        for (String suffix : SUFFIXES) {
+            int end = word.length() - suffix.length();
+            if (end < MIN_STEM_LENGTH || !word.endsWith(suffix)) {
+                continue;
+            }
+            char last = word.charAt(end - 1);
+            if (suffix.equals("s") && (last == 's' || last == '\'')) {
+                // "class" and "boss's" aren't plurals of "clas" and "boss'"
+                continue;
+            }
+            if (suffix.equals("es") && last != 's' && last != 'x' && last != 'z' && last != 'h') {
+                // "boxes" and "wishes" drop the "es", "games" only drops the "s"
+                continue;
+            }
+            if ((suffix.equals("ing") || suffix.equals("ed")) && end > MIN_STEM_LENGTH
+                    && last == word.charAt(end - 2) && isUndoubled(last)) {
+                end--;
+            }
+            return word.substring(0, end);
+        }
+        return word;
+    }
+
+    /**
+     * @param c a lower case char
+     * @return true if a doubled c before "ing" or "ed" comes from a single c, ie. "running"
+     */
+    private static boolean isUndoubled(char c) {
+        return c >= 'a' && c <= 'z' && "aeiouylsz".indexOf(c) < 0;
+    }
+
+    /**
+     * A matcher that only normalizes, the values with the same key are always linked.
+     */
+    private abstract static class KeyMatcher implements ValueMatcher<Object> {
+        @Override
+        public boolean matches(Object first, Object second) {
+            return true;
+        }
+
+        @Override
+        public int getMaxKeyDistance() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphSerializer;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.TextTokenizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class builds the ChordGraphModel off the UI thread. Text submitted in a burst of edits is
+ * debounced so only the last one is built. A build that is superseded by a newer submit is
+ * cancelled partway through. When a build finishes a read-only snapshot of the model is handed to
+ * the listener on the UI thread. The snapshot shares the pages of the model, so taking it only
+ * copies the pages the build changed, and the builder never writes it, so the UI can keep it for
+ * as long as it likes.
+ *
+ * The worker keeps its own copy of the text. An edit only hands the chars it inserted over from
+ * the UI thread and the worker applies it to the copy, so the UI thread never copies the whole
+ * Editable and the worker never reads it.
+ *
+ * The text is split into words by a TextTokenizer. Words that match the model's items at the start
+ * and end of the text reuse the item values, so a String is only created for the words that
+ * changed.
+ *
+ * The model the UI shows can be saved to a file on the worker thread too, with the checksum of the
+ * text it was built from, and restored from it on the worker thread. Neither reads nor writes a
+ * file on the UI thread.
+ */
+public class ChordGraphBuilder {
+
+    // How long to wait for more edits before building
+    private static final int DEBOUNCE_MILLIS = 150;
+    // Appended to the name of the file a model is saved to while it is being written
+    private static final String SAVING_SUFFIX = ".saving";
+
+    /**
+     * Receives the finished models on the UI thread.
+     */
+    public interface OnModelBuiltListener {
+        /**
+         * Called on the UI thread when a build has finished.
+         * @param model - a read-only snapshot of the model that was built, the builder never
+         *              changes it
+         */
+        void onModelBuilt(ChordGraphModel<String> model);
+    }
+
+    private ChordGraphModel<String> model; // the model being built, only touched by the worker
+    private final StringBuilder text; // the text with every edit applied, only touched by worker
+    private ChordGraphModel<String> shown; // the snapshot the UI holds, only touched by the UI
+    private ChordGraphSerializer.TextChecksum shownChecksum; // of the text shown was built from
+    private final TextTokenizer tokenizer; // only touched by the worker thread
+    private final ExecutorService worker;
+    private final Handler uiHandler;
+    private final AtomicInteger generation; // incremented on every submit
+    private final OnModelBuiltListener listener;
+
+    // Starts the build of the text once the debounce period is over
+    private final Runnable startBuild = new Runnable() {
+        @Override
+        public void run() {
+            build(generation.get());
+        }
+    };
+
+    /**
+     * Constructor initializes the worker thread and the UI thread handler
+     * @param listener - the listener that receives the finished models
+     */
+    public ChordGraphBuilder(OnModelBuiltListener listener) {
+        this.listener = listener;
+        this.model = new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        this.text = new StringBuilder();
+        this.tokenizer = new TextTokenizer();
+        this.worker = Executors.newSingleThreadExecutor();
+        this.uiHandler = new Handler(Looper.getMainLooper());
+        this.generation = new AtomicInteger();
+    }
+
+    /**
+     * Submits an edit of the text to be built after the debounce period, with the arguments of
+     * TextWatcher.onTextChanged(). Any build in progress is cancelled. Only the inserted chars are
+     * copied, so the edits have to be submitted in order from the text the builder last had.
+     * Must be called on the UI thread.
+     * @param edited - the text after the edit, ie. the live Editable
+     * @param start - the index the edit starts at
+     * @param before - the number of chars the edit replaced
+     * @param count - the number of chars the edit inserted
+     */
+    public void submitEdit(CharSequence edited, int start, int before, int count) {
+        replaceText(start, start + before, edited.subSequence(start, start + count).toString());
+        generation.incrementAndGet();
+        uiHandler.removeCallbacks(startBuild);
+        uiHandler.postDelayed(startBuild, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Submits new text to be built right away. Any build in progress is cancelled.
+     * Must be called on the UI thread.
+     * @param newText - the complete text to build the model from
+     */
+    public void submitNow(String newText) {
+        replaceText(0, -1, newText);
+        uiHandler.removeCallbacks(startBuild);
+        build(generation.incrementAndGet());
+    }
+
+    /**
+     * Replaces a range of the worker's copy of the text, on the worker thread after the edits and
+     * builds queued before it.
+     * @param start - the index of the first char to replace
+     * @param end - the index after the last char to replace, -1 for the end of the text
+     * @param replacement - the chars to put in its place
+     */
+    private void replaceText(final int start, final int end, final String replacement) {
+        if (worker.isShutdown()) {
+            return;
+        }
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                // the replace is clamped to the text, ie. for the first edit of an EditText
+                // restoring its text over text the builder never had
+                int length = text.length();
+                text.replace(Math.min(start, length), (end < 0) ? length : Math.min(end, length),
+                        replacement);
+            }
+        });
+    }
+
+    /**
+     * Restores the model from a file saved by save() on the worker thread, as long as it was
+     * saved from the given text, and hands a snapshot of it to the listener like a build. If the
+     * file can't be loaded or was saved from other text, ie. it was left by an earlier session
+     * because the last save didn't finish, the model stays empty and the text is built from
+     * scratch. Must be called on the UI thread before any text is built.
+     * @param file - the file to restore from
+     * @param restoredText - the text the model has to be built from
+     */
+    public void restore(final File file, final String restoredText) {
+        if (worker.isShutdown()) {
+            return;
+        }
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (model.getItemCount() > 0) {
+                    return;
+                }
+
+                final ChordGraphSerializer.TextChecksum checksum =
+                        ChordGraphSerializer.getTextChecksum(restoredText);
+                try {
+                    model = ChordGraphSerializer.load(file,
+                            ChordGraphModel.ChordStorage.IMPLICIT, checksum);
+                } catch (IOException e) {
+                    return;
+                }
+                final ChordGraphModel<String> restored = model.snapshot();
+
+                // Hand the restored model to the UI thread, the builds queued after this one
+                // are handed over after it
+                uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!worker.isShutdown()) {
+                            listener.onModelBuilt(restored);
+                            shown = restored;
+                            shownChecksum = checksum;
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Saves the model last handed to the listener to a file on the worker thread, after the builds
+     * queued before it, along with the checksum of the text it was built from. The model is
+     * written next to the file and then renamed over it, so the file is never left half written.
+     * If saving fails the file is deleted so that the model is rebuilt from the text instead.
+     * Must be called on the UI thread.
+     * @param file - the file to save to
+     * @return false if there is no model to save yet
+     */
+    public boolean save(final File file) {
+        final ChordGraphModel<String> shownModel = shown;
+        final ChordGraphSerializer.TextChecksum checksum = shownChecksum;
+        if (worker.isShutdown() || shownModel == null) {
+            return false;
+        }
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                File saving = new File(file.getPath() + SAVING_SUFFIX);
+                try {
+                    ChordGraphSerializer.save(shownModel, checksum, saving);
+                    if (!saving.renameTo(file)) {
+                        throw new IOException("Can't replace " + file);
+                    }
+                } catch (IOException e) {
+                    saving.delete();
+                    file.delete();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Cancels any build and stops the worker thread once a save queued before it is written. The
+     * builder can't be used afterwards.
+     */
+    public void shutdown() {
+        generation.incrementAndGet();
+        uiHandler.removeCallbacks(startBuild);
+        worker.shutdown();
+    }
+
+    /**
+     * Queues the build of the text on the worker thread, after the edits submitted before it
+     * @param buildGeneration - the generation of this build, it is cancelled when it goes stale
+     */
+    private void build(final int buildGeneration) {
+        if (worker.isShutdown()) {
+            return;
+        }
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                ChordGraphModel.CancelSignal signal = new ChordGraphModel.CancelSignal() {
+                    @Override
+                    public boolean isCancelled() {
+                        return generation.get() != buildGeneration;
+                    }
+                };
+                if (signal.isCancelled()) {
+                    return;
+                }
+
+                // Split the text into words, reusing the values of the words that didn't change
+                ArrayList<String> values = tokenize(text);
+
+                // Update the working model, stop if a newer build is waiting
+                if (!model.update(values, signal)) {
+                    return;
+                }
+                final ChordGraphModel<String> built = model.snapshot();
+                final ChordGraphSerializer.TextChecksum checksum =
+                        ChordGraphSerializer.getTextChecksum(text);
+
+                // Hand the snapshot to the UI thread unless it went stale in the meantime
+                uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation.get() == buildGeneration) {
+                            listener.onModelBuilt(built);
+                            shown = built;
+                            shownChecksum = checksum;
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Splits the text into words. The words that match the model's items at the start and end of
+     * the text are compared in place and take the item's value, only the words in between are
+     * created as new Strings. Since the reused values are the same objects the model's own diff
+     * matches them without comparing their chars again.
+     * @param text - the text to split
+     * @return the words of the text
+     */
+    private ArrayList<String> tokenize(CharSequence text) {
+        int count = tokenizer.tokenize(text);
+        int itemCount = model.getItemCount();
+
+        // Find the words that match the items at the start
+        int start = 0;
+        while (start < count && start < itemCount
+                && tokenizer.tokenEquals(text, start, model.getValue(start))) {
+            start++;
+        }
+
+        // Find the words that match the items at the end
+        int end = count;
+        int itemEnd = itemCount;
+        while (end > start && itemEnd > start
+                && tokenizer.tokenEquals(text, end - 1, model.getValue(itemEnd - 1))) {
+            end--;
+            itemEnd--;
+        }
+
+        ArrayList<String> values = new ArrayList<String>(count);
+        for (int i = 0; i < start; i++) {
+            values.add(model.getValue(i));
+        }
+        for (int i = start; i < end; i++) {
+            values.add(tokenizer.getToken(text, i));
+        }
+        for (int i = end; i < count; i++) {
+            values.add(model.getValue(itemEnd + i - end));
+        }
+        return values;
+    }
+}
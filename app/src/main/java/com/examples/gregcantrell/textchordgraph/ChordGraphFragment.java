@@ -18,6 +18,7 @@ import android.widget.RelativeLayout;
 import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
 import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphView;
 
+import java.io.File;
 import java.util.Timer;
 
 /**
@@ -25,12 +26,24 @@ import java.util.Timer;
  *
  * This class is the fragment that will contain the elements for the Chordgraph visualization. The
  * fragment contains an EditText that will provide the String to feed into the ChordGraphModel
- * and the ChordGraphView.
+ * and the ChordGraphView. The model is built off the UI thread by a ChordGraphBuilder and the
+ * finished models are swapped into the view.
+ *
+ * When the fragment's state is saved the model is saved to a file with ChordGraphSerializer, on
+ * the builder's worker thread. On rotation or after process death the builder loads the model
+ * from it on the worker thread instead of rebuilding it, and only rebuilds the words that differ
+ * from it. The file holds the checksum of the text the model was built from, a file left by an
+ * earlier session because the last save didn't finish is thrown away and the text is rebuilt.
  */
 
 public class ChordGraphFragment extends Fragment {
 
-    private ChordGraphModel<String> model;
+    // The file in the cache directory the model is saved to and the state key that says it was
+    private static final String MODEL_FILE_NAME = "chordgraph.model";
+    private static final String STATE_MODEL_SAVED = "chordgraph_model_saved";
+
+    private ChordGraphBuilder builder;
+    private ChordGraphView<String> chordGraphView;
     private EditText textEnter;
 
     /**
@@ -56,40 +69,100 @@ public class ChordGraphFragment extends Fragment {
             public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
 
             @Override
-            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                updateChordGraph(s, start, before, count);
+            }
 
             @Override
-            public void afterTextChanged(final Editable s) {
-                updateChordGraph(s.toString());
-            }
+            public void afterTextChanged(final Editable s) { }
         });
 
-        // Create the chordgraph model
-        model = new ChordGraphModel<String>();
+        // Add the ChordGraphView to the layout, it starts empty until the first model is handed
+        // over by the builder
+        chordGraphView = new ChordGraphView<String>(container.getContext(),
+                new ChordGraphModel<String>());
+        layout.addView(chordGraphView);
 
-        // Fill the model with the current String
-        updateChordGraph(textEnter.getText().toString());
-
-        // Add the ChordGraphView to the layout
-        layout.addView(new ChordGraphView<String>(container.getContext(), model));
+        // Create the builder and swap the finished models into the view
+        ChordGraphBuilder.OnModelBuiltListener listener =
+                new ChordGraphBuilder.OnModelBuiltListener() {
+            @Override
+            public void onModelBuilt(ChordGraphModel<String> model) {
+                if (chordGraphView != null) {
+                    chordGraphView.setModel(model);
+                }
+            }
+        };
+        builder = new ChordGraphBuilder(listener);
+        if (savedInstanceState == null || !savedInstanceState.getBoolean(STATE_MODEL_SAVED)) {
+            // Fill the model with the current String
+            builder.submitNow(textEnter.getText().toString());
+        }
 
         return view;
     }
 
     /**
-     * Updates the model with the given String
-     * @param newText - the String to update the model with
+     * Has the builder restore the saved model once the EditText has restored its text, the model
+     * is only used if it was saved from that text. The text is submitted by the TextWatcher when
+     * the EditText restores it and is built after the restored model is handed over.
+     * @param savedInstanceState - the Bundle the state was saved in
      */
-    public void updateChordGraph(String newText){
-        if(model != null){
-            // Clear the previous String
-            model.clear();
-            // Remove all non-alphanumeric values
-            String [] stringArray = newText.split("[^\\w']+");
-            // Populate the model
-            for (String str : stringArray) {
-                model.addItem(str);
-            }
+    @Override
+    public void onViewStateRestored(@Nullable Bundle savedInstanceState) {
+        super.onViewStateRestored(savedInstanceState);
+        if (savedInstanceState != null && savedInstanceState.getBoolean(STATE_MODEL_SAVED)
+                && builder != null && getActivity() != null) {
+            builder.restore(getModelFile(), textEnter.getText().toString());
+        }
+    }
+
+    /**
+     * Saves the model shown in the view so it can be loaded instead of rebuilt. The file is
+     * written by the builder's worker thread, if that fails the file is deleted and the model is
+     * rebuilt from the text.
+     * @param outState - the Bundle to save the state in
+     */
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (chordGraphView == null || builder == null || getActivity() == null) {
+            return;
+        }
+        outState.putBoolean(STATE_MODEL_SAVED, builder.save(getModelFile()));
+    }
+
+    /**
+     * @return the file in the cache directory the model is saved to
+     */
+    private File getModelFile() {
+        return new File(getActivity().getCacheDir(), MODEL_FILE_NAME);
+    }
+
+    /**
+     * Stops the builder when the view goes away
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (builder != null) {
+            builder.shutdown();
+            builder = null;
+        }
+        chordGraphView = null;
+    }
+
+    /**
+     * Updates the model with an edit of the text. The build runs in the background after a short
+     * delay and only the words that changed since the last build are rebuilt.
+     * @param newText - the text after the edit, it may be the live Editable
+     * @param start - the index the edit starts at
+     * @param before - the number of chars the edit replaced
+     * @param count - the number of chars the edit inserted
+     */
+    public void updateChordGraph(CharSequence newText, int start, int before, int count){
+        if(builder != null){
+            builder.submitEdit(newText, start, before, count);
         }
     }
 
@@ -26,10 +26,13 @@ public class MainActivity extends FragmentActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        FragmentManager fm  = getSupportFragmentManager();
-        FragmentTransaction fragmentTransaction = fm.beginTransaction();
-        fragmentTransaction.replace(R.id.fragment_area, new ChordGraphFragment());
-        fragmentTransaction.commit();
+        // when the activity is recreated the fragment manager restores the fragment and its state
+        if (savedInstanceState == null) {
+            FragmentManager fm  = getSupportFragmentManager();
+            FragmentTransaction fragmentTransaction = fm.beginTransaction();
+            fragmentTransaction.replace(R.id.fragment_area, new ChordGraphFragment());
+            fragmentTransaction.commit();
+        }
     }
 
     /**
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphExporter;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.TextStreamIngester;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Exports the chord graphs of a batch of documents with a ChordGraphExporter on a plain JVM and
+ * reports the documents per second. The documents are the text files of a directory, or a number
+ * of generated corpora when no directory is given.
+ *
+ * Usage: BatchExport outputDir [png|svg] [threads] [inputDir|documentCount]
+ */
+public final class BatchExport {
+
+    private static final String USAGE =
+            "Usage: BatchExport outputDir [png|svg] [threads] [inputDir|documentCount]";
+    private static final int SIZE = 1024;
+    private static final int DEFAULT_DOCUMENTS = 200;
+    private static final int GENERATED_TOKENS = 2000;
+
+    private BatchExport() { }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        File outputDir = new File(args[0]);
+        ChordGraphExporter.Format format = (args.length > 1)
+                ? ChordGraphExporter.Format.valueOf(args[1].toUpperCase(Locale.US))
+                : ChordGraphExporter.Format.PNG;
+        int threads = (args.length > 2)
+                ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<ChordGraphExporter.Document> documents;
+        if (args.length > 3 && new File(args[3]).isDirectory()) {
+            documents = textFiles(new File(args[3]));
+        } else {
+            int count = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_DOCUMENTS;
+            documents = generated(count);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Can't create " + outputDir);
+            System.exit(1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ChordGraphExporter exporter = new ChordGraphExporter(SIZE, SIZE, format);
+            ChordGraphExporter.Result result =
+                    exporter.export(documents.iterator(), outputDir, executor, threads);
+            System.out.println(String.format(Locale.US,
+                    "%d documents to %s on %d threads in %.2fs, %.1f documents/s",
+                    result.getDocumentCount(), format, threads, result.getElapsedNanos() / 1e9,
+                    result.getDocumentsPerSecond()));
+            if (!result.getFailedNames().isEmpty()) {
+                System.out.println(result.getFailedNames().size() + " failed, the first: "
+                        + result.getFirstError());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @param directory the directory of the text files
+     * @return a document per file of the directory, read as UTF-8
+     */
+    private static List<ChordGraphExporter.Document> textFiles(File directory) {
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        List<ChordGraphExporter.Document> documents = new ArrayList<ChordGraphExporter.Document>();
+        for (final File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            documents.add(new ChordGraphExporter.Document() {
+                @Override
+                public String getName() {
+                    return file.getName();
+                }
+
+                @Override
+                public ChordGraphModel<?> load() throws IOException {
+                    ChordGraphModel<String> model =
+                            new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+                    TextStreamIngester.ingest(model, file, "UTF-8", null);
+                    return model;
+                }
+            });
+        }
+        return documents;
+    }
+
+    /**
+     * @param count the number of documents
+     * @return documents of generated words, each of a different length
+     */
+    private static List<ChordGraphExporter.Document> generated(int count) {
+        List<ChordGraphExporter.Document> documents = new ArrayList<ChordGraphExporter.Document>();
+        for (int d = 0; d < count; d++) {
+            final int index = d;
+            documents.add(new ChordGraphExporter.Document() {
+                @Override
+                public String getName() {
+                    return "document" + index;
+                }
+
+                @Override
+                public ChordGraphModel<?> load() {
+                    ChordGraphModel<String> model =
+                            new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+                    int tokens = GENERATED_TOKENS / 4 + index % 8 * GENERATED_TOKENS / 8;
+                    String[] words = Corpus.words(tokens, Corpus.Repetition.HIGH);
+                    for (String word : words) {
+                        model.addItem(word);
+                    }
+                    return model;
+                }
+            });
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphLayout;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ColorPalette;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the chords phase of a frame drawn chord by chord against the same chords bundled
+ * into ribbons, across the chord counts around ChordGraphLayout.DEFAULT_BUNDLE_THRESHOLD. The
+ * chords are drawn chord by chord from the cached batch and right after the model changed, which
+ * is every frame while typing. Bundling costs a ribbon per pair of sectors of every category and
+ * nothing is cached, so it grows with the items rather than the chords. The frame after a change
+ * grows with the chords and is what the threshold bounds: bundling would be cheaper from about 500
+ * chords, but up to the threshold every chord can still be seen and picked. The draw calls and the
+ * vertices of a frame are printed when a trial ends, they cost more on a device than the CPU time
+ * measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BundleThresholdBenchmark {
+
+    @Param({"250", "500", "1000", "2000", "4000", "8000", "16000"})
+    public int chords;
+
+    private static final int SIZE = 1080;
+
+    private ChordGraphModel<String> model;
+    private ChordGraphLayout chordByChord;
+    private ChordGraphLayout bundled;
+    private ChordBatchBenchmark.VertexRenderer renderer;
+
+    @Setup
+    public void setup() {
+        // add words until there are enough chords, the storage the app builds with
+        model = new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        String[] words = Corpus.words(chords * 4, Corpus.Repetition.HIGH);
+        for (int i = 0; i < words.length && model.getChordCount() < chords; i++) {
+            model.addItem(words[i]);
+        }
+        ColorPalette palette = new ColorPalette(0xFF2196F3, 0xFFE91E63, 50);
+        chordByChord = new ChordGraphLayout(palette, 0xFFFFFFFF);
+        chordByChord.setBundleThreshold(Integer.MAX_VALUE);
+        chordByChord.update(SIZE, SIZE, model.getItemCount());
+        bundled = new ChordGraphLayout(new ColorPalette(0xFF2196F3, 0xFFE91E63, 50), 0xFFFFFFFF);
+        bundled.setBundleThreshold(0);
+        bundled.update(SIZE, SIZE, model.getItemCount());
+        renderer = new ChordBatchBenchmark.VertexRenderer();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportFrame() {
+        draw(chordByChord);
+        int chordCalls = renderer.drawCalls;
+        int chordVertices = renderer.vertexCount / 2;
+        draw(bundled);
+        System.out.println(String.format(Locale.US,
+                "%d chords, %d items: chord by chord %d draw calls %d vertices, "
+                        + "bundled %d draw calls %d vertices", model.getChordCount(),
+                model.getItemCount(), chordCalls, chordVertices, renderer.drawCalls,
+                renderer.vertexCount / 2));
+    }
+
+    /**
+     * Draws the chords one by one from the batch flattened by an earlier frame.
+     */
+    @Benchmark
+    public int chordByChord() {
+        return draw(chordByChord);
+    }
+
+    /**
+     * Flattens the chords into the batch and draws it, the first frame after the model changed.
+     */
+    @Benchmark
+    public int chordByChordAfterChange() {
+        chordByChord.invalidate();
+        chordByChord.update(SIZE, SIZE, model.getItemCount());
+        return draw(chordByChord);
+    }
+
+    /**
+     * Draws the chords bundled into ribbons, nothing is cached between frames.
+     */
+    @Benchmark
+    public int bundled() {
+        return draw(bundled);
+    }
+
+    /**
+     * @param layout - the layout to draw the chords with
+     * @return the number of draw calls, the vertices are checked so they aren't optimized away
+     */
+    private int draw(ChordGraphLayout layout) {
+        renderer.begin(SIZE, SIZE);
+        layout.drawChords(model, renderer);
+        renderer.end();
+        return renderer.drawCalls + (int) renderer.vertices[renderer.vertexCount / 2];
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphLayout;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphRenderer;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ColorPalette;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the chords phase of a frame with a path per chord against the chords batched into
+ * lines per color, from the cached batch and right after the model changed. The chords are drawn
+ * into a VertexRenderer that does the CPU side of a GPU canvas: a path is flattened into vertices
+ * on every draw, lines are copied straight into the vertex buffer, and every call is a draw call.
+ * The time per frame and the draw calls per frame are what differ on a device too, where the draw
+ * calls cost more again. There the debug overlay of the view shows the chords phase with
+ * setChordBatching() on and off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChordBatchBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int chords;
+
+    private static final int SIZE = 1080;
+
+    private ChordGraphModel<String> model;
+    private ChordGraphLayout layout;
+    private VertexRenderer renderer;
+
+    @Setup
+    public void setup() {
+        // add words until there are enough chords, they grow with the square of the repeats
+        model = new ChordGraphModel<String>(ChordGraphModel.ChordStorage.PRIMITIVE);
+        String[] words = Corpus.words(chords * 4, Corpus.Repetition.HIGH);
+        for (int i = 0; i < words.length && model.getChordCount() < chords; i++) {
+            model.addItem(words[i]);
+        }
+        layout = new ChordGraphLayout(new ColorPalette(0xFF2196F3, 0xFFE91E63, 50), 0xFFFFFFFF);
+        layout.setBundleThreshold(Integer.MAX_VALUE);
+        layout.update(SIZE, SIZE, model.getItemCount());
+        renderer = new VertexRenderer();
+    }
+
+    /**
+     * Draws every chord as a path of its own.
+     */
+    @Benchmark
+    public int pathPerChord() {
+        layout.setChordBatching(false);
+        return drawChords();
+    }
+
+    /**
+     * Draws the chords from the batch flattened by an earlier frame.
+     */
+    @Benchmark
+    public int batched() {
+        layout.setChordBatching(true);
+        return drawChords();
+    }
+
+    /**
+     * Flattens the chords into the batch and draws it, the first frame after the model changed.
+     */
+    @Benchmark
+    public int batchedAfterChange() {
+        layout.setChordBatching(true);
+        layout.invalidate();
+        layout.update(SIZE, SIZE, model.getItemCount());
+        return drawChords();
+    }
+
+    /**
+     * @return the number of draw calls, the vertices are checked so they aren't optimized away
+     */
+    private int drawChords() {
+        renderer.begin(SIZE, SIZE);
+        layout.drawChords(model, renderer);
+        renderer.end();
+        return renderer.drawCalls + (int) renderer.vertices[renderer.vertexCount / 2];
+    }
+
+    /**
+     * Collects what a GPU canvas would upload, the line segments of every shape, and counts the
+     * draw calls. Only the chords are drawn by the benchmark so the other shapes are left out.
+     */
+    static final class VertexRenderer implements ChordGraphRenderer {
+        // The flatness and most segments of a curve, the same as the chord batch
+        private static final float FLATNESS = 0.5f;
+        private static final int MAX_SEGMENTS = 24;
+
+        float[] vertices = new float[1024];
+        int vertexCount;
+        int drawCalls;
+
+        @Override
+        public void begin(int width, int height) {
+            vertexCount = 0;
+            drawCalls = 0;
+        }
+
+        @Override
+        public void drawCircle(float centerX, float centerY, float radius, float strokeWidth,
+                               int color) {
+            drawCalls++;
+        }
+
+        @Override
+        public void fillCircle(float centerX, float centerY, float radius, int color) {
+            drawCalls++;
+        }
+
+        @Override
+        public void drawQuad(float startX, float startY, float controlX, float controlY,
+                             float endX, float endY, float strokeWidth, int color) {
+            // a path is flattened on every draw
+            flatten(startX, startY, controlX, controlY, endX, endY);
+            drawCalls++;
+        }
+
+        @Override
+        public void drawLines(float[] points, int offset, int count, float strokeWidth,
+                              int color) {
+            // lines are uploaded as they are
+            ensureCapacity(count);
+            System.arraycopy(points, offset, vertices, vertexCount, count);
+            vertexCount += count;
+            drawCalls++;
+        }
+
+        @Override
+        public void fillRibbon(float fromFirstX, float fromFirstY, float fromLastX,
+                               float fromLastY, float toFirstX, float toFirstY, float toLastX,
+                               float toLastY, float controlX, float controlY, float strokeWidth,
+                               int color) {
+            // the outline is the two curved sides, the rim arcs between them are short
+            flatten(fromLastX, fromLastY, controlX, controlY, toFirstX, toFirstY);
+            flatten(toLastX, toLastY, controlX, controlY, fromFirstX, fromFirstY);
+            drawCalls++;
+        }
+
+        @Override
+        public void drawLabel(String label, float x, float y, float degrees, boolean alignEnd,
+                              float textSize, int color) {
+            drawCalls++;
+        }
+
+        @Override
+        public void end() {
+        }
+
+        /**
+         * Flattens a quadratic Bezier curve into line segments the way a path is.
+         * @param startX - the x coordinate of the start of the curve
+         * @param startY - the y coordinate of the start of the curve
+         * @param controlX - the x coordinate of the control point
+         * @param controlY - the y coordinate of the control point
+         * @param endX - the x coordinate of the end of the curve
+         * @param endY - the y coordinate of the end of the curve
+         */
+        private void flatten(float startX, float startY, float controlX, float controlY,
+                             float endX, float endY) {
+            float ddx = startX - 2 * controlX + endX;
+            float ddy = startY - 2 * controlY + endY;
+            double bend = Math.sqrt(ddx * ddx + ddy * ddy);
+            int segments = (int) Math.ceil(Math.sqrt(bend / (4 * FLATNESS)));
+            segments = Math.max(1, Math.min(MAX_SEGMENTS, segments));
+            ensureCapacity(segments * 4);
+            float x = startX;
+            float y = startY;
+            for (int s = 1; s <= segments; s++) {
+                float t = (float) s / segments;
+                float u = 1 - t;
+                float nextX = u * u * startX + 2 * u * t * controlX + t * t * endX;
+                float nextY = u * u * startY + 2 * u * t * controlY + t * t * endY;
+                vertices[vertexCount++] = x;
+                vertices[vertexCount++] = y;
+                vertices[vertexCount++] = nextX;
+                vertices[vertexCount++] = nextY;
+                x = nextX;
+                y = nextY;
+            }
+        }
+
+        /**
+         * @param floats - the number of floats about to be added
+         */
+        private void ensureCapacity(int floats) {
+            if (vertices.length < vertexCount + floats) {
+                vertices = Arrays.copyOf(vertices,
+                        Math.max(vertexCount + floats, vertices.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building a model and walking its chords with each way of storing the chords, and
+ * reports the memory the built model retains. A corpus is given as "tokens:repetition". The number
+ * of explicit chords grows with the square of the repeats of a word: 10000 words with high
+ * repetition make about 4.5 million chords, 100000 would make hundreds of millions, so the
+ * 100000 word corpus only has low repetition.
+ *
+ * The retained memory of the model walked by walkChords() is measured once per trial as the growth
+ * of the used heap after a gc, and printed with estimateRetainedBytes() when the trial ends. The
+ * gc profiler the jmh task runs with reports what a build allocates as gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChordStorageBenchmark {
+
+    @Param({"100:LOW", "100:HIGH", "1000:LOW", "1000:HIGH", "5000:LOW", "5000:HIGH",
+            "10000:LOW", "10000:HIGH", "100000:LOW"})
+    public String corpus;
+
+    @Param({"OBJECTS", "PRIMITIVE", "IMPLICIT"})
+    public ChordGraphModel.ChordStorage storage;
+
+    private static final int GC_PASSES = 5;
+
+    private String[] words;
+    private ChordGraphModel<String> built; // walked by walkChords
+    private long measuredBytes;
+
+    @Setup
+    public void setup() {
+        int colon = corpus.indexOf(':');
+        words = Corpus.words(Integer.parseInt(corpus.substring(0, colon)),
+                Corpus.Repetition.valueOf(corpus.substring(colon + 1)));
+        long before = usedHeap();
+        built = build();
+        measuredBytes = usedHeap() - before;
+    }
+
+    @TearDown(Level.Trial)
+    public void reportRetained() {
+        System.out.println(String.format(Locale.US,
+                "%s %s: %d chords, retained %d KB measured, %d KB estimated", corpus, storage,
+                built.getChordCount(), measuredBytes / 1024, built.estimateRetainedBytes() / 1024));
+    }
+
+    /**
+     * Builds a new model one addItem() at a time.
+     */
+    @Benchmark
+    public ChordGraphModel<String> build() {
+        ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+        for (String word : words) {
+            model.addItem(word);
+        }
+        return model;
+    }
+
+    /**
+     * Walks every chord with the cursor, the way the view draws them.
+     */
+    @Benchmark
+    public long walkChords() {
+        long sum = 0;
+        ChordGraphModel<String>.ChordCursor cursor = built.getChordCursor();
+        while (cursor.next()) {
+            sum += cursor.getHead() + cursor.getTail();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the heap in use after collecting the garbage a few times
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_PASSES; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ColorPalette;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks looking colors up in a ColorPalette, by index, at random, faded to an alpha bucket and
+ * by category word through the cache and uncached, with the palette size the view uses and a
+ * larger one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ColorPaletteBenchmark {
+
+    @Param({"50", "1000"})
+    public int numColors;
+
+    // The number of distinct words looked up by category
+    private static final int WORDS = 512;
+
+    private ColorPalette palette;
+    private int index;
+    private String[] words;
+    private int word;
+
+    @Setup
+    public void setup() {
+        palette = new ColorPalette(0xFF2196F3, 0xFFE91E63, numColors);
+        words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = "word" + i;
+        }
+    }
+
+    /**
+     * Looks up the colors in order, one per call.
+     */
+    @Benchmark
+    public int colorAtIndex() {
+        index = (index + 1 == numColors) ? 0 : index + 1;
+        return palette.getColor(index);
+    }
+
+    /**
+     * Picks a random color.
+     */
+    @Benchmark
+    public int randomColor() {
+        return palette.getColor();
+    }
+
+    /**
+     * Looks up the colors in order faded to an alpha bucket, the way a chord is colored.
+     */
+    @Benchmark
+    public int fadedColor() {
+        index = (index + 1 == numColors) ? 0 : index + 1;
+        return palette.getColor(index, index & (ColorPalette.ALPHA_BUCKETS - 1));
+    }
+
+    /**
+     * Looks up the color of a category by its id and word, served from the cache once warm.
+     */
+    @Benchmark
+    public int cachedCategoryColor() {
+        word = (word + 1 == WORDS) ? 0 : word + 1;
+        return palette.getColorIndex(word, words[word]);
+    }
+
+    /**
+     * Hashes the word of a category to its color every call.
+     */
+    @Benchmark
+    public int hashedCategoryColor() {
+        word = (word + 1 == WORDS) ? 0 : word + 1;
+        return palette.getColorIndex(words[word]);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import java.util.Random;
+
+/**
+ * This class generates the input corpora of the benchmarks. A fixed seed makes every corpus the
+ * same from run to run.
+ */
+public final class Corpus {
+
+    /**
+     * How often the words of a corpus repeat.
+     */
+    public enum Repetition {
+        LOW,  // drawn evenly from a vocabulary as large as the corpus, most appear once or twice
+        HIGH  // drawn from 50 words favoring the first ones like real text, a few words dominate
+    }
+
+    private static final int HIGH_REPETITION_VOCABULARY = 50;
+    private static final long SEED = 2015;
+
+    // The delimiters put between the words of a text, mostly spaces
+    private static final String[] DELIMITERS = {" ", " ", " ", " ", " ", ", ", ". ", "\n", " - "};
+
+    private Corpus() { }
+
+    /**
+     * Generates the words of a corpus.
+     * @param tokens - the number of words
+     * @param repetition - how often the words repeat
+     * @return the words
+     */
+    public static String[] words(int tokens, Repetition repetition) {
+        Random random = new Random(SEED);
+        String[] words = new String[tokens];
+        for (int i = 0; i < tokens; i++) {
+            int rank;
+            if (repetition == Repetition.HIGH) {
+                // the cube of a uniform draw favors the low ranks, like a Zipf distribution
+                double draw = random.nextDouble();
+                rank = (int) (draw * draw * draw * HIGH_REPETITION_VOCABULARY);
+            } else {
+                rank = random.nextInt(tokens);
+            }
+            words[i] = word(rank);
+        }
+        return words;
+    }
+
+    /**
+     * Generates the text of a corpus, the words separated by spaces and punctuation.
+     * @param tokens - the number of words
+     * @param repetition - how often the words repeat
+     * @return the text
+     */
+    public static String text(int tokens, Repetition repetition) {
+        String[] words = words(tokens, repetition);
+        Random random = new Random(SEED);
+        StringBuilder text = new StringBuilder(tokens * 8);
+        for (int i = 0; i < words.length; i++) {
+            if (i > 0) {
+                text.append(DELIMITERS[random.nextInt(DELIMITERS.length)]);
+            }
+            text.append(words[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates the words of a corpus with the variants real text has: capitalized words,
+     * inflections and typos. The words are drawn evenly from a vocabulary of a tenth of the corpus,
+     * of 5 to 9 random letters so that few of them are near each other by chance.
+     * @param tokens - the number of words
+     * @return the words
+     */
+    public static String[] inflectedWords(int tokens) {
+        Random random = new Random(SEED);
+        String[] vocabulary = new String[Math.max(1, tokens / 10)];
+        for (int v = 0; v < vocabulary.length; v++) {
+            char[] letters = new char[5 + random.nextInt(5)];
+            for (int c = 0; c < letters.length; c++) {
+                letters[c] = (char) ('a' + random.nextInt(26));
+            }
+            vocabulary[v] = new String(letters);
+        }
+
+        String[] words = new String[tokens];
+        for (int i = 0; i < tokens; i++) {
+            String word = vocabulary[random.nextInt(vocabulary.length)];
+            int variant = random.nextInt(20);
+            if (variant < 2) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            } else if (variant < 4) {
+                word = word + "s";
+            } else if (variant == 4) {
+                word = word + "ing";
+            } else if (variant == 5) {
+                word = word + "ed";
+            } else if (variant == 6) {
+                // a typo, one letter replaced
+                char[] letters = word.toCharArray();
+                letters[random.nextInt(letters.length)] = (char) ('a' + random.nextInt(26));
+                word = new String(letters);
+            }
+            words[i] = word;
+        }
+        return words;
+    }
+
+    /**
+     * @param rank - the rank of the word in the vocabulary
+     * @return a word that is unique to the rank, short for the low ranks like real text
+     */
+    private static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        int value = rank;
+        do {
+            word.append((char) ('a' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        // some words are contractions
+        if (rank % 17 == 3) {
+            word.append("'s");
+        }
+        return word.toString();
+    }
+}
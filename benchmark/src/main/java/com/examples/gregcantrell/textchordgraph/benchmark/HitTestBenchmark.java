@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphLayout;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ColorPalette;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks what happens between a tap and the highlighted frame: finding the slot under the
+ * tap, finding the chord near it, building the chord index the first time, and drawing the
+ * highlight of an item into a ChordBatchBenchmark.VertexRenderer. The taps are spread over the
+ * whole graph. The chords are drawn one by one up to BUNDLE_THRESHOLD chords so they can be
+ * picked, above it they are bundled and only the slots can be.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HitTestBenchmark {
+
+    @Param({"1000", "10000"})
+    public int items;
+
+    @Param({"LOW", "HIGH"})
+    public Corpus.Repetition repetition;
+
+    private static final int SIZE = 1080;
+    private static final float REACH = 24.0f;
+    private static final int BUNDLE_THRESHOLD = 100000;
+    private static final int TAPS = 1024; // a power of 2
+
+    private ChordGraphModel<String> model;
+    private ChordGraphLayout layout;
+    private ChordBatchBenchmark.VertexRenderer renderer;
+    private float[] tapX;
+    private float[] tapY;
+    private int tap;
+
+    @Setup
+    public void setup() {
+        model = new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        for (String word : Corpus.words(items, repetition)) {
+            model.addItem(word);
+        }
+        layout = new ChordGraphLayout(new ColorPalette(0xFF2196F3, 0xFFE91E63, 50), 0xFFFFFFFF);
+        layout.setBundleThreshold(BUNDLE_THRESHOLD);
+        layout.update(SIZE, SIZE, model.getItemCount());
+        renderer = new ChordBatchBenchmark.VertexRenderer();
+
+        // taps evenly over the graph, the index is built by the first one
+        Random random = new Random(2015);
+        tapX = new float[TAPS];
+        tapY = new float[TAPS];
+        for (int i = 0; i < TAPS; i++) {
+            tapX[i] = random.nextFloat() * SIZE;
+            tapY[i] = random.nextFloat() * SIZE;
+        }
+        layout.getChordAt(model, tapX[0], tapY[0], REACH);
+    }
+
+    /**
+     * Finds the slot under a tap.
+     */
+    @Benchmark
+    public int slotAt() {
+        tap = (tap + 1) & (TAPS - 1);
+        return layout.getSlotAt(tapX[tap], tapY[tap]);
+    }
+
+    /**
+     * Finds the chord nearest to a tap with the index built.
+     */
+    @Benchmark
+    public int chordAt() {
+        tap = (tap + 1) & (TAPS - 1);
+        return layout.getChordAt(model, tapX[tap], tapY[tap], REACH);
+    }
+
+    /**
+     * Builds the chord index and finds the chord nearest to a tap, the first tap after a change.
+     */
+    @Benchmark
+    public int chordAtAfterChange() {
+        layout.invalidate();
+        layout.update(SIZE, SIZE, model.getItemCount());
+        tap = (tap + 1) & (TAPS - 1);
+        return layout.getChordAt(model, tapX[tap], tapY[tap], REACH);
+    }
+
+    /**
+     * Draws the highlight of an item, every item in turn.
+     */
+    @Benchmark
+    public int itemHighlight() {
+        tap = (tap + 1) % model.getItemCount();
+        renderer.begin(SIZE, SIZE);
+        layout.drawItemHighlight(model, renderer, tap);
+        renderer.end();
+        return renderer.drawCalls;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the item storage the model started with against the dense index-addressed items it
+ * has now. The old model gave every item a UUID.randomUUID() and kept it in a
+ * HashMap<UUID, ChordGraphItem>, along with an empty chord list per item and the members of
+ * every distinct toString() in a HashMap<String, ChordGraphCategory>. LegacyItems rebuilds that.
+ * The dense side is a model with IMPLICIT storage, which keeps the items and categories and
+ * stores no chords either, so neither side counts chords.
+ *
+ * The retained memory of each is measured once per trial as the growth of the used heap after a
+ * gc, over a few copies to even out the noise, and printed per item when the trial ends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ItemStorageBenchmark {
+
+    @Param({"10000", "100000"})
+    public int items;
+
+    private static final int GC_PASSES = 5;
+    private static final int MEASURED_COPIES = 4;
+
+    private String[] words;
+    private Object[] measured; // the copies being measured, kept reachable until then
+    private long uuidMapBytes;
+    private long denseBytes;
+
+    @Setup
+    public void setup() {
+        words = Corpus.words(items, Corpus.Repetition.LOW);
+        measured = new Object[MEASURED_COPIES];
+        long before = usedHeap();
+        for (int c = 0; c < MEASURED_COPIES; c++) {
+            measured[c] = uuidMap();
+        }
+        uuidMapBytes = (usedHeap() - before) / MEASURED_COPIES;
+        measured = new Object[MEASURED_COPIES];
+        before = usedHeap();
+        for (int c = 0; c < MEASURED_COPIES; c++) {
+            measured[c] = dense();
+        }
+        denseBytes = (usedHeap() - before) / MEASURED_COPIES;
+        measured = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void reportRetained() {
+        System.out.println(String.format(Locale.US,
+                "%d items: UUID map %d bytes per item, dense %d bytes per item", items,
+                uuidMapBytes / items, denseBytes / items));
+    }
+
+    /**
+     * Builds the old storage, a random UUID and a map entry per item.
+     */
+    @Benchmark
+    public LegacyItems<String> uuidMap() {
+        LegacyItems<String> legacy = new LegacyItems<String>();
+        for (String word : words) {
+            legacy.addItem(word);
+        }
+        return legacy;
+    }
+
+    /**
+     * Builds a model one addItem() at a time, the items are kept by index.
+     */
+    @Benchmark
+    public ChordGraphModel<String> dense() {
+        ChordGraphModel<String> model =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        for (String word : words) {
+            model.addItem(word);
+        }
+        return model;
+    }
+
+    /**
+     * @return the heap in use after collecting the garbage a few times
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_PASSES; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The items and categories the way the model kept them before the items were made dense.
+     *
+     * @param <T> the type of the values
+     */
+    public static final class LegacyItems<T> {
+        private final HashMap<UUID, LegacyItem<T>> items = new HashMap<UUID, LegacyItem<T>>();
+        private final HashMap<String, ArrayList<LegacyItem<T>>> categories =
+                new HashMap<String, ArrayList<LegacyItem<T>>>();
+
+        /**
+         * @param value the value of the new item
+         */
+        void addItem(T value) {
+            LegacyItem<T> item = new LegacyItem<T>(items.size(), value);
+            String key = value.toString();
+            ArrayList<LegacyItem<T>> members = categories.get(key);
+            if (members == null) {
+                members = new ArrayList<LegacyItem<T>>();
+                categories.put(key, members);
+            }
+            members.add(item);
+            items.put(item.id, item);
+        }
+    }
+
+    /**
+     * An item the way the model kept it before the items were made dense.
+     *
+     * @param <T> the type of the value
+     */
+    private static final class LegacyItem<T> {
+        private final UUID id = UUID.randomUUID(); // goes through SecureRandom
+        private final int index;
+        private final T value;
+        private final ArrayList<Object> chords = new ArrayList<Object>();
+
+        /**
+         * @param index the index of the item
+         * @param value the value of the item
+         */
+        LegacyItem(int index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ValueMatcher;
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ValueMatchers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building a model of 50k words with each way of matching values. The corpus has
+ * capitalized words, inflections and typos so every matcher links something the exact one
+ * doesn't. The chords are stored in primitive arrays since fuzzy matching needs stored chords.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MatcherBenchmark {
+
+    /**
+     * The matchers that are compared.
+     */
+    public enum Strategy {
+        EXACT,
+        CASE_FOLD,
+        STEM,
+        FUZZY_1,  // case folded keys within one edit
+        FUZZY_2   // case folded keys within two edits
+    }
+
+    @Param({"50000"})
+    public int tokens;
+
+    @Param({"EXACT", "CASE_FOLD", "STEM", "FUZZY_1", "FUZZY_2"})
+    public Strategy strategy;
+
+    private String[] words;
+    private ValueMatcher<Object> matcher;
+
+    @Setup
+    public void setup() {
+        words = Corpus.inflectedWords(tokens);
+        switch (strategy) {
+            case CASE_FOLD:
+                matcher = ValueMatchers.caseFold();
+                break;
+            case STEM:
+                matcher = ValueMatchers.stem();
+                break;
+            case FUZZY_1:
+                matcher = ValueMatchers.fuzzy(ValueMatchers.caseFold(), 1);
+                break;
+            case FUZZY_2:
+                matcher = ValueMatchers.fuzzy(ValueMatchers.caseFold(), 2);
+                break;
+            default:
+                matcher = ValueMatchers.exact();
+                break;
+        }
+    }
+
+    /**
+     * Builds a new model one addItem() at a time with the matcher.
+     */
+    @Benchmark
+    public ChordGraphModel<String> build() {
+        ChordGraphModel<String> model =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.PRIMITIVE);
+        model.setMatcher(matcher);
+        for (String word : words) {
+            model.addItem(word);
+        }
+        return model;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building, clearing and updating a ChordGraphModel with implicit chords, the storage
+ * the app uses, from 100 to 1M words. ChordStorageBenchmark compares the storage modes on the
+ * corpora small enough for explicit chords.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int tokens;
+
+    @Param({"LOW", "HIGH"})
+    public Corpus.Repetition repetition;
+
+    private String[] words;
+    private ChordGraphModel<String> reused; // cleared and rebuilt by addThenClear
+    private ChordGraphModel<String> edited; // updated back and forth by updateOneWord
+    private List<String> original;
+    private List<String> changed;
+    private boolean showChanged;
+
+    @Setup
+    public void setup() {
+        words = Corpus.words(tokens, repetition);
+        reused = new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+
+        // a single word in the middle differs between the two versions of the text
+        original = Arrays.asList(words);
+        changed = new ArrayList<String>(original);
+        changed.set(tokens / 2, "changed");
+        edited = new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        edited.update(original);
+        showChanged = true;
+    }
+
+    /**
+     * Builds a new model one addItem() at a time.
+     */
+    @Benchmark
+    public ChordGraphModel<String> addItems() {
+        ChordGraphModel<String> model =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        for (String word : words) {
+            model.addItem(word);
+        }
+        return model;
+    }
+
+    /**
+     * Fills a reused model and clears it again, the way the app rebuilt it on every edit.
+     */
+    @Benchmark
+    public long addThenClear() {
+        for (String word : words) {
+            reused.addItem(word);
+        }
+        long chordCount = reused.getChordCount();
+        reused.clear();
+        return chordCount;
+    }
+
+    /**
+     * Updates a model after a one word edit, the way the app rebuilds it on every edit now.
+     */
+    @Benchmark
+    public long updateOneWord() {
+        edited.update(showChanged ? changed : original);
+        showChanged = !showChanged;
+        return edited.getChordCount();
+    }
+}
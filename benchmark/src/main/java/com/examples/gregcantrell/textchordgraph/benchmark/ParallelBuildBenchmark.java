@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.ChordGraphModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building a model with the parallel addItems() on 1 to 8 threads, with the work split
+ * into as many chunks as there are threads. One thread runs the parallel code without any
+ * parallelism, ChordStorageBenchmark.build() is the same corpus added one addItem() at a time.
+ * With implicit chords only the keys are worked out in parallel, with explicit ones the chords
+ * are created in parallel too. The speedup is bounded by the cores of the machine it runs on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelBuildBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"10000:HIGH", "100000:LOW"})
+    public String corpus;
+
+    @Param({"OBJECTS", "PRIMITIVE", "IMPLICIT"})
+    public ChordGraphModel.ChordStorage storage;
+
+    private List<String> words;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        int colon = corpus.indexOf(':');
+        words = Arrays.asList(Corpus.words(Integer.parseInt(corpus.substring(0, colon)),
+                Corpus.Repetition.valueOf(corpus.substring(colon + 1))));
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Builds a new model with one parallel addItems().
+     */
+    @Benchmark
+    public ChordGraphModel<String> addItems() throws InterruptedException {
+        ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+        model.addItems(words, executor, threads);
+        return model;
+    }
+}
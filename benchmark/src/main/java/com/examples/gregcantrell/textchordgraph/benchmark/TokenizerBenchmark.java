@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.benchmark;
+
+import com.examples.gregcantrell.textchordgraph.ChordGraph.TextTokenizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks splitting text into words: the regex split the app used to run on every keystroke
+ * against the TextTokenizer, both on a String and on a StringBuilder standing in for an Editable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int tokens;
+
+    @Param({"LOW", "HIGH"})
+    public Corpus.Repetition repetition;
+
+    private String text;
+    private StringBuilder editable;
+    private TextTokenizer tokenizer;
+
+    @Setup
+    public void setup() {
+        text = Corpus.text(tokens, repetition);
+        editable = new StringBuilder(text);
+        tokenizer = new TextTokenizer();
+    }
+
+    /**
+     * The regex split, as updateChordGraph used to do it.
+     */
+    @Benchmark
+    public String[] regexSplit() {
+        return text.split("[^\\w']+");
+    }
+
+    /**
+     * The tokenizer finding the word offsets only, what a build costs when no word changed.
+     */
+    @Benchmark
+    public int tokenizeOffsets() {
+        return tokenizer.tokenize(text);
+    }
+
+    /**
+     * The tokenizer creating a String for every word, what a build costs when every word changed.
+     */
+    @Benchmark
+    public void tokenizeStrings(Blackhole blackhole) {
+        int count = tokenizer.tokenize(text);
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(tokenizer.getToken(text, i));
+        }
+    }
+
+    /**
+     * The tokenizer finding the word offsets of a CharSequence that isn't a String.
+     */
+    @Benchmark
+    public int tokenizeCharSequence() {
+        return tokenizer.tokenize(editable);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package android.graphics;
+
+/**
+ * Off-device shim of the parts of android.graphics.Color the palette uses so it can be benchmarked
+ * on a plain JVM. Colors are packed ARGB ints exactly as on Android.
+ */
+public class Color {
+    public static final int BLACK = 0xFF000000;
+    public static final int DKGRAY = 0xFF444444;
+    public static final int GRAY = 0xFF888888;
+    public static final int LTGRAY = 0xFFCCCCCC;
+    public static final int WHITE = 0xFFFFFFFF;
+    public static final int TRANSPARENT = 0;
+
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    public static int rgb(int red, int green, int blue) {
+        return (0xFF << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+}
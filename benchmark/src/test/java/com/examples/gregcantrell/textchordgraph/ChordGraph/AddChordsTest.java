@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that finding the matching items through the category of a new item makes the same chords
+ * in the same order as the linear scan over every earlier item it replaced.
+ */
+public class AddChordsTest {
+
+    private static final ChordGraphModel.ChordStorage[] STORED = {
+            ChordGraphModel.ChordStorage.OBJECTS, ChordGraphModel.ChordStorage.PRIMITIVE};
+
+    /**
+     * The chords the linear scan made: every new item is compared with .equals() to every item
+     * before it, in index order.
+     * @param values - the values in order
+     * @return the chords as TestModels.chords() lists them
+     */
+    private static List<String> scanChords(List<?> values) {
+        ArrayList<String> chords = new ArrayList<String>();
+        for (int tail = 0; tail < values.size(); tail++) {
+            for (int head = 0; head < tail; head++) {
+                if (values.get(head).equals(values.get(tail))) {
+                    chords.add(head + "-" + tail + ":" + 1.0f);
+                }
+            }
+        }
+        return chords;
+    }
+
+    @Test
+    public void randomWordsMatchTheScan() {
+        Random random = new Random(2015);
+        for (int run = 0; run < 50; run++) {
+            List<String> words = TestModels.words(random, 1 + random.nextInt(300),
+                    1 + random.nextInt(40));
+            List<String> expected = scanChords(words);
+            for (ChordGraphModel.ChordStorage storage : STORED) {
+                ChordGraphModel<String> model = TestModels.build(storage, words);
+                assertEquals(storage + " " + words, expected, TestModels.chords(model));
+                assertEquals(expected.size(), model.getChordCount());
+            }
+        }
+    }
+
+    @Test
+    public void chordsOfAnItemMatchTheScan() {
+        List<String> words = TestModels.words(new Random(7), 200, 12);
+        List<String> all = scanChords(words);
+        for (ChordGraphModel.ChordStorage storage : STORED) {
+            ChordGraphModel<String> model = TestModels.build(storage, words);
+            for (int i = 0; i < words.size(); i++) {
+                ArrayList<String> expected = new ArrayList<String>();
+                for (String chord : all) {
+                    String[] ends = chord.substring(0, chord.indexOf(':')).split("-");
+                    if (Integer.parseInt(ends[0]) == i || Integer.parseInt(ends[1]) == i) {
+                        expected.add(chord);
+                    }
+                }
+                List<String> actual = TestModels.chords(model, i);
+                if (storage == ChordGraphModel.ChordStorage.PRIMITIVE) {
+                    // the adjacency table lists the chords of an item by chord number, the same
+                    // set as the objects in a different order
+                    Collections.sort(expected);
+                    Collections.sort(actual);
+                }
+                assertEquals(storage + " item " + i, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void valuesWithConsistentToStringMatchTheScan() {
+        Random random = new Random(11);
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 300; i++) {
+            values.add(random.nextInt(25));
+        }
+        ChordGraphModel<Integer> model =
+                new ChordGraphModel<Integer>(ChordGraphModel.ChordStorage.OBJECTS);
+        for (Integer value : values) {
+            model.addItem(value);
+        }
+        assertEquals(scanChords(values), TestModels.chords(model));
+    }
+
+    @Test
+    public void equalValuesWithDifferentToStringAreNotLinked() {
+        // the restriction on the type of the model: the category is found by toString()
+        List<Tagged> values = Arrays.asList(new Tagged(1, "a"), new Tagged(1, "b"),
+                new Tagged(1, "a"));
+        ChordGraphModel<Tagged> model =
+                new ChordGraphModel<Tagged>(ChordGraphModel.ChordStorage.OBJECTS);
+        for (Tagged value : values) {
+            model.addItem(value);
+        }
+        assertEquals(Arrays.asList("0-2:1.0"), TestModels.chords(model));
+    }
+
+    /**
+     * A value whose .equals() ignores the tag that its toString() shows.
+     */
+    private static final class Tagged {
+        private final int id;
+        private final String tag;
+
+        Tagged(int id, String tag) {
+            this.id = id;
+            this.tag = tag;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Tagged && ((Tagged) other).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return id + tag;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Saves models with every chord storage and loads them again, from a file read as a stream into a
+ * heap buffer and from the memory-mapped file, and compares them with a new model updated to the
+ * same words. The loaded models have to keep the version they were saved with and go on updating
+ * like the model they were saved from.
+ */
+public class ChordGraphSerializerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyStorageRoundTrips() throws IOException {
+        Random random = new Random(2015);
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            for (int run = 0; run < 10; run++) {
+                List<String> words = TestModels.words(random, random.nextInt(400),
+                        1 + random.nextInt(50));
+                ChordGraphModel<String> saved = updated(storage, words);
+                File file = folder.newFile();
+                ChordGraphSerializer.save(saved, file);
+                assertEquals(ChordGraphSerializer.getSerializedSize(saved), file.length());
+
+                ChordGraphModel<String> streamed = ChordGraphSerializer.read(readFile(file));
+                ChordGraphModel<String> mapped = ChordGraphSerializer.load(file);
+                assertSameAs(storage + " streamed", saved, streamed);
+                assertSameAs(storage + " mapped", saved, mapped);
+                assertEquals(saved.getVersion(), streamed.getVersion());
+                assertEquals(saved.getVersion(), mapped.getVersion());
+            }
+        }
+    }
+
+    @Test
+    public void loadedModelsUpdateLikeTheSavedOnes() throws IOException {
+        Random random = new Random(7);
+        List<String> words = TestModels.words(random, 300, 20);
+        List<String> edited = new ArrayList<String>(words);
+        edited.subList(100, 140).clear();
+        edited.addAll(50, TestModels.words(random, 30, 25));
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            ChordGraphModel<String> saved = updated(storage, words);
+            File file = folder.newFile();
+            ChordGraphSerializer.save(saved, file);
+            ChordGraphModel<String> loaded = ChordGraphSerializer.load(file);
+            long version = loaded.getVersion();
+
+            saved.update(edited);
+            loaded.update(edited);
+            assertSameContentAs(storage.toString(), saved, loaded);
+            assertSameContentAs(storage.toString(), updated(storage, edited), loaded);
+            assertTrue(loaded.getVersion() > version);
+        }
+    }
+
+    @Test
+    public void anyStorageLoadsAsObjectsOrImplicit() throws IOException {
+        List<String> words = TestModels.words(new Random(11), 300, 15);
+        ChordGraphModel.ChordStorage[] derived = {
+                ChordGraphModel.ChordStorage.OBJECTS, ChordGraphModel.ChordStorage.IMPLICIT};
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            File file = folder.newFile();
+            ChordGraphSerializer.save(updated(storage, words), file);
+            for (ChordGraphModel.ChordStorage loadedStorage : derived) {
+                ChordGraphModel<String> loaded = ChordGraphSerializer.load(file, loadedStorage);
+                assertEquals(loadedStorage, loaded.getStorage());
+                assertSameAs(storage + " as " + loadedStorage, updated(loadedStorage, words),
+                        loaded);
+            }
+        }
+    }
+
+    @Test
+    public void onlyPrimitiveLoadsAsPrimitive() throws IOException {
+        File file = folder.newFile();
+        ChordGraphSerializer.save(updated(ChordGraphModel.ChordStorage.IMPLICIT,
+                TestModels.words(new Random(3), 50, 5)), file);
+        try {
+            ChordGraphSerializer.load(file, ChordGraphModel.ChordStorage.PRIMITIVE);
+            fail("an implicit model was loaded with primitive storage");
+        } catch (IOException expected) {
+            // the chords weren't saved
+        }
+    }
+
+    @Test
+    public void unknownFormatVersionIsRejected() throws IOException {
+        ChordGraphModel<String> model = updated(ChordGraphModel.ChordStorage.PRIMITIVE,
+                TestModels.words(new Random(5), 50, 5));
+        ByteBuffer buffer = ByteBuffer.allocate(ChordGraphSerializer.getSerializedSize(model));
+        ChordGraphSerializer.write(model, buffer);
+        assertEquals(3, buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+
+        buffer.putInt(4, 4);
+        buffer.rewind();
+        try {
+            ChordGraphSerializer.read(buffer);
+            fail("a newer format was read");
+        } catch (IOException expected) {
+            // the version is checked before anything else is read
+        }
+    }
+
+    @Test
+    public void modelsSavedFromOtherTextAreRejected() throws IOException {
+        String text = "four score and seven years ago";
+        List<String> words = Arrays.asList(text.split(" "));
+        File file = folder.newFile();
+        ChordGraphSerializer.save(updated(ChordGraphModel.ChordStorage.IMPLICIT, words),
+                ChordGraphSerializer.getTextChecksum(text), file);
+
+        ChordGraphModel<String> loaded = ChordGraphSerializer.load(file,
+                ChordGraphModel.ChordStorage.IMPLICIT, ChordGraphSerializer.getTextChecksum(text));
+        assertSameAs("same text", updated(ChordGraphModel.ChordStorage.IMPLICIT, words), loaded);
+        assertSameAs("any text", loaded, ChordGraphSerializer.load(file));
+        String[] others = {"", text + " ", "four score and seven years agO", "four"};
+        for (String other : others) {
+            try {
+                ChordGraphSerializer.load(file, null, ChordGraphSerializer.getTextChecksum(other));
+                fail("a model saved from other text was loaded for \"" + other + "\"");
+            } catch (IOException expected) {
+                // the checksum is checked before the model is read
+            }
+        }
+    }
+
+    @Test
+    public void textsWithTheSameStringHashAreToldApart() throws IOException {
+        // "Aa" and "BB" have the same String.hashCode() and length, all the checksum used to be
+        String text = "Aa Aa BB";
+        String other = "BB Aa BB";
+        assertEquals(text.hashCode(), other.hashCode());
+        File file = folder.newFile();
+        ChordGraphSerializer.save(updated(ChordGraphModel.ChordStorage.IMPLICIT,
+                Arrays.asList(text.split(" "))), ChordGraphSerializer.getTextChecksum(text), file);
+        try {
+            ChordGraphSerializer.load(file, null, ChordGraphSerializer.getTextChecksum(other));
+            fail("a model saved from other text with the same hash was loaded");
+        } catch (IOException expected) {
+            // the CRC32 and the 64-bit hash differ
+        }
+    }
+
+    @Test
+    public void truncatedModelsAreRejected() throws IOException {
+        ChordGraphModel<String> model = updated(ChordGraphModel.ChordStorage.PRIMITIVE,
+                TestModels.words(new Random(5), 80, 6));
+        ByteBuffer buffer = ByteBuffer.allocate(ChordGraphSerializer.getSerializedSize(model));
+        ChordGraphSerializer.write(model, buffer);
+        for (int length = 0; length < buffer.capacity(); length += 7) {
+            ByteBuffer truncated = ByteBuffer.wrap(buffer.array(), 0, length).slice();
+            try {
+                ChordGraphSerializer.read(truncated);
+                fail("a model truncated to " + length + " bytes was read");
+            } catch (IOException expected) {
+                // the counts are checked against the bytes left
+            }
+        }
+    }
+
+    /**
+     * @param storage - how the chords are stored
+     * @param words - the words of the model
+     * @return a new model updated to the words, the way the app builds it
+     */
+    private static ChordGraphModel<String> updated(ChordGraphModel.ChordStorage storage,
+                                                  List<String> words) {
+        ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+        model.update(words);
+        return model;
+    }
+
+    /**
+     * Reads a file through a stream into a heap buffer.
+     * @param file - the file to read
+     * @return a buffer with the contents of the file
+     * @throws IOException if reading fails
+     */
+    private static ByteBuffer readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream stream = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int count = stream.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += count;
+            }
+        } finally {
+            stream.close();
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Checks that a loaded model holds what the expected one does.
+     * @param message - the message of a failure
+     * @param expected - the model that was saved or an equal one
+     * @param actual - the loaded model
+     */
+    private static void assertSameAs(String message, ChordGraphModel<String> expected,
+                                     ChordGraphModel<String> actual) {
+        assertEquals(message, expected.getStorage(), actual.getStorage());
+        assertEquals(message, TestModels.items(expected), TestModels.items(actual));
+        assertEquals(message, expected.getCategoryCount(), actual.getCategoryCount());
+        assertEquals(message, expected.getChordCount(), actual.getChordCount());
+        assertEquals(message, TestModels.chords(expected), TestModels.chords(actual));
+        for (int i = 0; i < expected.getItemCount(); i++) {
+            assertEquals(message + " item " + i, TestModels.chords(expected, i),
+                    TestModels.chords(actual, i));
+        }
+    }
+
+    /**
+     * Checks that a loaded model that was updated holds the values and chords of the expected
+     * one. The symbol ids a restored table hands out for new words can differ, so the chords are
+     * compared as sets.
+     * @param message - the message of a failure
+     * @param expected - the model updated to the same words
+     * @param actual - the loaded and updated model
+     */
+    private static void assertSameContentAs(String message, ChordGraphModel<String> expected,
+                                            ChordGraphModel<String> actual) {
+        assertEquals(message, expected.getItemCount(), actual.getItemCount());
+        for (int i = 0; i < expected.getItemCount(); i++) {
+            assertEquals(message, expected.getValue(i), actual.getValue(i));
+            assertEquals(message + " item " + i, sorted(TestModels.chords(expected, i)),
+                    sorted(TestModels.chords(actual, i)));
+        }
+        assertEquals(message, expected.getCategoryCount(), actual.getCategoryCount());
+        assertEquals(message, expected.getChordCount(), actual.getChordCount());
+        assertEquals(message, sorted(TestModels.chords(expected)),
+                sorted(TestModels.chords(actual)));
+    }
+
+    /**
+     * @param chords - chords as TestModels lists them
+     * @return the chords sorted
+     */
+    private static List<String> sorted(List<String> chords) {
+        ArrayList<String> copy = new ArrayList<String>(chords);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs writers that add batches of words and publish() them against readers that walk every
+ * snapshot they get. Every snapshot has to hold whole batches and its chord count has to agree with
+ * its items and with the chords its cursor walks. Any exception in a thread, ie. a
+ * ConcurrentModificationException from a snapshot that changed under a reader, fails the test.
+ */
+public class ConcurrentChordGraphModelTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int BATCHES = 50; // per writer
+    private static final int BATCH_SIZE = 10;
+    private static final int LARGE_MODEL = 100000; // items, to publish one more item after
+
+    @Test
+    public void readersSeeConsistentSnapshots() throws InterruptedException {
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            final ConcurrentChordGraphModel<String> model =
+                    new ConcurrentChordGraphModel<String>(storage);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            final AtomicInteger snapshotsRead = new AtomicInteger();
+
+            ArrayList<Thread> writers = new ArrayList<Thread>();
+            for (int w = 0; w < WRITERS; w++) {
+                final Random random = new Random(w);
+                writers.add(new Thread(new Guarded(failure) {
+                    @Override
+                    void work() {
+                        for (int b = 0; b < BATCHES; b++) {
+                            model.addItems(TestModels.words(random, BATCH_SIZE, 30));
+                            if (b % 3 == 0) {
+                                model.publish();
+                            }
+                        }
+                    }
+                }));
+            }
+            ArrayList<Thread> readers = new ArrayList<Thread>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(new Thread(new Guarded(failure) {
+                    @Override
+                    void work() {
+                        while (writing.get()) {
+                            assertConsistent(model.getSnapshot());
+                            snapshotsRead.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : readers) {
+                thread.start();
+            }
+            for (Thread thread : writers) {
+                thread.start();
+            }
+            for (Thread thread : writers) {
+                thread.join();
+            }
+            writing.set(false);
+            for (Thread thread : readers) {
+                thread.join();
+            }
+
+            assertNull(storage + " " + failure.get(), failure.get());
+            assertTrue(snapshotsRead.get() > 0);
+            ChordGraphModel<String> last = model.publish();
+            assertEquals(WRITERS * BATCHES * BATCH_SIZE, last.getItemCount());
+            assertConsistent(last);
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < last.getItemCount(); i++) {
+                values.add(last.getValue(i));
+            }
+            ChordGraphModel<String> fresh = TestModels.build(storage, values);
+            assertEquals(fresh.getChordCount(), last.getChordCount());
+            assertEquals(fresh.getCategoryCount(), last.getCategoryCount());
+            assertEquals(TestModels.chords(fresh), TestModels.chords(last));
+        }
+    }
+
+    @Test
+    public void publishWithoutChangesKeepsTheSnapshot() {
+        ConcurrentChordGraphModel<String> model = new ConcurrentChordGraphModel<String>();
+        model.addItem("a");
+        model.addItem("a");
+        ChordGraphModel<String> snapshot = model.publish();
+        assertTrue(snapshot == model.publish());
+        assertTrue(snapshot == model.getSnapshot());
+        assertEquals(1, snapshot.getChordCount());
+        model.update(Arrays.asList("a", "b", "a", "a"));
+        assertEquals(3, model.publish().getChordCount());
+        assertEquals(1, snapshot.getChordCount());
+    }
+
+    @Test
+    public void publishAfterOneChangeSharesTheRest() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported()
+                && allocations.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            ConcurrentChordGraphModel<String> model =
+                    new ConcurrentChordGraphModel<String>(storage);
+            model.addItems(TestModels.words(new Random(7), LARGE_MODEL, LARGE_MODEL / 5));
+            ChordGraphModel<String> before = model.publish();
+
+            long start = allocations.getThreadAllocatedBytes(thread);
+            model.addItem("w0");
+            ChordGraphModel<String> after = model.publish();
+            long allocated = allocations.getThreadAllocatedBytes(thread) - start;
+
+            // the old snapshot is untouched and the new one shares its items
+            assertEquals(storage.toString(), LARGE_MODEL, before.getItemCount());
+            assertEquals(storage.toString(), LARGE_MODEL + 1, after.getItemCount());
+            assertTrue(storage.toString(), before.getItem(0) == after.getItem(0));
+            assertTrue(storage.toString(),
+                    before.getItem(LARGE_MODEL - 1) == after.getItem(LARGE_MODEL - 1));
+            int first = after.getFirstMember(after.getSymbol(LARGE_MODEL));
+            assertEquals(storage.toString(), before.getChordCount(first) + 1,
+                    after.getChordCount(first));
+            // only the pages the item touched and the page tables were copied, not the model
+            long retained = after.estimateRetainedBytes();
+            assertTrue(storage + " allocated " + allocated + " of " + retained,
+                    allocated < retained / 20);
+        }
+    }
+
+    @Test
+    public void cancelledUpdateIsPublishedAsFarAsItGot() {
+        ConcurrentChordGraphModel<String> model = new ConcurrentChordGraphModel<String>();
+        model.update(Arrays.asList("a", "b"));
+        assertFalse(model.update(Arrays.asList("a", "b", "c", "d", "e"), cancelAfter(1)));
+        model.addItem("z");
+        assertEquals(Arrays.asList("a", "b", "c", "z"), values(model.publish()));
+    }
+
+    @Test
+    public void cancelledUpdatesMixedWithEditsMatchTheWorkingModel() {
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            Random random = new Random(19);
+            ConcurrentChordGraphModel<String> model =
+                    new ConcurrentChordGraphModel<String>(storage);
+            // the same changes made to a plain model, with the same cancellations
+            ChordGraphModel<String> expected = new ChordGraphModel<String>(storage);
+            for (int edit = 0; edit < 200; edit++) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        String word = "w" + random.nextInt(10);
+                        model.addItem(word);
+                        expected.addItem(word);
+                        break;
+                    case 1:
+                        // drop a run of items, the way a deletion reaches the model
+                        List<String> kept = values(expected);
+                        int at = random.nextInt(kept.size() + 1);
+                        kept.subList(at, Math.min(kept.size(), at + 1 + random.nextInt(4)))
+                                .clear();
+                        model.update(kept);
+                        expected.update(kept);
+                        break;
+                    default:
+                        List<String> words = values(expected);
+                        words.addAll(random.nextInt(words.size() + 1),
+                                TestModels.words(random, 1 + random.nextInt(8), 10));
+                        int checks = random.nextInt(6);
+                        model.update(words, cancelAfter(checks));
+                        expected.update(words, cancelAfter(checks));
+                        break;
+                }
+                if (random.nextInt(4) == 0) {
+                    ChordGraphModel<String> published = model.publish();
+                    assertEquals(storage + " edit " + edit, values(expected), values(published));
+                    assertEquals(storage + " edit " + edit, expected.getChordCount(),
+                            published.getChordCount());
+                }
+            }
+            ChordGraphModel<String> published = model.publish();
+            assertEquals(storage.toString(), values(expected), values(published));
+            ChordGraphModel<String> fresh = TestModels.build(storage, values(expected));
+            assertEquals(storage.toString(), fresh.getChordCount(), published.getChordCount());
+        }
+    }
+
+    /**
+     * @param checks the number of checks to let through
+     * @return a signal that cancels on the check after the given number of checks
+     */
+    private static ChordGraphModel.CancelSignal cancelAfter(final int checks) {
+        return new ChordGraphModel.CancelSignal() {
+            private int left = checks;
+
+            @Override
+            public boolean isCancelled() {
+                return left-- <= 0;
+            }
+        };
+    }
+
+    /**
+     * @param model the model
+     * @return the values of the items of the model in index order
+     */
+    private static List<String> values(ChordGraphModel<String> model) {
+        ArrayList<String> values = new ArrayList<String>(model.getItemCount());
+        for (int i = 0; i < model.getItemCount(); i++) {
+            values.add(model.getValue(i));
+        }
+        return values;
+    }
+
+    /**
+     * Checks that a snapshot holds whole batches and that its chord count agrees with the items
+     * and with the chords its own cursor walks.
+     * @param snapshot - the snapshot to check
+     */
+    private static void assertConsistent(ChordGraphModel<String> snapshot) {
+        int itemCount = snapshot.getItemCount();
+        assertEquals(0, itemCount % BATCH_SIZE);
+
+        // every pair of equal words is a chord
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        long expected = 0;
+        for (int i = 0; i < itemCount; i++) {
+            Integer count = counts.get(snapshot.getValue(i));
+            int seen = (count == null) ? 0 : count;
+            expected += seen;
+            counts.put(snapshot.getValue(i), seen + 1);
+        }
+        assertEquals(expected, snapshot.getChordCount());
+        assertEquals(counts.size(), snapshot.getCategoryCount());
+
+        long walked = 0;
+        ChordGraphModel<String>.ChordCursor cursor = snapshot.newChordCursor();
+        while (cursor.next()) {
+            assertEquals(snapshot.getValue(cursor.getHead()), snapshot.getValue(cursor.getTail()));
+            walked++;
+        }
+        assertEquals(expected, walked);
+    }
+
+    /**
+     * Runs the work of a thread and keeps the first exception any thread throws.
+     */
+    private abstract static class Guarded implements Runnable {
+        private final AtomicReference<Throwable> failure;
+
+        Guarded(AtomicReference<Throwable> failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }
+
+        abstract void work();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that adding items with the parallel addItems() makes the model a sequential build makes:
+ * the same items and symbol ids, the same categories and the same chords in the same order.
+ */
+public class ParallelBuildTest {
+
+    private static final int[] PARALLELISM = {1, 2, 3, 8};
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void randomWordsMatchASequentialBuild() throws InterruptedException {
+        Random random = new Random(2015);
+        for (int run = 0; run < 20; run++) {
+            List<String> words = TestModels.words(random, 1 + random.nextInt(1000),
+                    1 + random.nextInt(60));
+            for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+                ChordGraphModel<String> expected = TestModels.build(storage, words);
+                for (int parallelism : PARALLELISM) {
+                    ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+                    model.addItems(words, executor, parallelism);
+                    assertSameAs(storage + " parallelism " + parallelism, expected, model);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addingToABuiltModelMatchesASequentialBuild() throws InterruptedException {
+        // the new items link to the categories that are already there
+        Random random = new Random(7);
+        List<String> first = TestModels.words(random, 300, 20);
+        List<String> second = TestModels.words(random, 500, 30);
+        List<String> all = new ArrayList<String>(first);
+        all.addAll(second);
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            ChordGraphModel<String> expected = TestModels.build(storage, all);
+            for (int parallelism : PARALLELISM) {
+                ChordGraphModel<String> model = TestModels.build(storage, first);
+                model.addItems(second, executor, parallelism);
+                assertSameAs(storage + " parallelism " + parallelism, expected, model);
+            }
+        }
+    }
+
+    @Test
+    public void caseFoldedWordsMatchASequentialBuild() throws InterruptedException {
+        Random random = new Random(11);
+        ArrayList<String> words = new ArrayList<String>();
+        for (String word : TestModels.words(random, 600, 25)) {
+            words.add(random.nextBoolean() ? word.toUpperCase() : word);
+        }
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            ChordGraphModel<String> expected = new ChordGraphModel<String>(storage);
+            expected.setMatcher(ValueMatchers.caseFold());
+            for (String word : words) {
+                expected.addItem(word);
+            }
+            for (int parallelism : PARALLELISM) {
+                ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+                model.setMatcher(ValueMatchers.caseFold());
+                model.addItems(words, executor, parallelism);
+                assertSameAs(storage + " parallelism " + parallelism, expected, model);
+            }
+        }
+    }
+
+    @Test
+    public void cooccurrencesMatchASequentialBuild() throws InterruptedException {
+        List<String> words = TestModels.words(new Random(3), 800, 40);
+        ChordGraphModel<String> expected =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+        expected.setCooccurrence(5);
+        for (String word : words) {
+            expected.addItem(word);
+        }
+        for (int parallelism : PARALLELISM) {
+            ChordGraphModel<String> model =
+                    new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT);
+            model.setCooccurrence(5);
+            model.addItems(words, executor, parallelism);
+            assertSameAs("parallelism " + parallelism, expected, model);
+        }
+    }
+
+    /**
+     * Checks that a model built in parallel is the one a sequential build makes.
+     * @param message - the message of a failure
+     * @param expected - the sequential build
+     * @param actual - the parallel build
+     */
+    private static void assertSameAs(String message, ChordGraphModel<String> expected,
+                                     ChordGraphModel<String> actual) {
+        assertEquals(message, TestModels.items(expected), TestModels.items(actual));
+        assertEquals(message, expected.getCategoryCount(), actual.getCategoryCount());
+        for (int i = 0; i < expected.getItemCount(); i++) {
+            // a category is the same if it starts at the same item and has as many members
+            int symbol = expected.getSymbol(i);
+            int otherSymbol = actual.getSymbol(i);
+            assertEquals(message + " item " + i, expected.getFirstMember(symbol),
+                    actual.getFirstMember(otherSymbol));
+            assertEquals(message + " item " + i, expected.getCategorySize(symbol),
+                    actual.getCategorySize(otherSymbol));
+        }
+        assertEquals(message, expected.getChordCount(), actual.getChordCount());
+        assertEquals(message, TestModels.chords(expected), TestModels.chords(actual));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streams many windows of words through sliding-window models, with a vocabulary that keeps
+ * drifting so new words arrive for as long as it runs. The symbol table has to stay within the
+ * window and the heap that is still in use after a gc has to stop growing once the first windows
+ * are in: the test keeps only the last window of words itself, so anything the model fails to let
+ * go of shows up there. A model that kept every word would grow by over 10 MB. The window has to
+ * hold the last words with the chords they make, the same chords for every item as a new model of
+ * them, whichever way the chords are stored.
+ */
+public class SlidingWindowTest {
+
+    private static final int WINDOW = 500;
+    private static final int WINDOWS = 400;
+    private static final int FUZZY_WINDOW = 60;
+    private static final int WARM_WINDOWS = 40; // the windows added before the heap is measured
+    private static final int SAMPLE_WINDOWS = 20; // the windows between samples of the heap
+    private static final long MAX_GROWTH_BYTES = 1 << 20; // gc noise, far below a leak
+    private static final int GC_PASSES = 5;
+
+    @Test
+    public void equalWordsStayBounded() {
+        ChordGraphModel<String> model =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT, WINDOW);
+        soak(model);
+    }
+
+    @Test
+    public void storedChordsStayBounded() {
+        ChordGraphModel<String> objects =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.OBJECTS, WINDOW);
+        soak(objects);
+        ChordGraphModel<String> primitive =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.PRIMITIVE, WINDOW);
+        soak(primitive);
+    }
+
+    @Test
+    public void fuzzyMatchesLinkTheWindow() {
+        ChordGraphModel<String> model =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.PRIMITIVE, FUZZY_WINDOW);
+        model.setMatcher(ValueMatchers.fuzzy(ValueMatchers.exact(), 1));
+        Random random = new Random(2015);
+        ArrayList<String> words = new ArrayList<String>();
+        for (int i = 0; i < FUZZY_WINDOW * 20; i++) {
+            // a few words and their one letter typos
+            String word = "word" + (char) ('a' + random.nextInt(6)) + random.nextInt(4);
+            words.add(word);
+            model.addItem(word);
+        }
+        List<String> last = words.subList(words.size() - FUZZY_WINDOW, words.size());
+        ChordGraphModel<String> fresh =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.PRIMITIVE);
+        fresh.setMatcher(model.getMatcher());
+        for (String word : last) {
+            fresh.addItem(word);
+        }
+        assertEquals(fresh.getChordCount(), model.getChordCount());
+        assertEquals(itemChords(fresh), itemChords(model));
+    }
+
+    @Test
+    public void cooccurrencesStayBounded() {
+        ChordGraphModel<String> model =
+                new ChordGraphModel<String>(ChordGraphModel.ChordStorage.IMPLICIT, WINDOW);
+        model.setCooccurrence(5);
+        soak(model);
+    }
+
+    /**
+     * Adds WINDOWS windows of drifting words and checks the model after every window.
+     * @param model - the sliding-window model to add to
+     */
+    private static void soak(ChordGraphModel<String> model) {
+        Random random = new Random(2015);
+        String[] last = new String[WINDOW]; // the last words, the oldest at added % WINDOW
+        int added = 0;
+        long warmBytes = 0;
+        for (int window = 0; window < WINDOWS; window++) {
+            for (int i = 0; i < WINDOW; i++) {
+                // a word near the current position in a vocabulary that keeps moving on
+                int n = added / 4 + random.nextInt(60);
+                String word = "w" + n;
+                last[added++ % WINDOW] = word;
+                model.addItem(word);
+            }
+            assertEquals(WINDOW, model.getItemCount());
+            assertTrue("window " + window + " " + model.getSymbols().size() + " symbols",
+                    model.getSymbols().size() <= WINDOW);
+            if (window == WARM_WINDOWS) {
+                warmBytes = usedHeap();
+            } else if (window > WARM_WINDOWS && window % SAMPLE_WINDOWS == 0) {
+                long bytes = usedHeap();
+                assertTrue("window " + window + " " + bytes + " bytes in use, " + warmBytes
+                        + " after window " + WARM_WINDOWS,
+                        bytes - warmBytes <= MAX_GROWTH_BYTES);
+            }
+        }
+        ArrayList<String> words = new ArrayList<String>(WINDOW);
+        for (int i = 0; i < WINDOW; i++) {
+            words.add(last[(added + i) % WINDOW]);
+        }
+        assertHoldsTheLastWords(model, words);
+    }
+
+    /**
+     * @return the heap in use after collecting the garbage a few times
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_PASSES; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Checks that the window holds the last words, oldest first from the oldest slot, and that
+     * they are linked by as many chords as a new model of them has.
+     * @param model - the sliding-window model
+     * @param last - the last words added
+     */
+    private static void assertHoldsTheLastWords(ChordGraphModel<String> model, List<String> last) {
+        int oldest = model.getOldestSlot();
+        for (int i = 0; i < WINDOW; i++) {
+            assertEquals(last.get(i), model.getValue((oldest + i) % WINDOW));
+        }
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (String word : last) {
+            Integer count = counts.get(word);
+            counts.put(word, (count == null) ? 1 : count + 1);
+        }
+        assertEquals(counts.size(), model.getCategoryCount());
+        ChordGraphModel<String> fresh = new ChordGraphModel<String>(model.getStorage());
+        if (model.getCooccurrenceWindow() > 0) {
+            fresh.setCooccurrence(model.getCooccurrenceWindow());
+        }
+        for (String word : last) {
+            fresh.addItem(word);
+        }
+        assertEquals(fresh.getChordCount(), model.getChordCount());
+        assertEquals(itemChords(fresh), itemChords(model));
+    }
+
+    /**
+     * Lists the chords of every item by the values they link, so that models whose items are in
+     * different slots can be compared. Pairs that slid out of the window have to be gone from the
+     * chords of their words.
+     * @param model - the model
+     * @return "head value-tail value:weight" for the chords of every item, sorted
+     */
+    private static List<String> itemChords(ChordGraphModel<String> model) {
+        ArrayList<String> chords = new ArrayList<String>();
+        for (int i = 0; i < model.getItemCount(); i++) {
+            for (String chord : TestModels.chords(model, i)) {
+                int dash = chord.indexOf('-');
+                int colon = chord.indexOf(':');
+                String head = model.getValue(Integer.parseInt(chord.substring(0, dash)));
+                String tail = model.getValue(Integer.parseInt(chord.substring(dash + 1, colon)));
+                chords.add(((head.compareTo(tail) < 0) ? head + "-" + tail : tail + "-" + head)
+                        + chord.substring(colon));
+            }
+        }
+        Collections.sort(chords);
+        return chords;
+    }
+}
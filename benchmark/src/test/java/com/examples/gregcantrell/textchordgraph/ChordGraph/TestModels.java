@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class has the inputs and the comparisons the model tests share. The chords of a model are
+ * compared as a list of "head-tail:value" strings in the order the cursor walks them, so a failure
+ * shows the first chord that differs.
+ */
+final class TestModels {
+
+    private TestModels() { }
+
+    /**
+     * Generates random words from a small vocabulary so that most of them repeat.
+     * @param random - the source of the words
+     * @param count - the number of words
+     * @param vocabulary - the number of distinct words to draw from
+     * @return the words
+     */
+    static List<String> words(Random random, int count, int vocabulary) {
+        ArrayList<String> words = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            words.add("w" + random.nextInt(vocabulary));
+        }
+        return words;
+    }
+
+    /**
+     * Builds a model by adding every word in turn.
+     * @param storage - how the chords are stored
+     * @param words - the words to add
+     * @return the model
+     */
+    static ChordGraphModel<String> build(ChordGraphModel.ChordStorage storage, List<String> words) {
+        ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+        for (String word : words) {
+            model.addItem(word);
+        }
+        return model;
+    }
+
+    /**
+     * @param model - the model
+     * @return every chord of the model in the order the cursor walks them
+     */
+    static List<String> chords(ChordGraphModel<?> model) {
+        ArrayList<String> chords = new ArrayList<String>();
+        ChordGraphModel<?>.ChordCursor cursor = model.newChordCursor();
+        while (cursor.next()) {
+            chords.add(cursor.getHead() + "-" + cursor.getTail() + ":" + cursor.getValue());
+        }
+        return chords;
+    }
+
+    /**
+     * @param model - the model
+     * @param index - the index of the item
+     * @return the chords touching the item in the order the cursor walks them
+     */
+    static List<String> chords(ChordGraphModel<?> model, int index) {
+        ArrayList<String> chords = new ArrayList<String>();
+        ChordGraphModel<?>.ChordCursor cursor = model.newChordCursor(index);
+        while (cursor.next()) {
+            chords.add(cursor.getHead() + "-" + cursor.getTail() + ":" + cursor.getValue());
+        }
+        return chords;
+    }
+
+    /**
+     * @param model - the model
+     * @return the value and symbol id of every item in index order
+     */
+    static List<String> items(ChordGraphModel<?> model) {
+        ArrayList<String> items = new ArrayList<String>(model.getItemCount());
+        for (int i = 0; i < model.getItemCount(); i++) {
+            items.add(model.getValue(i) + "#" + model.getSymbol(i));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the tokenizer makes exactly the words the regex split it replaced does, with the
+ * empty first word of a text that starts with a delimiter and no trailing empty words.
+ */
+public class TextTokenizerTest {
+
+    // The characters random texts are made of: word characters, delimiters and non-ASCII letters,
+    // which aren't word characters to the split
+    private static final String ALPHABET = "abcXYZ019_' \t\n.,;!?-\"\u00e9\u00fc\u00df\u4e2d\u0416";
+
+    @Test
+    public void edgeCasesMatchTheSplit() {
+        String[] texts = {"", "!!!", " ", "a", "!a", "  leading spaces", "trailing!!",
+                "don't stop", "'quoted'", "''", "' '", "caf\u00e9 na\u00efve", "\u00e9", "\u00e9a",
+                "a\u00e9b", "\u4e2d\u6587 words", "x_1 y_2", "one\ttwo\nthree", "a,,b", ",a,,b,,"};
+        TextTokenizer tokenizer = new TextTokenizer();
+        for (String text : texts) {
+            assertTokensMatch(tokenizer, text);
+        }
+    }
+
+    @Test
+    public void randomTextsMatchTheSplit() {
+        Random random = new Random(2015);
+        TextTokenizer tokenizer = new TextTokenizer();
+        for (int run = 0; run < 20000; run++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+            assertTokensMatch(tokenizer, new String(chars));
+        }
+    }
+
+    @Test
+    public void tokensCompareEqualToTheirValues() {
+        TextTokenizer tokenizer = new TextTokenizer();
+        String text = "the cat, the hat";
+        assertEquals(4, tokenizer.tokenize(text));
+        assertTrue(tokenizer.tokenEquals(text, 2, "the"));
+        assertFalse(tokenizer.tokenEquals(text, 2, "then"));
+        assertFalse(tokenizer.tokenEquals(text, 3, "cat"));
+    }
+
+    /**
+     * Checks the tokens of a text against String.split("[^\\w']+"), reusing the tokenizer the way
+     * the builder does.
+     * @param tokenizer - the tokenizer
+     * @param text - the text to split
+     */
+    private static void assertTokensMatch(TextTokenizer tokenizer, String text) {
+        List<String> expected = Arrays.asList(text.split("[^\\w']+"));
+        int count = tokenizer.tokenize(text);
+        assertEquals("\"" + text + "\"", count, tokenizer.getCount());
+        ArrayList<String> actual = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            actual.add(tokenizer.getToken(text, i));
+        }
+        assertEquals("\"" + text + "\"", expected, actual);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2015. Greg Cantrell, All rights reserved.
+ */
+
+package com.examples.gregcantrell.textchordgraph.ChordGraph;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Applies random edits through update(), the way typing does, and checks every result against a
+ * model built from scratch. An update keeps the symbol ids it already handed out and adds the
+ * chords of the new items after the old ones, so the chords are compared as sets and the items by
+ * their values. Co-occurrence models are compared by the weight of every pair of words, since a
+ * pair's chord is drawn between the first items of its words.
+ */
+public class UpdateTest {
+
+    private static final int EDITS = 400;
+    private static final int COOCCURRENCE_WINDOW = 4;
+
+    @Test
+    public void randomEditsMatchAFreshBuild() {
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            Random random = new Random(2015);
+            ArrayList<String> words = new ArrayList<String>(TestModels.words(random, 50, 15));
+            ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+            model.update(words);
+            for (int edit = 0; edit < EDITS; edit++) {
+                edit(random, words);
+                model.update(new ArrayList<String>(words));
+                assertSameAs(storage + " edit " + edit, TestModels.build(storage, words), model);
+            }
+        }
+    }
+
+    @Test
+    public void cancelledUpdateIsFinishedByTheNext() {
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            Random random = new Random(7);
+            ArrayList<String> words = new ArrayList<String>(TestModels.words(random, 200, 20));
+            ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+            model.update(words);
+            for (int edit = 0; edit < 50; edit++) {
+                edit(random, words);
+                final int[] checks = {random.nextInt(5)};
+                boolean finished = model.update(new ArrayList<String>(words),
+                        new ChordGraphModel.CancelSignal() {
+                            @Override
+                            public boolean isCancelled() {
+                                return checks[0]-- <= 0;
+                            }
+                        });
+                if (!finished) {
+                    assertTrue(model.update(new ArrayList<String>(words), null));
+                }
+                assertSameAs(storage + " edit " + edit, TestModels.build(storage, words), model);
+            }
+        }
+    }
+
+    @Test
+    public void retypingAWordManyTimesStaysConsistent() {
+        // delete and retype the same word over and over, the removed chords are compacted away
+        // many times over
+        ArrayList<String> words = new ArrayList<String>(TestModels.words(new Random(3), 300, 3));
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+            model.update(words);
+            for (int edit = 0; edit < 200; edit++) {
+                ArrayList<String> edited = new ArrayList<String>(words);
+                edited.remove(150);
+                model.update(edited);
+                model.update(words);
+            }
+            assertSameAs(storage.toString(), TestModels.build(storage, words), model);
+        }
+    }
+
+    @Test
+    public void cooccurrenceEditsMatchAFreshBuild() {
+        for (ChordGraphModel.ChordStorage storage : ChordGraphModel.ChordStorage.values()) {
+            Random random = new Random(11);
+            ArrayList<String> words = new ArrayList<String>(TestModels.words(random, 60, 12));
+            ChordGraphModel<String> model = new ChordGraphModel<String>(storage);
+            model.setCooccurrence(COOCCURRENCE_WINDOW);
+            model.update(words);
+            for (int edit = 0; edit < EDITS; edit++) {
+                boundaryEdit(random, words);
+                model.update(new ArrayList<String>(words));
+                ChordGraphModel<String> fresh = new ChordGraphModel<String>(storage);
+                fresh.setCooccurrence(COOCCURRENCE_WINDOW);
+                for (String word : words) {
+                    fresh.addItem(word);
+                }
+                String message = storage + " edit " + edit;
+                assertEquals(message, fresh.getItemCount(), model.getItemCount());
+                assertEquals(message, fresh.getChordCount(), model.getChordCount());
+                assertEquals(message, pairWeights(fresh), pairWeights(model));
+            }
+        }
+    }
+
+    /**
+     * Makes an edit whose ends are about a co-occurrence window from the pairs it changes: a run
+     * of the window's length or one more or less, often at the start or end of the text. The
+     * pairs exactly the window apart across the edit are the ones an update is most likely to
+     * count wrong.
+     * @param random - the source of the edit
+     * @param words - the words to edit
+     */
+    private static void boundaryEdit(Random random, List<String> words) {
+        int length = Math.max(1, COOCCURRENCE_WINDOW - 1 + random.nextInt(3));
+        int at;
+        switch (random.nextInt(3)) {
+            case 0:
+                at = random.nextInt(Math.min(words.size(), COOCCURRENCE_WINDOW + 1) + 1);
+                break;
+            case 1:
+                at = Math.max(0, words.size() - random.nextInt(COOCCURRENCE_WINDOW + 2));
+                break;
+            default:
+                at = random.nextInt(words.size() + 1);
+                break;
+        }
+        int end = Math.min(words.size(), at + length);
+        switch (random.nextInt(3)) {
+            case 0:
+                words.addAll(at, TestModels.words(random, length, 12));
+                break;
+            case 1:
+                words.subList(at, end).clear();
+                break;
+            default:
+                words.subList(at, end).clear();
+                words.addAll(at, TestModels.words(random, length, 12));
+                break;
+        }
+        if (words.size() < COOCCURRENCE_WINDOW) {
+            words.addAll(TestModels.words(random, COOCCURRENCE_WINDOW, 12));
+        }
+    }
+
+    /**
+     * @param model - a co-occurrence model
+     * @return "word-word:weight" for every chord, the words of a pair in order, sorted
+     */
+    private static List<String> pairWeights(ChordGraphModel<String> model) {
+        ArrayList<String> pairs = new ArrayList<String>();
+        for (String chord : TestModels.chords(model)) {
+            int dash = chord.indexOf('-');
+            int colon = chord.indexOf(':');
+            String head = model.getValue(Integer.parseInt(chord.substring(0, dash)));
+            String tail = model.getValue(Integer.parseInt(chord.substring(dash + 1, colon)));
+            pairs.add(((head.compareTo(tail) < 0) ? head + "-" + tail : tail + "-" + head)
+                    + chord.substring(colon));
+        }
+        Collections.sort(pairs);
+        return pairs;
+    }
+
+    /**
+     * Makes a random edit: inserts, deletes or replaces a run of words somewhere.
+     * @param random - the source of the edit
+     * @param words - the words to edit
+     */
+    private static void edit(Random random, List<String> words) {
+        int at = random.nextInt(words.size() + 1);
+        int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 20 : 3);
+        switch (random.nextInt(3)) {
+            case 0:
+                words.addAll(at, TestModels.words(random, length, 15));
+                break;
+            case 1:
+                words.subList(at, Math.min(words.size(), at + length)).clear();
+                break;
+            default:
+                int end = Math.min(words.size(), at + length);
+                words.subList(at, end).clear();
+                words.addAll(at, TestModels.words(random, length, 15));
+                break;
+        }
+        if (words.isEmpty()) {
+            words.add("w0");
+        }
+    }
+
+    /**
+     * Checks that an updated model holds what a fresh build does.
+     * @param message - the message of a failure
+     * @param expected - the fresh build
+     * @param actual - the updated model
+     */
+    private static void assertSameAs(String message, ChordGraphModel<String> expected,
+                                     ChordGraphModel<String> actual) {
+        assertEquals(message, expected.getItemCount(), actual.getItemCount());
+        for (int i = 0; i < expected.getItemCount(); i++) {
+            assertEquals(message, expected.getValue(i), actual.getValue(i));
+            assertEquals(message + " item " + i, expected.getChordCount(i),
+                    actual.getChordCount(i));
+            assertEquals(message + " item " + i, sorted(TestModels.chords(expected, i)),
+                    sorted(TestModels.chords(actual, i)));
+        }
+        assertEquals(message, expected.getCategoryCount(), actual.getCategoryCount());
+        assertEquals(message, expected.getChordCount(), actual.getChordCount());
+        List<String> chords = TestModels.chords(actual);
+        assertEquals(message, sorted(TestModels.chords(expected)), sorted(chords));
+        assertTrue(message, chords.size() == actual.getChordCount());
+    }
+
+    /**
+     * @param chords - chords as TestModels lists them
+     * @return the chords sorted
+     */
+    private static List<String> sorted(List<String> chords) {
+        ArrayList<String> copy = new ArrayList<String>(chords);
+        Collections.sort(copy);
+        return copy;
+    }
+}